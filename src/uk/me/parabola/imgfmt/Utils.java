@@ -28,12 +28,17 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.zip.GZIPInputStream;
 
+import uk.me.parabola.util.ReadAheadInputStream;
+
 /**
  * Some miscellaneous functions that are used within the .img code.
  *
  * @author Steve Ratcliffe
  */
 public class Utils {
+	// The size of the buffer that compressed data is read into.
+	private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
 	/**
 	 * Routine to convert a string to bytes and pad with a character up
 	 * to a given length.
@@ -190,16 +195,25 @@ public class Utils {
 	 * Open a file and apply filters necessary for reading it such as
 	 * decompression.
 	 *
+	 * A compressed file is decompressed on a separate thread, ahead of
+	 * the reader, so the stream must be closed when it is finished with.
+	 *
 	 * @param name The file to open.
 	 * @return A stream that will read the file, positioned at the beginning.
 	 * @throws FileNotFoundException If the file cannot be opened for any reason.
+	 * @throws FormatException If the file is compressed in a format that
+	 * cannot be read.
 	 */
 	public static InputStream openFile(String name) throws FileNotFoundException {
+		if (name.endsWith(".bz2"))
+			throw new FormatException("bzip2 compressed files cannot be read, decompress the file first");
+
 		InputStream is = new FileInputStream(name);
 		if (name.endsWith(".gz")) {
 			try {
-				is = new GZIPInputStream(is);
+				is = new ReadAheadInputStream(new GZIPInputStream(is, GZIP_BUFFER_SIZE));
 			} catch (IOException e) {
+				closeFile(is);
 				throw new FileNotFoundException( "Could not read as compressed file");
 			}
 		}
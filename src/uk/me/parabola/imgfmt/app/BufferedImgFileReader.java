@@ -195,6 +195,13 @@ public class BufferedImgFileReader implements ImgFileReader {
 	 * @return A phone number possibly containing the delimiter character.
 	 */
 	public String getBase11str(byte firstChar, char delimiter) {
+		return readBase11str(this, firstChar, delimiter);
+	}
+
+	/**
+	 * The implementation of getBase11str() for all the readers.
+	 */
+	static String readBase11str(ImgFileReader reader, byte firstChar, char delimiter) {
 		// NB totally untested.
 		StringBuilder str11 = new StringBuilder();
 		int term = 2;
@@ -211,7 +218,7 @@ public class BufferedImgFileReader implements ImgFileReader {
 				--term;
 			str11.append(base(ch & 0x7F, 11, 2));
 			if (term != 0)
-				ch = get();
+				ch = reader.get();
 		} while (term != 0);
 
 		// Remove any trailing delimiters
@@ -229,7 +236,7 @@ public class BufferedImgFileReader implements ImgFileReader {
 		return str11.toString();
 	}
 
-	private String base(int inNum, int base, int width) {
+	private static String base(int inNum, int base, int width) {
 		int num = inNum;
 		StringBuilder val = new StringBuilder();
 
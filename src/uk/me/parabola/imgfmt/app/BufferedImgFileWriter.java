@@ -189,15 +189,20 @@ public class BufferedImgFileWriter implements ImgFileWriter {
 	private void ensureSize(int length) {
 		int needed = buf.position() + length;
 		if (needed > (bufferSize - GUARD_SIZE)) {
-			while(needed > (bufferSize - GUARD_SIZE))
-				bufferSize += GROW_SIZE;
-			if (bufferSize > maxAllowedSize) {
+			int minSize = bufferSize;
+			while(needed > (minSize - GUARD_SIZE))
+				minSize += GROW_SIZE;
+			if (minSize > maxAllowedSize) {
 				// Previous message was confusing people, although it is difficult to come
 				// up with something that is strictly true in all situations.
 				throw new MapFailedException(
 						"There is not enough room in a single garmin map for all the input data\n" +
 								"   The .osm file should be split into smaller pieces first.");
 			}
+
+			// Double the size each time, so that the data is not copied over
+			// and over again for large files.
+			bufferSize = (int) Math.max(minSize, Math.min(2L * bufferSize, maxAllowedSize));
 			ByteBuffer newb = ByteBuffer.allocate(bufferSize);
 			newb.order(ByteOrder.LITTLE_ENDIAN);
 			buf.flip();
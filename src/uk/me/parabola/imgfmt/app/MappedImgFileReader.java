@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.imgfmt.app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.me.parabola.imgfmt.MapFailedException;
+import uk.me.parabola.imgfmt.ReadFailedException;
+import uk.me.parabola.imgfmt.fs.ImgChannel;
+import uk.me.parabola.imgfmt.sys.FileNode;
+
+/**
+ * Read from a file in an img file that is mapped into memory.
+ *
+ * The file is mapped as runs of consecutive blocks of the img file, there
+ * is normally only one.  Values are read straight out of the mapped
+ * buffers, only a value that is split between two runs is put together a
+ * byte at a time.  If the img file is XORed, the bytes are XORed as they
+ * are read.
+ *
+ * A channel that is not a file within an img file is read into memory
+ * instead.
+ *
+ * @author agent
+ */
+public class MappedImgFileReader implements ImgFileReader {
+	private final ImgChannel chan;
+
+	private final ByteBuffer[] runs;
+	// The start of each run in the file, with the file size at the end.
+	private final long[] starts;
+	private final byte xorByte;
+
+	// The run that the last read was in.
+	private ByteBuffer run;
+	private long runStart;
+	private long runEnd;
+
+	private long position;
+
+	public MappedImgFileReader(ImgChannel chan) {
+		this.chan = chan;
+
+		List<ByteBuffer> list;
+		try {
+			if (chan instanceof FileNode) {
+				FileNode node = (FileNode) chan;
+				list = node.map();
+				xorByte = node.getXorByte();
+			} else {
+				list = Collections.singletonList(readAll(chan));
+				xorByte = 0;
+			}
+		} catch (IOException e) {
+			throw new ReadFailedException("failed to map file", e);
+		}
+
+		runs = list.toArray(new ByteBuffer[list.size()]);
+		starts = new long[runs.length + 1];
+		for (int i = 0; i < runs.length; i++)
+			starts[i + 1] = starts[i] + runs[i].limit();
+
+		if (runs.length > 0)
+			setRun(0);
+	}
+
+	/**
+	 * Called when the stream is closed.  Any resources can be freed.
+	 *
+	 * @throws IOException When there is an error in closing.
+	 */
+	public void close() throws IOException {
+		chan.close();
+	}
+
+	public long position() {
+		return position;
+	}
+
+	public void position(long pos) {
+		position = pos;
+	}
+
+	/**
+	 * Read in a single byte from the current position.  Past the end of
+	 * the file zero is returned and the position does not move.
+	 *
+	 * @return The byte that was read.
+	 */
+	public byte get() throws ReadFailedException {
+		if (!findRun(position))
+			return 0;
+		return (byte) (run.get((int) (position++ - runStart)) ^ xorByte);
+	}
+
+	/**
+	 * Read in two bytes.  Done in the correct byte order.
+	 *
+	 * @return The 2 byte integer that was read.
+	 */
+	public char getChar() throws ReadFailedException {
+		if (findRun(position) && position + 2 <= runEnd) {
+			char c = run.getChar((int) (position - runStart));
+			position += 2;
+			if (xorByte != 0)
+				c ^= (xorByte & 0xff) * 0x0101;
+			return c;
+		}
+
+		byte b1 = get();
+		byte b2 = get();
+		return (char) (((b2 & 0xff) << 8) + (b1 & 0xff));
+	}
+
+	/**
+	 * Read a three byte signed quantity.
+	 * @return The read value.
+	 * @throws ReadFailedException
+	 */
+	public int get3() throws ReadFailedException {
+		int val = getu3();
+		return (val << 8) >> 8;
+	}
+
+	public int getu3() throws ReadFailedException {
+		if (findRun(position) && position + 3 <= runEnd) {
+			int off = (int) (position - runStart);
+			int val = (run.get(off) & 0xff) | (run.getChar(off + 1) << 8);
+			position += 3;
+			if (xorByte != 0)
+				val ^= (xorByte & 0xff) * 0x010101;
+			return val;
+		}
+
+		byte b1 = get();
+		byte b2 = get();
+		byte b3 = get();
+		return (b1 & 0xff) | ((b2 & 0xff) << 8) | ((b3 & 0xff) << 16);
+	}
+
+	/**
+	 * Read in a 4 byte value.
+	 *
+	 * @return A 4 byte integer.
+	 */
+	public int getInt() throws ReadFailedException {
+		if (findRun(position) && position + 4 <= runEnd) {
+			int val = run.getInt((int) (position - runStart));
+			position += 4;
+			if (xorByte != 0)
+				val ^= (xorByte & 0xff) * 0x01010101;
+			return val;
+		}
+
+		byte b1 = get();
+		byte b2 = get();
+		byte b3 = get();
+		byte b4 = get();
+		return (b1 & 0xff)
+				| ((b2 & 0xff) << 8)
+				| ((b3 & 0xff) << 16)
+				| ((b4 & 0xff) << 24)
+				;
+	}
+
+	public int getUint(int n) throws ReadFailedException {
+		switch (n) {
+		case 1: return get() & 0xff;
+		case 2: return getChar();
+		case 3: return getu3();
+		case 4: return getInt();
+		default: // this is a programming error so exit
+			throw new MapFailedException("bad integer size " + n);
+		}
+	}
+
+	/**
+	 * Read in an arbitrary length sequence of bytes.
+	 *
+	 * @param len The number of bytes to read.
+	 */
+	public byte[] get(int len) throws ReadFailedException {
+		byte[] bytes = new byte[len];
+
+		int done = 0;
+		while (done < len && findRun(position)) {
+			int n = (int) Math.min(len - done, runEnd - position);
+			ByteBuffer dup = run.duplicate();
+			dup.position((int) (position - runStart));
+			dup.get(bytes, done, n);
+			done += n;
+			position += n;
+		}
+
+		if (xorByte != 0) {
+			for (int i = 0; i < done; i++)
+				bytes[i] ^= xorByte;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Read a zero terminated string from the file.
+	 * @return A string
+	 * @throws ReadFailedException For failures.
+	 */
+	public String getZString() throws ReadFailedException {
+		StringBuilder sb = new StringBuilder();
+		for (byte b = get(); b != 0; b = get()) {
+			sb.append((char) b);
+		}
+		return sb.toString();
+	}
+
+	public String getBase11str(byte firstChar, char delimiter) {
+		return BufferedImgFileReader.readBase11str(this, firstChar, delimiter);
+	}
+
+	/**
+	 * Make the run that contains the given position the current one.
+	 * @return False if the position is outside the file.
+	 */
+	private boolean findRun(long pos) {
+		if (pos >= runStart && pos < runEnd)
+			return true;
+		if (pos < 0 || pos >= starts[runs.length])
+			return false;
+
+		int i = 0;
+		while (pos >= starts[i + 1])
+			i++;
+		setRun(i);
+		return true;
+	}
+
+	private void setRun(int i) {
+		run = runs[i];
+		runStart = starts[i];
+		runEnd = starts[i + 1];
+	}
+
+	/**
+	 * Read the whole of a channel into memory, for a channel that cannot
+	 * be mapped.
+	 */
+	private static ByteBuffer readAll(ImgChannel chan) throws IOException {
+		List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+		int total = 0;
+		chan.position(0);
+		while (true) {
+			ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+			int n = chan.read(buf);
+			if (n <= 0)
+				break;
+			buf.flip();
+			blocks.add(buf);
+			total += n;
+		}
+
+		ByteBuffer all = ByteBuffer.allocate(total);
+		for (ByteBuffer buf : blocks)
+			all.put(buf);
+		all.flip();
+		all.order(ByteOrder.LITTLE_ENDIAN);
+		return all;
+	}
+}
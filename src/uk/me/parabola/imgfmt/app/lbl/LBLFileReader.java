@@ -18,10 +18,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import uk.me.parabola.imgfmt.app.BufferedImgFileReader;
 import uk.me.parabola.imgfmt.app.ImgFile;
 import uk.me.parabola.imgfmt.app.ImgFileReader;
 import uk.me.parabola.imgfmt.app.Label;
+import uk.me.parabola.imgfmt.app.MappedImgFileReader;
 import uk.me.parabola.imgfmt.app.labelenc.CharacterDecoder;
 import uk.me.parabola.imgfmt.app.labelenc.CodeFunctions;
 import uk.me.parabola.imgfmt.app.labelenc.DecodedText;
@@ -57,7 +57,7 @@ public class LBLFileReader extends ImgFile {
 	public LBLFileReader(ImgChannel chan) {
 		setHeader(header);
 
-		setReader(new BufferedImgFileReader(chan));
+		setReader(new MappedImgFileReader(chan));
 		header.readHeader(getReader());
 		int offsetMultiplier = header.getOffsetMultiplier();
 		CodeFunctions funcs = CodeFunctions.createEncoderForLBL(
@@ -16,6 +16,9 @@
  */
 package uk.me.parabola.imgfmt.app.map;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import uk.me.parabola.imgfmt.FileExistsException;
 import uk.me.parabola.imgfmt.FileNotWritableException;
 import uk.me.parabola.imgfmt.FileSystemParam;
@@ -68,6 +71,11 @@ public class Map implements InternalFiles, Configurable {
 	private NETFile netFile;
 	private NODFile nodFile;
 
+	// Kept for the summary of the map
+	private boolean writeSummary;
+	private Sort sort;
+	private final List<String> infos = new ArrayList<String>();
+
 	// Use createMap() or loadMap() instead of creating a map directly.
 	private Map() {
 	}
@@ -100,6 +108,7 @@ public class Map implements InternalFiles, Configurable {
 		m.rgnFile = new RGNFile(m.fileSystem.create(mapnumber + ".RGN"));
 		m.treFile = new TREFile(m.fileSystem.create(mapnumber + ".TRE"));
 		m.lblFile = new LBLFile(m.fileSystem.create(mapnumber + ".LBL"), sort);
+		m.sort = sort;
 
 		int mapid;
 		try {
@@ -126,6 +135,7 @@ public class Map implements InternalFiles, Configurable {
 		}
 
 		treFile.config(props);
+		writeSummary = props.getProperty("map-summary", false);
 	}
 
 	protected void addNet() throws FileExistsException {
@@ -162,6 +172,7 @@ public class Map implements InternalFiles, Configurable {
 	 */
 	public void addInfo(String info) {
 		treFile.addInfo(info);
+		infos.add(info);
 	}
 
 	/**
@@ -243,6 +254,7 @@ public class Map implements InternalFiles, Configurable {
 	}
 
 	public void setSort(Sort sort) {
+		this.sort = sort;
 		lblFile.setSort(sort);
 		if (netFile != null)
 			netFile.setSort(sort);
@@ -296,7 +308,67 @@ public class Map implements InternalFiles, Configurable {
 		for (ImgFile f : files)
 			Utils.closeFile(f);
 
+		MapSummary summary = writeSummary ? makeSummary() : null;
 		fileSystem.close();
+
+		// When there is no new summary, remove any left from an earlier run.
+		if (summary != null)
+			summary.write(filename);
+		else
+			MapSummary.delete(filename);
+	}
+
+	/**
+	 * Make the summary that the combiners use instead of reading the map
+	 * back in.  The values are worked out as they will be read back from the
+	 * file.
+	 *
+	 * @return The summary, or null if a value cannot be worked out.
+	 */
+	private MapSummary makeSummary() {
+		// The description is written in the default character set, so can only
+		// be predicted for plain ascii.
+		String desc = fileSystem.fsparam().getMapDescription();
+		for (int i = 0; i < desc.length(); i++) {
+			char c = desc.charAt(i);
+			if (c < ' ' || c > '~')
+				return null;
+		}
+
+		MapSummary summary = new MapSummary();
+		summary.setDescription(desc.trim());
+
+		// The bounds are saved in 24 bits
+		Area area = treFile.getBounds();
+		summary.setBounds(new Area((area.getMinLat() << 8) >> 8, (area.getMinLong() << 8) >> 8,
+				(area.getMaxLat() << 8) >> 8, (area.getMaxLong() << 8) >> 8));
+		summary.setMapId(treFile.getMapId());
+
+		// The info strings are read back one byte per character
+		for (String info : infos) {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : Utils.toBytes(info)) {
+				if (b == 0) {
+					summary.addCopyright(sb.toString());
+					sb.setLength(0);
+				} else {
+					sb.append((char) b);
+				}
+			}
+			summary.addCopyright(sb.toString());
+		}
+
+		summary.setCodePage(sort.getCodepage() & 0xffff);
+		summary.setSortOrderId(sort.getSortOrderId());
+
+		for (DirectoryEntry ent : fileSystem.list()) {
+			if (ent.isSpecial())
+				continue;
+			if ("TRE".equals(ent.getExt()))
+				summary.setInnername(ent.getName());
+			summary.addSubfile(ent.getFullName(), ent.getSize());
+		}
+		return summary;
 	}
 
 	public String getFilename() {
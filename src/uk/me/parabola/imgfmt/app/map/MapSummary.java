@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.imgfmt.app.map;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import uk.me.parabola.imgfmt.Utils;
+import uk.me.parabola.imgfmt.app.Area;
+import uk.me.parabola.log.Logger;
+
+/**
+ * The information about a map that is needed to combine it with others into
+ * a gmapsupp or tdb file.
+ *
+ * It is made while the map is written and saved in a small file next to the
+ * .img file, so that the combiners do not have to open the .img file and
+ * read the headers of its sections to find it out again.  The values are
+ * those that would be read back from the .img file.
+ *
+ * The summary is only used if the .img file has the same size and time as
+ * when the summary was saved, otherwise the .img file is read as usual.
+ *
+ * Only the maps made from the input files have a summary, and not when the
+ * --no-map-summary option is given.
+ *
+ * @author agent
+ */
+public class MapSummary {
+	private static final Logger log = Logger.getLogger(MapSummary.class);
+
+	public static final String EXTENSION = ".info";
+
+	private static final String VERSION = "1";
+
+	private String description;
+	private String innername;
+	private int mapId;
+	private Area bounds;
+	private int codePage;
+	private int sortOrderId;
+	private final List<String> copyrights = new ArrayList<String>();
+
+	// The sub-files of the img file, with their sizes.
+	private final List<String> subfiles = new ArrayList<String>();
+	private final List<Integer> subfileSizes = new ArrayList<Integer>();
+
+	/**
+	 * Save the summary for the given .img file, which must be completely
+	 * written and closed.
+	 * @param imgName The name of the .img file.
+	 */
+	public void write(String imgName) {
+		File img = new File(imgName);
+		Properties props = new Properties();
+		props.setProperty("version", VERSION);
+		props.setProperty("img-length", String.valueOf(img.length()));
+		props.setProperty("img-modified", String.valueOf(img.lastModified()));
+
+		props.setProperty("description", description);
+		props.setProperty("innername", innername);
+		props.setProperty("map-id", String.valueOf(mapId));
+		props.setProperty("bounds", bounds.getMinLat() + "," + bounds.getMinLong() + ","
+				+ bounds.getMaxLat() + "," + bounds.getMaxLong());
+		props.setProperty("codepage", String.valueOf(codePage));
+		props.setProperty("sort-order-id", String.valueOf(sortOrderId));
+
+		for (int i = 0; i < copyrights.size(); i++)
+			props.setProperty("copyright." + i, copyrights.get(i));
+		for (int i = 0; i < subfiles.size(); i++) {
+			props.setProperty("subfile." + i, subfiles.get(i));
+			props.setProperty("subfile." + i + ".size", String.valueOf(subfileSizes.get(i)));
+		}
+
+		OutputStream out = null;
+		boolean saved = false;
+		try {
+			out = new FileOutputStream(imgName + EXTENSION);
+			props.store(out, "Summary of " + img.getName());
+			saved = true;
+		} catch (IOException e) {
+			log.warn("Could not save map summary", e.getMessage());
+		} finally {
+			Utils.closeFile(out);
+		}
+
+		// The combiners will read the img file instead.
+		if (!saved)
+			delete(imgName);
+	}
+
+	/**
+	 * Remove the summary of a .img file, if there is one.
+	 * @param imgName The name of the .img file.
+	 */
+	public static void delete(String imgName) {
+		File file = new File(imgName + EXTENSION);
+		if (file.exists() && !file.delete())
+			log.warn("Could not remove old map summary", file);
+	}
+
+	/**
+	 * Get the summary that was saved for a .img file.
+	 *
+	 * @param imgName The name of the .img file.
+	 * @return The summary, or null if there isn't one or it does not match
+	 * the file as it is now.
+	 */
+	public static MapSummary read(String imgName) {
+		File file = new File(imgName + EXTENSION);
+		if (!file.exists())
+			return null;
+
+		Properties props = new Properties();
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			props.load(in);
+		} catch (IOException e) {
+			return null;
+		} finally {
+			Utils.closeFile(in);
+		}
+
+		File img = new File(imgName);
+		if (!VERSION.equals(props.getProperty("version"))
+				|| !String.valueOf(img.length()).equals(props.getProperty("img-length"))
+				|| !String.valueOf(img.lastModified()).equals(props.getProperty("img-modified")))
+		{
+			log.info("map summary is out of date", file);
+			return null;
+		}
+
+		try {
+			MapSummary summary = new MapSummary();
+			summary.description = props.getProperty("description");
+			summary.innername = props.getProperty("innername");
+			summary.mapId = Integer.parseInt(props.getProperty("map-id"));
+			String[] b = props.getProperty("bounds").split(",");
+			summary.bounds = new Area(Integer.parseInt(b[0]), Integer.parseInt(b[1]),
+					Integer.parseInt(b[2]), Integer.parseInt(b[3]));
+			summary.codePage = Integer.parseInt(props.getProperty("codepage"));
+			summary.sortOrderId = Integer.parseInt(props.getProperty("sort-order-id"));
+
+			for (int i = 0; props.containsKey("copyright." + i); i++)
+				summary.copyrights.add(props.getProperty("copyright." + i));
+			for (int i = 0; props.containsKey("subfile." + i); i++) {
+				summary.subfiles.add(props.getProperty("subfile." + i));
+				summary.subfileSizes.add(Integer.parseInt(props.getProperty("subfile." + i + ".size")));
+			}
+
+			if (summary.description == null || summary.innername == null)
+				return null;
+			return summary;
+		} catch (RuntimeException e) {
+			// Anything wrong with the file and it is just not used
+			log.warn("Could not read map summary", file);
+			return null;
+		}
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getInnername() {
+		return innername;
+	}
+
+	void setInnername(String innername) {
+		this.innername = innername;
+	}
+
+	public int getMapId() {
+		return mapId;
+	}
+
+	void setMapId(int mapId) {
+		this.mapId = mapId;
+	}
+
+	public Area getBounds() {
+		return bounds;
+	}
+
+	void setBounds(Area bounds) {
+		this.bounds = bounds;
+	}
+
+	public int getCodePage() {
+		return codePage;
+	}
+
+	void setCodePage(int codePage) {
+		this.codePage = codePage;
+	}
+
+	public int getSortOrderId() {
+		return sortOrderId;
+	}
+
+	void setSortOrderId(int sortOrderId) {
+		this.sortOrderId = sortOrderId;
+	}
+
+	public List<String> getCopyrights() {
+		return copyrights;
+	}
+
+	void addCopyright(String copyright) {
+		copyrights.add(copyright);
+	}
+
+	/**
+	 * @return The full names of the sub-files of the map, such as 63240001.TRE.
+	 */
+	public List<String> getSubfiles() {
+		return subfiles;
+	}
+
+	public List<Integer> getSubfileSizes() {
+		return subfileSizes;
+	}
+
+	void addSubfile(String name, int size) {
+		subfiles.add(name);
+		subfileSizes.add(size);
+	}
+}
@@ -54,7 +54,7 @@ public class Mdr11 extends MdrMapSection {
 	 * de-duplicated in the index in the same way that streets and cities are.
 	 */
 	protected void preWriteImpl() {
-		List<SortKey<Mdr11Record>> keys = MdrUtils.sortList(getConfig().getSort(), pois);
+		List<SortKey<Mdr11Record>> keys = MdrUtils.sortList(getConfig().getSort(), pois, getConfig().getSortThreads());
 
 		pois.clear();
 		for (SortKey<Mdr11Record> sk : keys) {
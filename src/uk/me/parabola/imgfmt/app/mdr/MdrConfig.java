@@ -32,6 +32,7 @@ public class MdrConfig {
 	private int headerLen = DEFAULT_HEADER_LEN;
 	private Sort sort;
 	private File outputDir;
+	private int sortThreads = 1;
 
 	/**
 	 * True if we are creating the file, rather than reading it.
@@ -87,4 +88,15 @@ public class MdrConfig {
 		if (outputDir != null)
 			this.outputDir = new File(outputDir);
 	}
+
+	/**
+	 * The number of threads to use when sorting the largest sections.
+	 */
+	public int getSortThreads() {
+		return sortThreads;
+	}
+
+	public void setSortThreads(int sortThreads) {
+		this.sortThreads = sortThreads;
+	}
 }
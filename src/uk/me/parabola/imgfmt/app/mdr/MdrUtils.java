@@ -15,9 +15,14 @@ package uk.me.parabola.imgfmt.app.mdr;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import uk.me.parabola.imgfmt.app.srt.Sort;
 import uk.me.parabola.imgfmt.app.srt.SortKey;
+import uk.me.parabola.util.ThreadUtils;
 
 /**
  * A bunch of static routines for use in creating the MDR file.
@@ -27,6 +32,9 @@ public class MdrUtils {
 	public static final int STREET_INDEX_PREFIX_LEN = 4;
 	public static final int POI_INDEX_PREFIX_LEN = 4;
 
+	// Lists smaller than this are always sorted on the calling thread.
+	private static final int MIN_PARALLEL_SORT = 50000;
+
 	/**
 	 * Get the group number for the poi.  This is the first byte of the records
 	 * in mdr9.
@@ -89,6 +97,82 @@ public class MdrUtils {
 		return toSort;
 	}
 
+	/**
+	 * Sort records by name as {@link #sortList(Sort, List)} using several
+	 * threads.  The list is divided into pieces, the keys for each piece are
+	 * created and sorted on a separate thread and then the pieces are merged.
+	 * The merges are stable, so the result is exactly the same as sorting on
+	 * one thread.
+	 *
+	 * @param sort The sort to be applied.
+	 * @param list The list to be sorted.
+	 * @param nThreads The number of threads to use.
+	 * @return A list of sort keys in the sorted order.
+	 */
+	public static <T extends NamedRecord> List<SortKey<T>> sortList(final Sort sort, List<T> list, int nThreads) {
+		int size = list.size();
+		if (nThreads <= 1 || size < MIN_PARALLEL_SORT)
+			return sortList(sort, list);
+
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads, ThreadUtils.daemonThreadFactory("mdr-sort"));
+
+		try {
+			int pieceSize = (size + nThreads - 1) / nThreads;
+			List<Future<List<SortKey<T>>>> pieces = new ArrayList<Future<List<SortKey<T>>>>();
+			for (int start = 0; start < size; start += pieceSize) {
+				final List<T> piece = list.subList(start, Math.min(size, start + pieceSize));
+				pieces.add(pool.submit(new Callable<List<SortKey<T>>>() {
+					public List<SortKey<T>> call() {
+						return sortList(sort, piece);
+					}
+				}));
+			}
+
+			// Merge neighbouring pairs until there is only one left.
+			while (pieces.size() > 1) {
+				List<Future<List<SortKey<T>>>> merged = new ArrayList<Future<List<SortKey<T>>>>();
+				for (int i = 0; i < pieces.size(); i += 2) {
+					if (i + 1 == pieces.size()) {
+						merged.add(pieces.get(i));
+						break;
+					}
+
+					final Future<List<SortKey<T>>> left = pieces.get(i);
+					final Future<List<SortKey<T>>> right = pieces.get(i + 1);
+					merged.add(pool.submit(new Callable<List<SortKey<T>>>() {
+						public List<SortKey<T>> call() throws Exception {
+							return merge(left.get(), right.get());
+						}
+					}));
+				}
+				pieces = merged;
+			}
+
+			return ThreadUtils.waitFor(pieces.get(0), "sort the index");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Merge two sorted lists.  Where keys are equal the one from the left
+	 * list is first.
+	 */
+	private static <T> List<SortKey<T>> merge(List<SortKey<T>> left, List<SortKey<T>> right) {
+		List<SortKey<T>> result = new ArrayList<SortKey<T>>(left.size() + right.size());
+		int i = 0;
+		int j = 0;
+		while (i < left.size() && j < right.size()) {
+			if (right.get(j).compareTo(left.get(i)) < 0)
+				result.add(right.get(j++));
+			else
+				result.add(left.get(i++));
+		}
+		result.addAll(left.subList(i, left.size()));
+		result.addAll(right.subList(j, right.size()));
+		return result;
+	}
+
 	/**
 	 * The 'natural' type is always a combination of the type and subtype with the type
 	 * shifted 5 bits and the sub type in the low 5 bits.
@@ -18,10 +18,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import uk.me.parabola.imgfmt.app.BufferedImgFileReader;
 import uk.me.parabola.imgfmt.app.ImgFile;
 import uk.me.parabola.imgfmt.app.ImgFileReader;
 import uk.me.parabola.imgfmt.app.Label;
+import uk.me.parabola.imgfmt.app.MappedImgFileReader;
 import uk.me.parabola.imgfmt.app.lbl.City;
 import uk.me.parabola.imgfmt.app.lbl.LBLFileReader;
 import uk.me.parabola.imgfmt.app.lbl.Zip;
@@ -47,7 +47,7 @@ public class NETFileReader extends ImgFile {
 	public NETFileReader(ImgChannel chan) {
 		setHeader(netHeader);
 
-		setReader(new BufferedImgFileReader(chan));
+		setReader(new MappedImgFileReader(chan));
 		netHeader.readHeader(getReader());
 
 		readLabelOffsets();
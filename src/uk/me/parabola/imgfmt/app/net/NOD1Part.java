@@ -19,6 +19,7 @@ package uk.me.parabola.imgfmt.app.net;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import uk.me.parabola.imgfmt.app.Area;
 import uk.me.parabola.imgfmt.app.Coord;
@@ -236,18 +237,36 @@ public class NOD1Part {
 	 * Subdivide this part recursively until it satisfies the constraints.
 	 */
 	public List<RouteCenter> subdivide() {
-		return subdivideHelper(0);
+		return subdivide(1);
 	}
 
 	/**
 	 * Subdivide this part recursively until it satisfies the constraints.
+	 * The route centers are then created on the given number of threads,
+	 * each one only deals with its own nodes.
 	 */
-	protected List<RouteCenter> subdivideHelper(int depth) {
-		List<RouteCenter> centers = new LinkedList<RouteCenter>();
+	public List<RouteCenter> subdivide(int threads) {
+		List<Callable<RouteCenter>> tasks = new ArrayList<Callable<RouteCenter>>();
+		for (final NOD1Part part : subdivideHelper(0)) {
+			tasks.add(new Callable<RouteCenter>() {
+				public RouteCenter call() {
+					return part.toRouteCenter();
+				}
+			});
+		}
+		return RoutePool.invokeAll(tasks, threads);
+	}
+
+	/**
+	 * Subdivide this part recursively until it satisfies the constraints.
+	 * @return The parts that will each become a route center.
+	 */
+	protected List<NOD1Part> subdivideHelper(int depth) {
+		List<NOD1Part> parts = new LinkedList<NOD1Part>();
 
 		if (satisfiesConstraints()) {
-			centers.add(this.toRouteCenter());
-			return centers;
+			parts.add(this);
+			return parts;
 		}
 
 		if(depth > 48) {
@@ -255,7 +274,7 @@ public class NOD1Part {
 			log.error("  Expect the routing to be broken near " + bbox);
 			for (RouteNode node : nodes)
 				node.discard();
-			return centers;
+			return parts;
 		}
 
 		log.info("subdividing", bbox, bboxActual);
@@ -265,23 +284,23 @@ public class NOD1Part {
 		else
 			split = bboxActual.splitLat();
 
-		NOD1Part[] parts = new NOD1Part[2];
+		NOD1Part[] halves = new NOD1Part[2];
 
 		for (int i = 0; i < split.length; i++)
-			parts[i] = new NOD1Part(split[i]);
+			halves[i] = new NOD1Part(split[i]);
 
 		for (RouteNode node : nodes) {
 			int i = 0;
 			while (!split[i].contains(node.getCoord()))
 				i++;
-			parts[i].addNode(node);
+			halves[i].addNode(node);
 		}
 
-		for (NOD1Part part : parts)
+		for (NOD1Part part : halves)
 			if(!part.bboxActual.empty)
-				centers.addAll(part.subdivideHelper(depth + 1));
+				parts.addAll(part.subdivideHelper(depth + 1));
 
-		return centers;
+		return parts;
 	}
 
 	private boolean satisfiesConstraints() {
@@ -19,6 +19,7 @@ package uk.me.parabola.imgfmt.app.net;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import uk.me.parabola.imgfmt.app.BufferedImgFileReader;
 import uk.me.parabola.imgfmt.app.BufferedImgFileWriter;
@@ -57,6 +58,8 @@ public class NODFile extends ImgFile {
 	private List<RoadDef> roads = new ArrayList<RoadDef>();
 	private List<RouteNode> boundary = new ArrayList<RouteNode>();
 
+	private int threads = 1;
+
 	public NODFile(ImgChannel chan, boolean write) {
 		setHeader(nodHeader);
 		if (write) {
@@ -96,6 +99,9 @@ public class NODFile extends ImgFile {
 		Section section = nodHeader.getNodeSection();
 		writer = new SectionWriter(writer, section);
 
+		if (threads > 1)
+			encodeNodes();
+
 		for (RouteCenter cp : centers)
 			cp.write(writer);
 		nodHeader.setNodeSize(writer.position());
@@ -143,6 +149,31 @@ public class NODFile extends ImgFile {
 		nodHeader.setBoundarySize(writer.position());
 	}
 
+	/**
+	 * Encode the nodes of all the centers into their own buffers at the
+	 * same time.  They are then copied into place as each center is
+	 * written.
+	 */
+	private void encodeNodes() {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(centers.size());
+		for (final RouteCenter cp : centers) {
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					cp.encodeNodes();
+					return null;
+				}
+			});
+		}
+		RoutePool.invokeAll(tasks, threads);
+	}
+
+	/**
+	 * Set the number of threads that the route centers are encoded on.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	public void setNetwork(List<RouteCenter> centers, List<RoadDef> roads, List<RouteNode> boundary) {
 		this.centers = centers;
 		this.roads = roads;
@@ -14,9 +14,11 @@
  */
 package uk.me.parabola.imgfmt.app.net;
 
+import java.util.Arrays;
 import java.util.List;
 
 import uk.me.parabola.imgfmt.app.Area;
+import uk.me.parabola.imgfmt.app.BufferedImgFileWriter;
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.imgfmt.app.ImgFileWriter;
 import uk.me.parabola.log.Logger;
@@ -39,6 +41,9 @@ public class RouteCenter {
 	private final TableB tabB;
 	private final TableC tabC;
 
+	// The nodes already written by encodeNodes(), or null.
+	private byte[] encodedNodes;
+
 	public RouteCenter(Area area, List<RouteNode> nodes,
 					   TableA tabA, TableB tabB) {
 
@@ -73,12 +78,23 @@ public class RouteCenter {
 	 *
 	 * writer.position() is relative to the start of NOD 1.
 	 * Space for Table A is reserved but not written. See writeTableA.
+	 * If the nodes have already been encoded by encodeNodes() they are
+	 * just copied into place.
 	 */
 	public void write(ImgFileWriter writer) {
 		assert !nodes.isEmpty(): "RouteCenter without nodes";
 
-		for (RouteNode node : nodes)
-			node.write(writer);
+		boolean encoded = encodedNodes != null;
+		if (encoded) {
+			int base = writer.position();
+			writer.put(encodedNodes);
+			for (RouteNode node : nodes)
+				node.moveOffsetNod1(base);
+			encodedNodes = null;
+		} else {
+			for (RouteNode node : nodes)
+				node.write(writer);
+		}
 
 		int mult = 1 << NODHeader.DEF_ALIGN;
 
@@ -100,7 +116,8 @@ public class RouteCenter {
 			writer.put(bo);
 
 			// fill in arc pointers
-			node.writeSecond(writer);
+			if (!encoded)
+				node.writeSecond(writer);
 		}
 
 		writer.position(tablesOffset);
@@ -118,6 +135,31 @@ public class RouteCenter {
 		log.info("end of center:", writer.position());
 	}
 
+	/**
+	 * Write the nodes into a buffer of their own, so that this can be done
+	 * for several centers at the same time.  The buffer is copied into
+	 * place by write().
+	 *
+	 * Everything in the node records is relative to the node itself or to
+	 * other nodes of this center, apart from the table offset in the first
+	 * byte.  That depends on the alignment of the tables and so is left
+	 * for write() to fill in.
+	 */
+	public void encodeNodes() {
+		assert !nodes.isEmpty(): "RouteCenter without nodes";
+
+		BufferedImgFileWriter buf = new BufferedImgFileWriter(null);
+		for (RouteNode node : nodes)
+			node.write(buf);
+		int size = buf.position();
+
+		// the arc pointers are differences between node offsets
+		for (RouteNode node : nodes)
+			node.writeSecond(buf);
+
+		encodedNodes = Arrays.copyOf(buf.getBuffer().array(), size);
+	}
+
 	public void writePost(ImgFileWriter writer) {
 		// NET addresses are now known
 		tabA.writePost(writer);
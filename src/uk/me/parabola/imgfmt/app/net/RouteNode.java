@@ -58,12 +58,16 @@ public class RouteNode implements Comparable<RouteNode> {
 
 	private int offsetNod1 = -1;
 
+	// Most nodes have only a few arcs and no restrictions, so the lists
+	// start small; there are a lot of nodes in a routable map.
+	private static final int INIT_ARCS = 4;
+
 	// arcs from this node
-	private final List<RouteArc> arcs = new ArrayList<RouteArc>();
-	// restrictions at (via) this node
-	private final List<RouteRestriction> restrictions = new ArrayList<RouteRestriction>();
+	private final List<RouteArc> arcs = new ArrayList<RouteArc>(INIT_ARCS);
+	// restrictions at (via) this node, created when the first one is added
+	private List<RouteRestriction> restrictions = Collections.emptyList();
 	// arcs to this node
-	private final List<RouteArc> incomingArcs = new ArrayList<RouteArc>();
+	private final List<RouteArc> incomingArcs = new ArrayList<RouteArc>(INIT_ARCS);
 
 	private int flags = F_UNK_NEEDED;
 
@@ -114,6 +118,8 @@ public class RouteNode implements Comparable<RouteNode> {
 	}
 
 	public void addRestriction(RouteRestriction restr) {
+		if (restrictions.isEmpty())
+			restrictions = new ArrayList<RouteRestriction>(2);
 		restrictions.add(restr);
 		flags |= F_RESTRICTIONS;
 	}
@@ -203,6 +209,15 @@ public class RouteNode implements Comparable<RouteNode> {
 		flags |= F_DISCARDED;
 	}
 
+	/**
+	 * Move the node by the given amount, after it has been written into a
+	 * buffer that is then copied into NOD 1.
+	 */
+	void moveOffsetNod1(int base) {
+		offsetNod1 += base;
+		assert offsetNod1 < 0x1000000 : "node offset doesn't fit in 3 bytes";
+	}
+
 	public int getOffsetNod1() {
 		if((flags & F_DISCARDED) != 0) {
 			// return something so that the program can continue
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.imgfmt.app.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.me.parabola.imgfmt.MapFailedException;
+import uk.me.parabola.util.ThreadUtils;
+
+/**
+ * Runs the work on each route center on a number of threads.  The tasks
+ * must only touch the nodes, arcs and tables of their own center.
+ *
+ * @author agent
+ */
+class RoutePool {
+	private RoutePool() {
+	}
+
+	/**
+	 * Run all the tasks and return their results in the same order.
+	 *
+	 * @param tasks The tasks, usually one for each center.
+	 * @param threads The number of threads to use.  With one thread the
+	 * tasks are simply run in turn.
+	 */
+	static <T> List<T> invokeAll(List<Callable<T>> tasks, int threads) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (threads <= 1 || tasks.size() < 2) {
+			for (Callable<T> task : tasks)
+				results.add(call(task));
+			return results;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), ThreadUtils.daemonThreadFactory("route"));
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+			for (Callable<T> task : tasks)
+				futures.add(pool.submit(task));
+			for (Future<T> future : futures)
+				results.add(ThreadUtils.waitFor(future, "build the route centers"));
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MapFailedException("Failed to build the route centers", e);
+		}
+	}
+}
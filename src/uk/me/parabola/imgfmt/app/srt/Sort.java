@@ -51,7 +51,9 @@ public class Sort {
 	private final List<CodePosition> expansions = new ArrayList<CodePosition>();
 	private int maxExpSize = 1;
 
-	private CharsetEncoder encoder;
+	// Encoders are not thread safe, so there is one for each thread that
+	// creates sort keys.
+	private final ThreadLocal<CharsetEncoder> encoders = new ThreadLocal<CharsetEncoder>();
 
 	public void add(int ch, int primary, int secondary, int tertiary, int flags) {
 		if (this.primary[ch & 0xff] != 0)
@@ -104,7 +106,7 @@ public class Sort {
 
 		CharBuffer inb = CharBuffer.wrap(s);
 		try {
-			ByteBuffer out = encoder.encode(inb);
+			ByteBuffer out = getEncoder().encode(inb);
 			byte[] bval = out.array();
 
 			// In theory you could have a string where every character expands into maxExpSize separate characters
@@ -259,8 +261,19 @@ public class Sort {
 			charset = Charset.forName("ms932");
 		else
 			charset = Charset.forName("cp" + codepage);
-		encoder = charset.newEncoder();
-		encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Get the encoder for the charset of this sort, for the current thread.
+	 */
+	private CharsetEncoder getEncoder() {
+		CharsetEncoder encoder = encoders.get();
+		if (encoder == null || encoder.charset() != charset) {
+			encoder = charset.newEncoder();
+			encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			encoders.set(encoder);
+		}
+		return encoder;
 	}
 
 	public String getDescription() {
@@ -333,7 +346,6 @@ public class Sort {
 			sort.add(i, i, 0, 0, 0);
 		}
 		sort.charset = Charset.forName("ascii");
-		sort.encoder = sort.charset.newEncoder();
 		sort.setDescription("Default sort");
 		sort.setCodepage(codepage == 0? 1252: codepage);
 		return sort;
@@ -366,6 +378,7 @@ public class Sort {
 			byte[] bytes1;
 			byte[] bytes2;
 			try {
+				CharsetEncoder encoder = getEncoder();
 				bytes1 = encoder.encode(in1).array();
 				bytes2 = encoder.encode(in2).array();
 			} catch (CharacterCodingException e) {
@@ -16,10 +16,10 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import uk.me.parabola.imgfmt.app.BufferedImgFileReader;
 import uk.me.parabola.imgfmt.app.ImgFileReader;
 import uk.me.parabola.imgfmt.app.ImgReader;
 import uk.me.parabola.imgfmt.app.Label;
+import uk.me.parabola.imgfmt.app.MappedImgFileReader;
 import uk.me.parabola.imgfmt.app.lbl.LBLFileReader;
 import uk.me.parabola.imgfmt.app.lbl.POIRecord;
 import uk.me.parabola.imgfmt.app.net.NETFileReader;
@@ -48,7 +48,7 @@ public class RGNFileReader extends ImgReader {
 		rgnHeader = new RGNHeader();
 		setHeader(rgnHeader);
 
-		setReader(new BufferedImgFileReader(chan));
+		setReader(new MappedImgFileReader(chan));
 		rgnHeader.readHeader(getReader());
 	}
 
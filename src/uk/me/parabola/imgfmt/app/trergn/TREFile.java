@@ -354,10 +354,18 @@ public class TREFile extends ImgFile implements Configurable {
 		header.setMapId(mapid);
 	}
 
+	public int getMapId() {
+		return header.getMapId();
+	}
+
 	public void setBounds(Area area) {
 		header.setBounds(area);
 	}
 
+	public Area getBounds() {
+		return header.getBounds();
+	}
+
 	public void setPoiDisplayFlags(byte b) {
 		header.setPoiDisplayFlags(b);
 	}
@@ -16,9 +16,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import uk.me.parabola.imgfmt.app.Area;
-import uk.me.parabola.imgfmt.app.BufferedImgFileReader;
 import uk.me.parabola.imgfmt.app.ImgFileReader;
 import uk.me.parabola.imgfmt.app.ImgReader;
+import uk.me.parabola.imgfmt.app.MappedImgFileReader;
 import uk.me.parabola.imgfmt.fs.ImgChannel;
 import uk.me.parabola.util.EnhancedProperties;
 
@@ -46,7 +46,7 @@ public class TREFileReader extends ImgReader {
 	public TREFileReader(ImgChannel chan) {
 		setHeader(header);
 
-		setReader(new BufferedImgFileReader(chan));
+		setReader(new MappedImgFileReader(chan));
 		header.readHeader(getReader());
 		readMapLevels();
 		readSubdivs();
@@ -56,6 +56,10 @@ public class FileImgChannel implements ImgChannel {
 		return n;
 	}
 
+	FileChannel getChannel() {
+		return channel;
+	}
+
 	public boolean isOpen() {
 		return channel.isOpen();
 	}
@@ -18,12 +18,15 @@ package uk.me.parabola.imgfmt.sys;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.NonReadableChannelException;
 import java.nio.channels.NonWritableChannelException;
+import java.util.ArrayList;
+import java.util.List;
 
 import uk.me.parabola.imgfmt.fs.ImgChannel;
 import uk.me.parabola.log.Logger;
@@ -219,39 +222,18 @@ public class FileNode implements ImgChannel {
 		if (!open)
 			throw new ClosedChannelException();
 
-		int blockSize = blockManager.getBlockSize();
-
 		// Get the size of this write
 		int size = src.remaining();
 
-		// Loop over each block, this is to support the case (which we may
-		// not implement) of non-contiguous blocks.
-
 		int totalWritten = 0;
 		while (size > 0) {
-			// Get the logical block, ie the block as we see it in our file.
-			int lblock = (int) (position/blockSize);
-
-			// First need to allocate enough blocks for this write. First check
-			// if the block exists already
-			int pblock = dirent.getPhysicalBlock(lblock);
-			log.debug("lblock / pblock", lblock, '/', pblock);
-			if (pblock == 0xffff) {
-				log.debug("allocating new block");
-				pblock = blockManager.allocate();
-				dirent.addBlock(pblock);
-			}
+			// Allocate the blocks for this write as needed.  Blocks are
+			// normally allocated one after the other, so a large write is
+			// done in one go and not a block at a time.
+			int n = (int) runLength(size, true);
 
 			// Position the underlying file, so that it is in the correct place.
-			int off = (int) (position - lblock*blockSize);
-			file.position((long) pblock * blockSize + off);
-
-			int n = size;
-			if (n > blockSize)
-				n = blockSize;
-
-			if (off != 0)
-				n = Math.min(n, blockSize - off);
+			file.position(physicalPosition());
 
 			src.limit(src.position() + n);
 
@@ -273,6 +255,151 @@ public class FileNode implements ImgChannel {
 		return totalWritten;
 	}
 
+	/**
+	 * Copy the rest of another file into this one, starting at the current
+	 * position of both.  When possible the data is transferred directly
+	 * between the underlying files, a run of contiguous blocks at a time,
+	 * without passing through a buffer.
+	 *
+	 * @param src The file to copy from.
+	 * @return The number of bytes copied.
+	 * @throws IOException If the copy fails.
+	 */
+	public long transferFrom(ImgChannel src) throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+		if (!writeable)
+			throw new NonWritableChannelException();
+
+		if (src instanceof FileImgChannel) {
+			FileChannel in = ((FileImgChannel) src).getChannel();
+			long count = transfer(in, src.position(), in.size() - src.position());
+			src.position(src.position() + count);
+			return count;
+		}
+
+		if (src instanceof FileNode) {
+			FileNode node = (FileNode) src;
+			if (node.readable && node.xorByte == 0 && node.file != file)
+				return transferFrom(node);
+		}
+
+		long total = 0;
+		ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+		int n;
+		while ((n = src.read(buf)) > 0) {
+			buf.flip();
+			write(buf);
+			buf.clear();
+			total += n;
+		}
+		return total;
+	}
+
+	private long transferFrom(FileNode src) throws IOException {
+		if (!src.open)
+			throw new ClosedChannelException();
+
+		long total = 0;
+		long size = src.dirent.getSize() - src.position;
+		while (size > 0) {
+			long n = src.runLength(size, false);
+			if (n == 0)
+				break;
+
+			n = transfer(src.file, src.physicalPosition(), n);
+			size -= n;
+			src.position += n;
+			total += n;
+		}
+		return total;
+	}
+
+	/**
+	 * Transfer a section of a file into this one at the current position.
+	 *
+	 * @param in The file to copy from.
+	 * @param inPosition The position in the underlying file to start at.
+	 * @param count The number of bytes to copy.
+	 * @return The number of bytes copied, less than count only if the input
+	 * file is too short.
+	 */
+	private long transfer(FileChannel in, long inPosition, long count) throws IOException {
+		long total = 0;
+		while (total < count) {
+			long n = runLength(count - total, true);
+			file.position(physicalPosition());
+
+			long nt = in.transferTo(inPosition + total, n, file);
+			if (nt == 0)
+				break;
+
+			position += nt;
+			total += nt;
+
+			if (position > dirent.getSize())
+				dirent.setSize((int) position);
+		}
+		return total;
+	}
+
+	/**
+	 * Find how much of this file, starting at the current position, lies in
+	 * consecutive blocks of the underlying file.
+	 *
+	 * @param max The most that is wanted.
+	 * @param allocate Allocate any blocks that do not exist yet, for writing.
+	 * @return The number of bytes, up to max, that can be read or written in
+	 * one go.  Zero if the block at the current position does not exist.
+	 */
+	private long runLength(long max, boolean allocate) {
+		int blockSize = blockManager.getBlockSize();
+		int lblock = (int) (position / blockSize);
+		int pblock = getBlock(lblock, allocate);
+		if (pblock == 0xffff)
+			return 0;
+
+		int off = (int) (position - (long) lblock * blockSize);
+		long n = Math.min(max, blockSize - off);
+		int last = pblock;
+		while (n < max) {
+			int next = getBlock(++lblock, allocate);
+			if (next == 0xffff || next != last + 1)
+				break;
+			last = next;
+			n += Math.min(max - n, blockSize);
+		}
+		return n;
+	}
+
+	/**
+	 * Get the physical block for a logical block of this file.
+	 *
+	 * @param allocate If true a new block is allocated if the file does not
+	 * reach that far yet.
+	 * @return The physical block, or 0xffff if it does not exist.
+	 */
+	private int getBlock(int lblock, boolean allocate) {
+		int pblock = dirent.getPhysicalBlock(lblock);
+		log.debug("lblock / pblock", lblock, '/', pblock);
+		if (pblock == 0xffff && allocate) {
+			log.debug("allocating new block");
+			pblock = blockManager.allocate();
+			dirent.addBlock(pblock);
+		}
+		return pblock;
+	}
+
+	/**
+	 * The position in the underlying file that corresponds to the current
+	 * position.  The block must exist.
+	 */
+	private long physicalPosition() {
+		int blockSize = blockManager.getBlockSize();
+		int lblock = (int) (position / blockSize);
+		return (long) dirent.getPhysicalBlock(lblock) * blockSize + (position - (long) lblock * blockSize);
+	}
+
 	public long position() {
 		return position;
 	}
@@ -323,4 +450,63 @@ public class FileNode implements ImgChannel {
 	public void setXorByte(byte xorByte) {
 		this.xorByte = xorByte;
 	}
+
+	/**
+	 * The value that every byte of the file has been XORed with, zero
+	 * when it has not been.
+	 */
+	public byte getXorByte() {
+		return xorByte;
+	}
+
+	/**
+	 * Map the whole of this file into memory.  There is one read only
+	 * buffer for each run of consecutive blocks in the underlying file, so
+	 * there is usually just one.  The bytes are as they are in the file,
+	 * they are not XORed; see getXorByte().
+	 *
+	 * @return The runs in the order of the file, in little endian order.
+	 * Together they are the size of the file, unless the file is truncated.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	public List<ByteBuffer> map() throws IOException {
+		if (!open)
+			throw new ClosedChannelException();
+		if (!readable)
+			throw new NonReadableChannelException();
+
+		int blockSize = blockManager.getBlockSize();
+		long fileSize = dirent.getSize();
+		long realSize = file.size();
+
+		List<ByteBuffer> runs = new ArrayList<ByteBuffer>();
+		long pos = 0;
+		int lblock = 0;
+		while (pos < fileSize) {
+			int start = dirent.getPhysicalBlock(lblock);
+			if (start == 0xffff)
+				break;
+
+			int nblocks = 1;
+			while (pos + (long) nblocks * blockSize < fileSize
+					&& dirent.getPhysicalBlock(lblock + nblocks) == start + nblocks)
+				nblocks++;
+
+			long physical = (long) start * blockSize;
+			long want = Math.min((long) nblocks * blockSize, fileSize - pos);
+			long len = Math.min(want, realSize - physical);
+			if (len <= 0)
+				break;
+
+			ByteBuffer buf = file.map(FileChannel.MapMode.READ_ONLY, physical, len);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+			runs.add(buf);
+			if (len < want)
+				break;
+
+			pos += len;
+			lblock += nblocks;
+		}
+		return runs;
+	}
 }
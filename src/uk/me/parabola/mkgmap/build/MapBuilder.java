@@ -24,6 +24,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import uk.me.parabola.imgfmt.ExitException;
 import uk.me.parabola.imgfmt.app.Coord;
@@ -82,6 +86,7 @@ import uk.me.parabola.mkgmap.general.RoadNetwork;
 import uk.me.parabola.mkgmap.reader.MapperBasedMapDataSource;
 import uk.me.parabola.util.Configurable;
 import uk.me.parabola.util.EnhancedProperties;
+import uk.me.parabola.util.ThreadUtils;
 
 /**
  * This is the core of the code to translate from the general representation
@@ -129,6 +134,7 @@ public class MapBuilder implements Configurable {
 	private boolean enableLineCleanFilters = true;
 	private boolean makePOIIndex;
 	private int routeCenterBoundaryType;
+	private int subdivisionThreads = 1;
 	
 	private LBLFile lblFile;
 
@@ -161,6 +167,8 @@ public class MapBuilder implements Configurable {
 		routeCenterBoundaryType = props.getProperty("route-center-boundary", 0);
 
 		licenseFileName = props.getProperty("license-file", null);
+
+		subdivisionThreads = ThreadUtils.getThreadCount(props, "subdivision-threads");
 		
 		locationAutofill = LocatorUtil.parseAutofillOption(props);
 		
@@ -213,6 +221,7 @@ public class MapBuilder implements Configurable {
 			NODFile nodFile = map.getNodFile();
 			if (nodFile != null) {
 				nodFile.setNetwork(network.getCenters(), network.getRoadDefs(), network.getBoundary());
+				nodFile.setThreads(network.getThreads());
 				nodFile.write();
 			}
 			netFile.write(lblFile.numCities(), lblFile.numZips());
@@ -630,31 +639,120 @@ public class MapBuilder implements Configurable {
 		List<SourceSubdiv> srcList = Collections.singletonList(new SourceSubdiv(src, topdiv));
 
 		// Now the levels filled with features.
-		for (LevelInfo linfo : levels) {
-			List<SourceSubdiv> nextList = new ArrayList<SourceSubdiv>();
+		ExecutorService pool = null;
+		if (subdivisionThreads > 1) {
+			pool = Executors.newFixedThreadPool(subdivisionThreads, ThreadUtils.daemonThreadFactory("subdivision-filter"));
+		}
 
-			Zoom zoom = map.createZoom(linfo.getLevel(), linfo.getBits());
+		try {
+			for (LevelInfo linfo : levels) {
+				Zoom zoom = map.createZoom(linfo.getLevel(), linfo.getBits());
 
-			for (SourceSubdiv srcDivPair : srcList) {
+				if (pool == null)
+					srcList = makeLevel(map, srcList, zoom);
+				else
+					srcList = makeLevelParallel(map, srcList, zoom, pool);
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+		}
+	}
 
-				MapSplitter splitter = new MapSplitter(srcDivPair.getSource(), zoom);
-				MapArea[] areas = splitter.split();
-				log.info("Map region", srcDivPair.getSource().getBounds(), "split into", areas.length, "areas at resolution", zoom.getResolution());
+	/**
+	 * Make all the subdivisions for one level, by splitting each of the areas
+	 * from the level above.
+	 *
+	 * @param map The map.
+	 * @param srcList The areas and subdivisions of the level above.
+	 * @param zoom The zoom level to make.
+	 * @return The areas and subdivisions of this level.
+	 */
+	private List<SourceSubdiv> makeLevel(Map map, List<SourceSubdiv> srcList, Zoom zoom) {
+		List<SourceSubdiv> nextList = new ArrayList<SourceSubdiv>();
 
-				for (MapArea area : areas) {
-					Subdivision parent = srcDivPair.getSubdiv();
-					Subdivision div = makeSubdivision(map, parent, area, zoom);
-					if (log.isDebugEnabled())
-						log.debug("ADD parent-subdiv", parent, srcDivPair.getSource(), ", z=", zoom, " new=", div);
-					nextList.add(new SourceSubdiv(area, div));
-				}
+		for (SourceSubdiv srcDivPair : srcList) {
+			MapArea[] areas = splitArea(srcDivPair, zoom);
+
+			for (MapArea area : areas) {
+				Subdivision parent = srcDivPair.getSubdiv();
+				Subdivision div = makeSubdivision(map, parent, area, zoom, null);
+				if (log.isDebugEnabled())
+					log.debug("ADD parent-subdiv", parent, srcDivPair.getSource(), ", z=", zoom, " new=", div);
+				nextList.add(new SourceSubdiv(area, div));
+			}
+
+			Subdivision lastdiv = nextList.get(nextList.size() - 1).getSubdiv();
+			lastdiv.setLast(true);
+		}
+
+		return nextList;
+	}
+
+	/**
+	 * Make all the subdivisions for one level, with the lines and shapes of
+	 * the areas filtered on the pool.  The subdivisions are still created and
+	 * written one at a time in the same order as {@link #makeLevel}.
+	 *
+	 * The preserved flag is set on points that are shared between areas, so
+	 * this is done for the whole level before any filtering starts.  That way
+	 * the result does not depend on the order the areas are filtered in.
+	 */
+	private List<SourceSubdiv> makeLevelParallel(Map map, List<SourceSubdiv> srcList, Zoom zoom,
+			ExecutorService pool)
+	{
+		final int res = zoom.getResolution();
+
+		List<MapArea[]> splits = new ArrayList<MapArea[]>(srcList.size());
+		List<List<MapLine>> mergedLines = new ArrayList<List<MapLine>>();
+		for (SourceSubdiv srcDivPair : srcList) {
+			MapArea[] areas = splitArea(srcDivPair, zoom);
+			splits.add(areas);
+
+			for (MapArea area : areas) {
+				List<MapLine> lines = mergeLines(area.getLines(), res);
+				mergedLines.add(lines);
+				preserveLines(lines, res);
+				preserveLines(area.getShapes(), res);
+			}
+		}
 
-				Subdivision lastdiv = nextList.get(nextList.size() - 1).getSubdiv();
-				lastdiv.setLast(true);
+		List<Future<FilteredArea>> results = new ArrayList<Future<FilteredArea>>(mergedLines.size());
+		int n = 0;
+		for (MapArea[] areas : splits) {
+			for (final MapArea area : areas) {
+				final List<MapLine> lines = mergedLines.get(n++);
+				results.add(pool.submit(new Callable<FilteredArea>() {
+					public FilteredArea call() {
+						return new FilteredArea(filterLines(lines, res, false),
+								filterShapes(area.getShapes(), res, false));
+					}
+				}));
+			}
+		}
+
+		List<SourceSubdiv> nextList = new ArrayList<SourceSubdiv>();
+		n = 0;
+		for (int i = 0; i < srcList.size(); i++) {
+			Subdivision parent = srcList.get(i).getSubdiv();
+			for (MapArea area : splits.get(i)) {
+				FilteredArea filtered = ThreadUtils.waitFor(results.get(n++), "filter a subdivision");
+				Subdivision div = makeSubdivision(map, parent, area, zoom, filtered);
+				nextList.add(new SourceSubdiv(area, div));
 			}
 
-			srcList = nextList;
+			Subdivision lastdiv = nextList.get(nextList.size() - 1).getSubdiv();
+			lastdiv.setLast(true);
 		}
+
+		return nextList;
+	}
+
+	private MapArea[] splitArea(SourceSubdiv srcDivPair, Zoom zoom) {
+		MapSplitter splitter = new MapSplitter(srcDivPair.getSource(), zoom);
+		MapArea[] areas = splitter.split();
+		log.info("Map region", srcDivPair.getSource().getBounds(), "split into", areas.length, "areas at resolution", zoom.getResolution());
+		return areas;
 	}
 
 	/**
@@ -687,9 +785,13 @@ public class MapBuilder implements Configurable {
 	 * @param parent The parent division.
 	 * @param ma	 The area of the map that we are fitting into this division.
 	 * @param z	  The zoom level.
+	 * @param filtered The lines and shapes already filtered, or null to
+	 * filter them here.
 	 * @return The new subdivsion.
 	 */
-	private Subdivision makeSubdivision(Map map, Subdivision parent, MapArea ma, Zoom z) {
+	private Subdivision makeSubdivision(Map map, Subdivision parent, MapArea ma, Zoom z,
+			FilteredArea filtered)
+	{
 		List<MapPoint> points = ma.getPoints();
 		List<MapLine> lines = ma.getLines();
 		List<MapShape> shapes = ma.getShapes();
@@ -708,8 +810,13 @@ public class MapBuilder implements Configurable {
 		div.startDivision();
 
 		processPoints(map, div, points);
-		processLines(map, div, lines);
-		processShapes(map, div, shapes);
+		if (filtered == null) {
+			processLines(map, div, lines);
+			processShapes(map, div, shapes);
+		} else {
+			addLines(map, div, filtered.getLines());
+			addShapes(map, div, filtered.getShapes());
+		}
 
 		div.endDivision();
 
@@ -951,24 +1058,39 @@ public class MapBuilder implements Configurable {
 	 */
 	private void processLines(Map map, Subdivision div, List<MapLine> lines)
 	{
-		div.startLines();  // Signal that we are beginning to draw the lines.
-
 		int res = div.getResolution();
+		addLines(map, div, filterLines(mergeLines(lines, res), res, true));
+	}
 
-		FilterConfig config = new FilterConfig();
-		config.setResolution(res);
-
-
+	private List<MapLine> mergeLines(List<MapLine> lines, int res) {
 		//TODO: Maybe this is the wrong place to do merging.
 		// Maybe more efficient if merging before creating subdivisions.
 		if (mergeLines && res < 22) {
 			LineMergeFilter merger = new LineMergeFilter();
-			lines = merger.merge(lines);
+			return merger.merge(lines);
 		}
+		return lines;
+	}
+
+	/**
+	 * Run the lines through the filters.  Nothing is added to the map here, so
+	 * this can be done for several subdivisions at once.
+	 *
+	 * @param lines The lines to filter.
+	 * @param res The resolution of the subdivision.
+	 * @param preserve Run the filter to preserve horizontal and vertical lines.
+	 * This is false when {@link #preserveLines} has already been called.
+	 * @return The lines to add to the subdivision.
+	 */
+	private List<MapElement> filterLines(List<MapLine> lines, int res, boolean preserve) {
+		FilterConfig config = new FilterConfig();
+		config.setResolution(res);
 
+		List<MapElement> result = new ArrayList<MapElement>();
 		LayerFilterChain filters = new LayerFilterChain(config);
 		if (enableLineCleanFilters && (res < 24)) {
-			filters.addFilter(new PreserveHorizontalAndVerticalLinesFilter());
+			if (preserve)
+				filters.addFilter(new PreserveHorizontalAndVerticalLinesFilter());
 			filters.addFilter(new RoundCoordsFilter());
 			filters.addFilter(new SizeFilter(MIN_SIZE_LINE));
 			if(reducePointError > 0)
@@ -976,7 +1098,7 @@ public class MapBuilder implements Configurable {
 		}
 		filters.addFilter(new LineSplitterFilter());
 		filters.addFilter(new RemoveEmpty());
-		filters.addFilter(new LineAddFilter(div, map, doRoads));
+		filters.addFilter(new CollectFilter(result));
 		
 		for (MapLine line : lines) {
 			if (line.getMinResolution() > res || line.getMaxResolution() < res)
@@ -984,6 +1106,14 @@ public class MapBuilder implements Configurable {
 
 			filters.startFilter(line);
 		}
+		return result;
+	}
+
+	private void addLines(Map map, Subdivision div, List<MapElement> lines) {
+		div.startLines();  // Signal that we are beginning to draw the lines.
+
+		for (MapElement line : lines)
+			addLine(map, div, (MapLine) line);
 	}
 
 	/**
@@ -999,15 +1129,21 @@ public class MapBuilder implements Configurable {
 	 */
 	private void processShapes(Map map, Subdivision div, List<MapShape> shapes)
 	{
-		div.startShapes();  // Signal that we are beginning to draw the shapes.
-
-		int res = div.getResolution();
+		addShapes(map, div, filterShapes(shapes, div.getResolution(), true));
+	}
 
+	/**
+	 * Run the polygons through the filters, the same as {@link #filterLines}.
+	 */
+	private List<MapElement> filterShapes(List<MapShape> shapes, int res, boolean preserve) {
 		FilterConfig config = new FilterConfig();
 		config.setResolution(res);
+
+		List<MapElement> result = new ArrayList<MapElement>();
 		LayerFilterChain filters = new LayerFilterChain(config);
 		if (enableLineCleanFilters && (res < 24)) {
-			filters.addFilter(new PreserveHorizontalAndVerticalLinesFilter());
+			if (preserve)
+				filters.addFilter(new PreserveHorizontalAndVerticalLinesFilter());
 			filters.addFilter(new RoundCoordsFilter());
 			if (minSizePolygon > 0)
 				filters.addFilter(new SizeFilter(minSizePolygon));
@@ -1018,7 +1154,7 @@ public class MapBuilder implements Configurable {
 		}
 		filters.addFilter(new PolygonSplitterFilter());
 		filters.addFilter(new RemoveEmpty());
-		filters.addFilter(new ShapeAddFilter(div, map));
+		filters.addFilter(new CollectFilter(result));
 
 		for (MapShape shape : shapes) {
 			if (shape.getMinResolution() > res || shape.getMaxResolution() < res)
@@ -1026,6 +1162,30 @@ public class MapBuilder implements Configurable {
 
 			filters.startFilter(shape);
 		}
+		return result;
+	}
+
+	private void addShapes(Map map, Subdivision div, List<MapElement> shapes) {
+		div.startShapes();  // Signal that we are beginning to draw the shapes.
+
+		for (MapElement shape : shapes)
+			addShape(map, div, (MapShape) shape);
+	}
+
+	/**
+	 * Do the work of the {@link PreserveHorizontalAndVerticalLinesFilter} for
+	 * all the lines or shapes that will be filtered at this resolution.
+	 */
+	private void preserveLines(List<? extends MapLine> lines, int res) {
+		if (!enableLineCleanFilters || res >= 24)
+			return;
+
+		for (MapLine line : lines) {
+			if (line.getMinResolution() > res || line.getMaxResolution() < res)
+				continue;
+
+			PreserveHorizontalAndVerticalLinesFilter.preserve(line.getPoints());
+		}
 	}
 
 	Highway makeHighway(Map map, String ref) {
@@ -1084,76 +1244,88 @@ public class MapBuilder implements Configurable {
 		}
 	}
 
-	private class LineAddFilter extends BaseFilter implements MapFilter {
-		private final Subdivision div;
-		private final Map map;
-		private final boolean doRoads;
+	/**
+	 * The lines and shapes of an area after filtering.
+	 */
+	private static class FilteredArea {
+		private final List<MapElement> lines;
+		private final List<MapElement> shapes;
+
+		FilteredArea(List<MapElement> lines, List<MapElement> shapes) {
+			this.lines = lines;
+			this.shapes = shapes;
+		}
+
+		public List<MapElement> getLines() {
+			return lines;
+		}
+
+		public List<MapElement> getShapes() {
+			return shapes;
+		}
+	}
+
+	/**
+	 * The last filter in a chain, saves everything that gets this far.
+	 */
+	private static class CollectFilter extends BaseFilter implements MapFilter {
+		private final List<MapElement> result;
 
-		LineAddFilter(Subdivision div, Map map, boolean doRoads) {
-			this.div = div;
-			this.map = map;
-			this.doRoads = doRoads;
+		CollectFilter(List<MapElement> result) {
+			this.result = result;
 		}
 
 		public void doFilter(MapElement element, MapFilterChain next) {
-			MapLine line = (MapLine) element;
-			assert line.getPoints().size() < 255 : "too many points";
-
-			Polyline pl = div.createLine(line.getName(), line.getRef());
-			if (element.hasExtendedType()) {
-				ExtTypeAttributes eta = element.getExtTypeAttributes();
-				if (eta != null) {
-					eta.processLabels(map.getLblFile());
-					pl.setExtTypeAttributes(eta);
-				}
-			} else
-				div.setPolylineNumber(pl);
+			result.add(element);
+		}
+	}
 
-			pl.setDirection(line.isDirection());
+	private void addLine(Map map, Subdivision div, MapLine line) {
+		assert line.getPoints().size() < 255 : "too many points";
 
-			pl.addCoords(line.getPoints());
+		Polyline pl = div.createLine(line.getName(), line.getRef());
+		if (line.hasExtendedType()) {
+			ExtTypeAttributes eta = line.getExtTypeAttributes();
+			if (eta != null) {
+				eta.processLabels(map.getLblFile());
+				pl.setExtTypeAttributes(eta);
+			}
+		} else
+			div.setPolylineNumber(pl);
 
-			pl.setType(line.getType());
+		pl.setDirection(line.isDirection());
 
-			if (doRoads && line.isRoad()) {
-				if (log.isDebugEnabled())
-					log.debug("adding road def: " + line.getName());
-				RoadDef roaddef = ((MapRoad) line).getRoadDef();
+		pl.addCoords(line.getPoints());
 
-				pl.setRoadDef(roaddef);
-				roaddef.addPolylineRef(pl);
-			}
+		pl.setType(line.getType());
 
-			map.addMapObject(pl);
-		}
-	}
-	
-	private static class ShapeAddFilter extends BaseFilter implements MapFilter {
-		private final Subdivision div;
-		private final Map map;
+		if (doRoads && line.isRoad()) {
+			if (log.isDebugEnabled())
+				log.debug("adding road def: " + line.getName());
+			RoadDef roaddef = ((MapRoad) line).getRoadDef();
 
-		ShapeAddFilter(Subdivision div, Map map) {
-			this.div = div;
-			this.map = map;
+			pl.setRoadDef(roaddef);
+			roaddef.addPolylineRef(pl);
 		}
 
-		public void doFilter(MapElement element, MapFilterChain next) {
-			MapShape shape = (MapShape) element;
-			assert shape.getPoints().size() < 255 : "too many points";
+		map.addMapObject(pl);
+	}
 
-			Polygon pg = div.createPolygon(shape.getName());
+	private static void addShape(Map map, Subdivision div, MapShape shape) {
+		assert shape.getPoints().size() < 255 : "too many points";
 
-			pg.addCoords(shape.getPoints());
+		Polygon pg = div.createPolygon(shape.getName());
 
-			pg.setType(shape.getType());
-			if(element.hasExtendedType()) {
-				ExtTypeAttributes eta = element.getExtTypeAttributes();
-				if(eta != null) {
-					eta.processLabels(map.getLblFile());
-					pg.setExtTypeAttributes(eta);
-				}
+		pg.addCoords(shape.getPoints());
+
+		pg.setType(shape.getType());
+		if(shape.hasExtendedType()) {
+			ExtTypeAttributes eta = shape.getExtTypeAttributes();
+			if(eta != null) {
+				eta.processLabels(map.getLblFile());
+				pg.setExtTypeAttributes(eta);
 			}
-			map.addMapObject(pg);
 		}
+		map.addMapObject(pg);
 	}
 }
@@ -28,6 +28,7 @@ import uk.me.parabola.imgfmt.Utils;
 import uk.me.parabola.imgfmt.app.Area;
 import uk.me.parabola.imgfmt.app.BufferedImgFileReader;
 import uk.me.parabola.imgfmt.app.lbl.LBLFileReader;
+import uk.me.parabola.imgfmt.app.map.MapSummary;
 import uk.me.parabola.imgfmt.app.srt.Sort;
 import uk.me.parabola.imgfmt.app.trergn.TREFileReader;
 import uk.me.parabola.imgfmt.app.trergn.TREHeader;
@@ -149,7 +150,11 @@ public class FileInfo {
 		FileInfo info;
 
 		if (ext.equals("IMG")) {
-			info = imgInfo(inputName);
+			MapSummary summary = MapSummary.read(inputName);
+			if (summary != null)
+				info = summaryInfo(inputName, summary);
+			else
+				info = imgInfo(inputName);
 		} else if ("TYP".equals(ext)) {
 			info = fileInfo(inputName, TYP_KIND);
 		} else if (KNOWN_FILE_TYPE_EXT.contains(ext)) {
@@ -219,20 +224,7 @@ public class FileInfo {
 
 			FileInfo info = new FileInfo(inputName, UNKNOWN_KIND);
 			info.setDescription(params.getMapDescription());
-
-			File f = new File(inputName);
-			String name = f.getName();
-			int dot = name.lastIndexOf('.');
-			if (dot < 0) {
-				name = "0";
-			} else {
-				if (dot > name.length())
-					dot = name.length();
-				if (dot > 8)
-					dot = 8;
-				name = name.substring(0, dot);
-			}
-			info.setMapname(name);
+			info.setMapname(mapnameFromFilename(inputName));
 
 			boolean hasTre = false;
 			List<DirectoryEntry> entries = imgFs.list();
@@ -280,6 +272,69 @@ public class FileInfo {
 		}
 	}
 
+	/**
+	 * An IMG file that was made by mkgmap and has a summary saved alongside
+	 * it.  All the information is taken from the summary, without opening the
+	 * file.
+	 *
+	 * @param inputName The name of the file.
+	 * @param summary The summary that was saved when the file was made.
+	 * @return The information, the same as imgInfo() would give.
+	 */
+	private static FileInfo summaryInfo(String inputName, MapSummary summary) {
+		log.info("Using summary for", inputName);
+		FileInfo info = new FileInfo(inputName, IMG_KIND);
+		info.setDescription(summary.getDescription());
+		info.setMapname(mapnameFromFilename(inputName));
+		info.setInnername(summary.getInnername());
+		info.setBounds(summary.getBounds());
+		List<String> copyrights = summary.getCopyrights();
+		info.setCopyrights(copyrights.toArray(new String[copyrights.size()]));
+		info.setHexname(summary.getMapId());
+		info.setCodePage(summary.getCodePage());
+		info.setSortOrderId(summary.getSortOrderId());
+
+		List<String> subfiles = summary.getSubfiles();
+		for (int i = 0; i < subfiles.size(); i++) {
+			String name = subfiles.get(i);
+			String ext = name.substring(name.lastIndexOf('.') + 1);
+			int size = summary.getSubfileSizes().get(i);
+
+			if ("TRE".equals(ext))
+				info.setTresize(size);
+			else if ("RGN".equals(ext))
+				info.setRgnsize(size);
+			else if ("LBL".equals(ext))
+				info.setLblsize(size);
+			else if ("NET".equals(ext))
+				info.setNetsize(size);
+			else if ("NOD".equals(ext))
+				info.setNodsize(size);
+
+			info.fileSizes.add(size);
+		}
+		return info;
+	}
+
+	/**
+	 * The map name is the part of the file name before the extension, up to
+	 * eight characters.
+	 */
+	private static String mapnameFromFilename(String inputName) {
+		String name = new File(inputName).getName();
+		int dot = name.lastIndexOf('.');
+		if (dot < 0) {
+			name = "0";
+		} else {
+			if (dot > name.length())
+				dot = name.length();
+			if (dot > 8)
+				dot = 8;
+			name = name.substring(0, dot);
+		}
+		return name;
+	}
+
 	/**
 	 * Obtain the information that we need from the TRE section.
 	 * @param imgFs The filesystem
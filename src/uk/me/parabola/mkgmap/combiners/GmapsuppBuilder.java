@@ -39,9 +39,11 @@ import uk.me.parabola.imgfmt.mps.MpsFile;
 import uk.me.parabola.imgfmt.mps.MpsFileReader;
 import uk.me.parabola.imgfmt.mps.ProductBlock;
 import uk.me.parabola.imgfmt.sys.FileImgChannel;
+import uk.me.parabola.imgfmt.sys.FileNode;
 import uk.me.parabola.imgfmt.sys.ImgFS;
 import uk.me.parabola.log.Logger;
 import uk.me.parabola.mkgmap.CommandArgs;
+import uk.me.parabola.util.ThreadUtils;
 
 /**
  * Create the gmapsupp file.  There is nothing much special about this file
@@ -79,6 +81,7 @@ public class GmapsuppBuilder implements Combiner {
 	private MpsFile mpsFile;
 
 	private boolean createIndex;	// True if we should create and add an index file
+	private int indexSortThreads = 1;
 
 	// There is a separate MDR and SRT file for each family id in the gmapsupp
 	private final Map<Integer, MdrBuilder> mdrBuilderMap = new LinkedHashMap<Integer, MdrBuilder>();
@@ -90,6 +93,7 @@ public class GmapsuppBuilder implements Combiner {
 		mapsetName = args.get("mapset-name", "OSM map set");
 		overallDescription = args.getDescription();
 		outputDir = args.getOutputDir();
+		indexSortThreads = ThreadUtils.getThreadCount(args.getProperties(), "index-sort-threads");
 	}
 
 	/**
@@ -106,7 +110,7 @@ public class GmapsuppBuilder implements Combiner {
 			return mdrBuilder;
 
 		mdrBuilder = new MdrBuilder();
-		mdrBuilder.initForDevice(sort, outputDir);
+		mdrBuilder.initForDevice(sort, outputDir, indexSortThreads);
 		mdrBuilderMap.put(familyId, mdrBuilder);
 		return mdrBuilder;
 	}
@@ -460,6 +464,11 @@ public class GmapsuppBuilder implements Combiner {
 	 */
 	private void copyFile(ImgChannel fin, ImgChannel fout) throws IOException {
 		try {
+			if (fout instanceof FileNode) {
+				((FileNode) fout).transferFrom(fin);
+				return;
+			}
+
 			ByteBuffer buf = ByteBuffer.allocate(1024);
 			while (fin.read(buf) > 0) {
 				buf.flip();
@@ -53,6 +53,7 @@ import uk.me.parabola.imgfmt.sys.FileImgChannel;
 import uk.me.parabola.imgfmt.sys.ImgFS;
 import uk.me.parabola.mkgmap.CommandArgs;
 import uk.me.parabola.mkgmap.srt.SrtTextReader;
+import uk.me.parabola.util.ThreadUtils;
 
 /**
  * Create the global index file.  This consists of an img file containing
@@ -113,6 +114,7 @@ public class MdrBuilder implements Combiner {
 		config.setForDevice(false);
 		config.setOutputDir(outputDir);
 		config.setSort(sort);
+		config.setSortThreads(ThreadUtils.getThreadCount(args.getProperties(), "index-sort-threads"));
 
 		// Wrap the MDR channel with the MDRFile object
 		mdrFile = new MDRFile(mdrChan, config);
@@ -130,13 +132,14 @@ public class MdrBuilder implements Combiner {
 		}
 	}
 
-	void initForDevice(Sort sort, String outputDir) {
+	void initForDevice(Sort sort, String outputDir, int sortThreads) {
 		// Set the options that we are using for the mdr.
 		MdrConfig config = new MdrConfig();
 		config.setHeaderLen(568);
 		config.setWritable(true);
 		config.setForDevice(true);
 		config.setSort(sort);
+		config.setSortThreads(sortThreads);
 
 		// Wrap the MDR channel with the MDRFile object
 		try {
@@ -18,10 +18,12 @@ package uk.me.parabola.mkgmap.filters;
 
 import java.awt.*;
 import java.awt.geom.Area;
+import java.util.ArrayList;
 import java.util.List;
 
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.mkgmap.general.MapShape;
+import uk.me.parabola.mkgmap.general.ShapeSplitter;
 import uk.me.parabola.util.Java2DConverter;
 
 /**
@@ -36,6 +38,43 @@ public class PolygonSplitterBase extends BaseFilter {
 	 * @param outputs The output list.
 	 */
 	protected void split(MapShape shape, List<MapShape> outputs) {
+		List<Coord> points = shape.getPoints();
+		if (points.isEmpty())
+			return;
+
+		// Get the bounds of this polygon
+		int minLat = Integer.MAX_VALUE, maxLat = Integer.MIN_VALUE;
+		int minLon = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+		for (Coord co : points) {
+			minLat = Math.min(minLat, co.getLatitude());
+			maxLat = Math.max(maxLat, co.getLatitude());
+			minLon = Math.min(minLon, co.getLongitude());
+			maxLon = Math.max(maxLon, co.getLongitude());
+		}
+		int width = maxLon - minLon;
+		int height = maxLat - minLat;
+		if (width == 0 || height == 0)
+			return;  // Drop it
+
+		// Cut across the longest side, in the same place as the Area code below
+		// would.  This keeps the original points and is much quicker.
+		List<Coord> closed = points;
+		if (!points.get(0).equals(points.get(points.size() - 1))) {
+			closed = new ArrayList<Coord>(points);
+			closed.add(points.get(0));
+		}
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		List<List<Coord>> more = new ArrayList<List<Coord>>();
+		boolean ok;
+		if (width > height)
+			ok = ShapeSplitter.split(closed, minLon + width / 2, true, less, more);
+		else
+			ok = ShapeSplitter.split(closed, minLat + height / 2, false, less, more);
+		if (ok) {
+			addShapes(shape, less, outputs);
+			addShapes(shape, more, outputs);
+			return;
+		}
 
 		// Convert to a awt area
 		Area a1 = Java2DConverter.createArea(shape.getPoints());
@@ -81,8 +120,10 @@ public class PolygonSplitterBase extends BaseFilter {
 	 * @param outputs Used to hold output shapes.
 	 */
 	private void areaToShapes(MapShape origShape, Area area, List<MapShape> outputs) {
-		List<List<Coord>> subShapePoints = Java2DConverter.areaToShapes(area);
-		
+		addShapes(origShape, Java2DConverter.areaToShapes(area), outputs);
+	}
+
+	private void addShapes(MapShape origShape, List<List<Coord>> subShapePoints, List<MapShape> outputs) {
 		for (List<Coord> subShape : subShapePoints) {
 			MapShape s = origShape.copy();
 			s.setPoints(subShape);
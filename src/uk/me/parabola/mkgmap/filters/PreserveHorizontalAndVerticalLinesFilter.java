@@ -34,29 +34,37 @@ public class PreserveHorizontalAndVerticalLinesFilter implements MapFilter {
 	public void doFilter(MapElement element, MapFilterChain next) {
 		MapLine line = (MapLine) element;
 
-		if(shift != 0) {
-			// preserve the end points of horizontal and vertical lines
-			List<Coord> points = line.getPoints();
-			Coord first = points.get(0);
-			Coord prev = first;
-			Coord last = first;
-			for(int i = 1; i < points.size(); ++i) {
-				last = points.get(i);
-				if(last.getLatitude() == prev.getLatitude() ||
-				   last.getLongitude() == prev.getLongitude()) {
-					last.preserved(true);
-					prev.preserved(true);
-				}
-				prev = last;
-			}
-			// if the way has the same point at each end, make sure
-			// that if either is preserved, they both are
-			if(first.equals(last) && first.preserved() != last.preserved()) {
-				first.preserved(true);
+		if(shift != 0)
+			preserve(line.getPoints());
+
+		next.doFilter(line);
+	}
+
+	/**
+	 * Preserve the end points of horizontal and vertical lines.  This is the
+	 * work of the filter without passing anything on, so that the points can
+	 * be marked before any filtering starts.
+	 *
+	 * @param points The points of a line or polygon.
+	 */
+	public static void preserve(List<Coord> points) {
+		Coord first = points.get(0);
+		Coord prev = first;
+		Coord last = first;
+		for(int i = 1; i < points.size(); ++i) {
+			last = points.get(i);
+			if(last.getLatitude() == prev.getLatitude() ||
+			   last.getLongitude() == prev.getLongitude()) {
 				last.preserved(true);
+				prev.preserved(true);
 			}
+			prev = last;
+		}
+		// if the way has the same point at each end, make sure
+		// that if either is preserved, they both are
+		if(first.equals(last) && first.preserved() != last.preserved()) {
+			first.preserved(true);
+			last.preserved(true);
 		}
-
-		next.doFilter(line);
 	}
 }
@@ -54,6 +54,11 @@ public class PolygonClipper {
 		if (!foundOutside)
 			return null;
 
+		// Try the simple clipper first, it only fails on awkward shapes.
+		List<List<Coord>> shapes = ShapeSplitter.clipToBounds(coords, bbox);
+		if (shapes != null)
+			return shapes;
+
 		java.awt.geom.Area bbarea = Java2DConverter.createBoundsArea(bbox); 
 		java.awt.geom.Area shape = Java2DConverter.createArea(coords);
 
@@ -17,9 +17,8 @@
 package uk.me.parabola.mkgmap.general;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.imgfmt.app.CoordNode;
@@ -31,6 +30,8 @@ import uk.me.parabola.imgfmt.app.net.RouteNode;
 import uk.me.parabola.imgfmt.app.net.RouteRestriction;
 import uk.me.parabola.log.Logger;
 import uk.me.parabola.util.EnhancedProperties;
+import uk.me.parabola.util.LongIntMap;
+import uk.me.parabola.util.ThreadUtils;
 
 /**
  * This holds the road network.  That is all the roads and the nodes
@@ -53,7 +54,10 @@ public class RoadNetwork {
 	public static final int NO_CARPOOL = 8;
 	public static final int NO_MAX = 9;
 
-	private final Map<Long, RouteNode> nodes = new LinkedHashMap<Long, RouteNode>();
+	// The nodes in the order they were added, and the index of each
+	// one in that list by node id.
+	private final List<RouteNode> nodes = new ArrayList<RouteNode>();
+	private final LongIntMap nodeIndex = new LongIntMap();
 
 	// boundary nodes
 	// a node should be in here iff the nodes boundary flag is set
@@ -61,6 +65,26 @@ public class RoadNetwork {
 	//private final List<MapRoad> mapRoads = new ArrayList<MapRoad>();
 
 	private final List<RoadDef> roadDefs = new ArrayList<RoadDef>();
+
+	// The arcs between routing nodes, one entry for each forward and
+	// reverse pair, stored column-wise.  The RouteArc objects are only made
+	// when the route centers are built for writing, see makeArcs().
+	private static final int INIT_ARCS = 1024;
+	private int arcCount;
+	private RoadDef[] arcRoads = new RoadDef[INIT_ARCS];
+	private int[] arcNode1 = new int[INIT_ARCS];
+	private int[] arcNode2 = new int[INIT_ARCS];
+	private short[] arcForwardBearing = new short[INIT_ARCS];
+	private short[] arcInverseForwardBearing = new short[INIT_ARCS];
+	private short[] arcReverseBearing = new short[INIT_ARCS];
+	private short[] arcInverseReverseBearing = new short[INIT_ARCS];
+	private double[] arcLengths = new double[INIT_ARCS];
+	private int[] arcPointsHash = new int[INIT_ARCS];
+
+	// Restrictions and through routes refer to the arcs, so they wait
+	// until the arcs have been made.
+	private final List<Runnable> pendingLinks = new ArrayList<Runnable>();
+
 	private List<RouteCenter> centers = new ArrayList<RouteCenter>();
 	private int adjustTurnHeadings ;
 	private boolean checkRoundabouts;
@@ -69,6 +93,7 @@ public class RoadNetwork {
 	private boolean reportSimilarArcs;
 	private boolean outputCurveData;
 	private int reportDeadEnds ;
+	private int threads = 1;
 
 	public void config(EnhancedProperties props) {
 		String ath = props.getProperty("adjust-turn-headings");
@@ -87,9 +112,16 @@ public class RoadNetwork {
 		reportSimilarArcs = props.getProperty("report-similar-arcs", false);
 
 		outputCurveData = !props.getProperty("no-arc-curves", false);
+
+		threads = ThreadUtils.getThreadCount(props, "route-threads");
 	}
 
 	public void addRoad(MapRoad road) {
+		// A restriction or through route only sees the arcs of the roads
+		// that were added before it.
+		if (!pendingLinks.isEmpty())
+			makeArcs();
+
 		//mapRoads.add(road);
 		roadDefs.add(road.getRoadDef()); //XXX
 
@@ -167,29 +199,10 @@ public class RoadNetwork {
 				int reverseBearing = (int)co.bearingTo(bearingPoint);
 				int inverseReverseBearing = (int)bearingPoint.bearingTo(co);
 
-				// Create forward arc from node1 to node2
-				RouteArc arc = new RouteArc(road.getRoadDef(),
-											node1,
-											node2,
-											forwardBearing,
-											inverseReverseBearing,
-											arcLength,
-											outputCurveData,
-											pointsHash);
-				arc.setForward();
-				node1.addArc(arc);
-				node2.addIncomingArc(arc);
-
-				// Create the reverse arc
-				arc = new RouteArc(road.getRoadDef(),
-								   node2, node1,
-								   reverseBearing,
-								   inverseForwardBearing,
-								   arcLength,
-								   outputCurveData,
-								   pointsHash);
-				node2.addArc(arc);
-				node1.addIncomingArc(arc);
+				addArcs(road.getRoadDef(), nodeIndex.get(lastId), nodeIndex.get(id),
+						forwardBearing, inverseForwardBearing,
+						reverseBearing, inverseReverseBearing,
+						arcLength, pointsHash);
 			} else {
 				// This is the first node in the road
 				road.getRoadDef().setNode(getNode(id, co));
@@ -203,17 +216,108 @@ public class RoadNetwork {
 		road.getRoadDef().setLength(roadLength);
 	}
 
-	private RouteNode getNode(long id, Coord coord) {
-		RouteNode node = nodes.get(id);
-		if (node == null) {
-			node = new RouteNode(coord);
-			nodes.put(id, node);
-			if (node.isBoundary())
-				boundary.add(node);
+	/**
+	 * Record the forward arc from node1 to node2 and the reverse arc back
+	 * again.
+	 */
+	private void addArcs(RoadDef roadDef, int node1, int node2,
+			int forwardBearing, int inverseForwardBearing,
+			int reverseBearing, int inverseReverseBearing,
+			double arcLength, int pointsHash)
+	{
+		if (arcCount == arcRoads.length)
+			resizeArcs(arcCount * 2);
+
+		// the bearings are whole degrees, so they fit in a short
+		arcRoads[arcCount] = roadDef;
+		arcNode1[arcCount] = node1;
+		arcNode2[arcCount] = node2;
+		arcForwardBearing[arcCount] = (short) forwardBearing;
+		arcInverseForwardBearing[arcCount] = (short) inverseForwardBearing;
+		arcReverseBearing[arcCount] = (short) reverseBearing;
+		arcInverseReverseBearing[arcCount] = (short) inverseReverseBearing;
+		arcLengths[arcCount] = arcLength;
+		arcPointsHash[arcCount] = pointsHash;
+		arcCount++;
+	}
+
+	/**
+	 * Make the RouteArc objects for the arcs that have been recorded, in
+	 * the order the roads were added, and then add any restrictions and
+	 * through routes that were waiting for them.
+	 */
+	private void makeArcs() {
+		for (int i = 0; i < arcCount; i++) {
+			RouteNode node1 = nodes.get(arcNode1[i]);
+			RouteNode node2 = nodes.get(arcNode2[i]);
+
+			// Create forward arc from node1 to node2
+			RouteArc arc = new RouteArc(arcRoads[i],
+										node1,
+										node2,
+										arcForwardBearing[i],
+										arcInverseReverseBearing[i],
+										arcLengths[i],
+										outputCurveData,
+										arcPointsHash[i]);
+			arc.setForward();
+			node1.addArc(arc);
+			node2.addIncomingArc(arc);
+
+			// Create the reverse arc
+			arc = new RouteArc(arcRoads[i],
+							   node2, node1,
+							   arcReverseBearing[i],
+							   arcInverseForwardBearing[i],
+							   arcLengths[i],
+							   outputCurveData,
+							   arcPointsHash[i]);
+			node2.addArc(arc);
+			node1.addIncomingArc(arc);
 		}
+		arcCount = 0;
+		resizeArcs(INIT_ARCS);
+		Arrays.fill(arcRoads, null);
+
+		for (Runnable link : pendingLinks)
+			link.run();
+		pendingLinks.clear();
+	}
+
+	private void resizeArcs(int size) {
+		arcRoads = Arrays.copyOf(arcRoads, size);
+		arcNode1 = Arrays.copyOf(arcNode1, size);
+		arcNode2 = Arrays.copyOf(arcNode2, size);
+		arcForwardBearing = Arrays.copyOf(arcForwardBearing, size);
+		arcInverseForwardBearing = Arrays.copyOf(arcInverseForwardBearing, size);
+		arcReverseBearing = Arrays.copyOf(arcReverseBearing, size);
+		arcInverseReverseBearing = Arrays.copyOf(arcInverseReverseBearing, size);
+		arcLengths = Arrays.copyOf(arcLengths, size);
+		arcPointsHash = Arrays.copyOf(arcPointsHash, size);
+	}
+
+	private RouteNode getNode(long id, Coord coord) {
+		int index = nodeIndex.get(id);
+		if (index != LongIntMap.NOT_FOUND)
+			return nodes.get(index);
+
+		RouteNode node = new RouteNode(coord);
+		nodeIndex.put(id, nodes.size());
+		nodes.add(node);
+		if (node.isBoundary())
+			boundary.add(node);
 		return node;
 	}
 
+	/**
+	 * Get an existing node.
+	 * @return The node with the given id, or null if there is none.
+	 */
+	private RouteNode findNode(long id) {
+		int index = nodeIndex.get(id);
+		return index == LongIntMap.NOT_FOUND ? null : nodes.get(index);
+	}
+
 	public List<RoadDef> getRoadDefs() {
 		return roadDefs;
 	}
@@ -229,9 +333,11 @@ public class RoadNetwork {
 			return;
 		assert centers.isEmpty() : "already subdivided into centers";
 
+		makeArcs();
+
 		NOD1Part nod1 = new NOD1Part();
 
-		for (RouteNode node : nodes.values()) {
+		for (RouteNode node : nodes) {
 			if(!node.isBoundary()) {
 				if(checkRoundabouts)
 					node.checkRoundabouts();
@@ -246,7 +352,7 @@ public class RoadNetwork {
 				node.tweezeArcs(adjustTurnHeadings);
 			nod1.addNode(node);
 		}
-		centers = nod1.subdivide();
+		centers = nod1.subdivide(threads);
 	}
 
 	public List<RouteCenter> getCenters() {
@@ -255,37 +361,53 @@ public class RoadNetwork {
 		return centers;
 	}
 
+	/**
+	 * The number of threads to use for the work on the route centers.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
 	/**
 	 * Get the list of nodes on the boundary of the network.
 	 *
 	 * Currently empty.
 	 */
 	public List<RouteNode> getBoundary() {
+		makeArcs();
 		return boundary;
 	}
 
-	public void addRestriction(CoordNode fromNode, CoordNode toNode, CoordNode viaNode, byte exceptMask) {
-		RouteNode fn = nodes.get(fromNode.getId());
-		RouteNode tn = nodes.get(toNode.getId());
-		RouteNode vn = nodes.get(viaNode.getId());
+	public void addRestriction(CoordNode fromNode, CoordNode toNode, CoordNode viaNode, final byte exceptMask) {
+		final RouteNode fn = findNode(fromNode.getId());
+		final RouteNode tn = findNode(toNode.getId());
+		final RouteNode vn = findNode(viaNode.getId());
 
 		assert fn != null : "can't locate 'from' RouteNode with id " + fromNode.getId();
 		assert tn != null : "can't locate 'to' RouteNode with id " + toNode.getId();
 		assert vn != null : "can't locate 'via' RouteNode with id " + viaNode.getId();
 
-		RouteArc fa = vn.getArcTo(fn); // inverse arc gets used
-		RouteArc ta = vn.getArcTo(tn);
+		pendingLinks.add(new Runnable() {
+			public void run() {
+				RouteArc fa = vn.getArcTo(fn); // inverse arc gets used
+				RouteArc ta = vn.getArcTo(tn);
 
-		assert fa != null : "can't locate arc from 'via' node to 'from' node";
-		assert ta != null : "can't locate arc from 'via' node to 'to' node";
+				assert fa != null : "can't locate arc from 'via' node to 'from' node";
+				assert ta != null : "can't locate arc from 'via' node to 'to' node";
 
-		vn.addRestriction(new RouteRestriction(fa, ta, exceptMask));
-    }
+				vn.addRestriction(new RouteRestriction(fa, ta, exceptMask));
+			}
+		});
+	}
 
-	public void addThroughRoute(long junctionNodeId, long roadIdA, long roadIdB) {
-		RouteNode node = nodes.get(junctionNodeId);
+	public void addThroughRoute(long junctionNodeId, final long roadIdA, final long roadIdB) {
+		final RouteNode node = findNode(junctionNodeId);
 		assert node != null :  "Can't find node with id " + junctionNodeId;
 
-		node.addThroughRoute(roadIdA, roadIdB);
+		pendingLinks.add(new Runnable() {
+			public void run() {
+				node.addThroughRoute(roadIdA, roadIdB);
+			}
+		});
 	}
 }
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.general;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.me.parabola.imgfmt.app.Area;
+import uk.me.parabola.imgfmt.app.Coord;
+
+/**
+ * Split or clip polygons along horizontal and vertical lines, working
+ * directly on the coordinates in map units.
+ *
+ * This is much cheaper than going through a java.awt.geom.Area and the
+ * points of the original polygon are kept, only the points where it crosses
+ * the line are new.
+ *
+ * It works for simple polygons, ie. ones that do not cross themselves.  When
+ * a polygon that is cut crosses or touches itself, or has no area, or when it
+ * cannot be sure how the pieces join up, it gives up and the caller should
+ * fall back to using Area.
+ *
+ * @author agent
+ */
+public class ShapeSplitter {
+
+	private ShapeSplitter() {
+	}
+
+	/**
+	 * Clip a polygon to a bounding box.
+	 *
+	 * @param points The points of the polygon.
+	 * @param bbox The bounding box, points on its edges are inside.
+	 * @return The parts of the polygon that are inside the box. Null if the
+	 * clipping could not be done here.
+	 */
+	public static List<List<Coord>> clipToBounds(List<Coord> points, Area bbox) {
+		List<List<Coord>> shapes = new ArrayList<List<Coord>>();
+		shapes.add(closed(points));
+
+		shapes = cut(shapes, bbox.getMinLong(), true, false);
+		shapes = cut(shapes, bbox.getMaxLong(), true, true);
+		shapes = cut(shapes, bbox.getMinLat(), false, false);
+		shapes = cut(shapes, bbox.getMaxLat(), false, true);
+		return shapes;
+	}
+
+	/**
+	 * Cut each of the shapes along a line and keep the parts on one side.
+	 * @return The parts that are kept, or null if any shape cannot be split.
+	 */
+	private static List<List<Coord>> cut(List<List<Coord>> shapes, int line, boolean isLongitude, boolean keepLess) {
+		if (shapes == null)
+			return null;
+
+		List<List<Coord>> result = new ArrayList<List<Coord>>();
+		for (List<Coord> shape : shapes) {
+			boolean ok;
+			if (keepLess)
+				ok = split(shape, line, isLongitude, result, null);
+			else
+				ok = split(shape, line, isLongitude, null, result);
+			if (!ok)
+				return null;
+		}
+		return result;
+	}
+
+	/**
+	 * Split a polygon along a line of latitude or longitude.
+	 *
+	 * Points that lie exactly on the line count as being on the 'more' side.
+	 * Parts that have no area are dropped.  A polygon that has no area, or
+	 * that crosses the line and also crosses or touches itself, is not split.
+	 *
+	 * @param points The polygon, the first and last points must be the same.
+	 * @param dividingLine The latitude or longitude of the line in map units.
+	 * @param isLongitude True if the line is a line of longitude, ie. it is
+	 * vertical.
+	 * @param lessList The parts below or to the left of the line are added
+	 * here.  May be null if they are not wanted.
+	 * @param moreList The parts above or to the right of the line are added
+	 * here.  May be null if they are not wanted.
+	 * @return False if the polygon could not be split.  In that case nothing
+	 * is added to either list.
+	 */
+	public static boolean split(List<Coord> points, int dividingLine, boolean isLongitude,
+			List<List<Coord>> lessList, List<List<Coord>> moreList)
+	{
+		return splitRings(Collections.singletonList(points), dividingLine, isLongitude, lessList, moreList);
+	}
+
+	/**
+	 * Split a shape that is made of several rings, such as an outline with
+	 * holes in it, along a line of latitude or longitude.
+	 *
+	 * The rings must all go round the same way relative to the inside of the
+	 * shape, so holes go round the opposite way to outlines.  This is how
+	 * Java2DConverter.areaToShapes() returns them.  The pieces have no holes,
+	 * so a hole that does not cross the line cannot be cut out and the split
+	 * fails.
+	 *
+	 * @param rings The rings, the first and last points of each must be the
+	 * same.
+	 * @see #split
+	 */
+	public static boolean splitRings(List<List<Coord>> rings, int dividingLine, boolean isLongitude,
+			List<List<Coord>> lessList, List<List<Coord>> moreList)
+	{
+		// Find each edge that crosses from one side to the other.  The crossings
+		// of ring r are firstCrossing[r] up to firstCrossing[r+1].
+		int nrings = rings.size();
+		List<Crossing> crossings = new ArrayList<Crossing>();
+		int[] firstCrossing = new int[nrings + 1];
+		long[] areas = new long[nrings];
+		long outlineArea = 0;
+		for (int r = 0; r < nrings; r++) {
+			firstCrossing[r] = crossings.size();
+			List<Coord> points = rings.get(r);
+			int n = points.size() - 1;
+			if (n < 3)
+				continue;
+
+			for (int i = 0; i < n; i++) {
+				Coord a = points.get(i);
+				Coord b = points.get(i + 1);
+				boolean aMore = value(a, isLongitude) >= dividingLine;
+				boolean bMore = value(b, isLongitude) >= dividingLine;
+				if (aMore != bMore)
+					crossings.add(new Crossing(crossings.size(), r, i, crossingPoint(a, b, dividingLine, isLongitude), bMore));
+			}
+
+			// The largest ring is an outline, and gives the direction they go round
+			areas[r] = signedArea(points);
+			if (Math.abs(areas[r]) > Math.abs(outlineArea))
+				outlineArea = areas[r];
+		}
+		firstCrossing[nrings] = crossings.size();
+
+		// A ring that does not cross is a piece on its own, unless it is a hole.
+		// A ring with no area is either nothing or crosses itself, such as a
+		// figure of eight, and a ring that crosses itself cannot be cut up by
+		// joining the crossings in pairs.
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		List<List<Coord>> more = new ArrayList<List<Coord>>();
+		for (int r = 0; r < nrings; r++) {
+			List<Coord> points = rings.get(r);
+			if (points.size() < 4)
+				continue;
+			if (areas[r] == 0)
+				return false;
+			if (firstCrossing[r] != firstCrossing[r + 1]) {
+				if (!isSimple(points))
+					return false;
+				continue;
+			}
+			if ((areas[r] > 0) != (outlineArea > 0))
+				return false;
+
+			boolean isMore = value(points.get(0), isLongitude) >= dividingLine;
+			addShape(isMore ? more : less, new ArrayList<Coord>(points));
+		}
+
+		int m = crossings.size();
+		Crossing[] sorted = crossings.toArray(new Crossing[m]);
+		final boolean longitude = isLongitude;
+		Arrays.sort(sorted, new Comparator<Crossing>() {
+			public int compare(Crossing o1, Crossing o2) {
+				int p1 = position(o1.point, longitude);
+				int p2 = position(o2.point, longitude);
+				return p1 < p2 ? -1 : (p1 == p2 ? 0 : 1);
+			}
+		});
+
+		// Along the line, the inside and outside of the polygon alternate, so the
+		// crossings pair up in sorted order.  The edge of each part runs along
+		// the line between the two crossings of a pair.  If two crossings at the
+		// same place are not paired with each other, it is not possible to tell
+		// which way round they go.
+		for (int i = 0; i < m; i++) {
+			sorted[i].rank = i;
+			if (i + 1 < m && i % 2 == 1
+					&& position(sorted[i].point, isLongitude) == position(sorted[i + 1].point, isLongitude))
+				return false;
+		}
+		for (int i = 0; i < m; i += 2) {
+			if (sorted[i].enteringMore == sorted[i + 1].enteringMore)
+				return false;
+		}
+
+		// Crossing k starts the run of points that ends at the next crossing on
+		// the same ring, walk round joining these runs up into closed shapes.
+		boolean[] used = new boolean[m];
+		for (int start = 0; start < m; start++) {
+			if (used[start])
+				continue;
+
+			List<Coord> shape = new ArrayList<Coord>();
+			int k = start;
+			do {
+				if (used[k])
+					return false;
+				used[k] = true;
+
+				Crossing cross = crossings.get(k);
+				int ring = cross.ring;
+				List<Coord> points = rings.get(ring);
+				int n = points.size() - 1;
+				Crossing end = crossings.get(k + 1 == firstCrossing[ring + 1] ? firstCrossing[ring] : k + 1);
+
+				addPoint(shape, cross.point);
+				for (int i = cross.edge + 1; ; i++) {
+					addPoint(shape, points.get(i % n));
+					if (i % n == end.edge)
+						break;
+				}
+				addPoint(shape, end.point);
+
+				k = sorted[end.rank ^ 1].index;
+			} while (k != start);
+
+			shape.add(shape.get(0));
+			if (crossings.get(start).enteringMore)
+				addShape(more, shape);
+			else
+				addShape(less, shape);
+		}
+
+		if (lessList != null)
+			lessList.addAll(less);
+		if (moreList != null)
+			moreList.addAll(more);
+		return true;
+	}
+
+	/**
+	 * Make sure that the polygon is closed.
+	 */
+	private static List<Coord> closed(List<Coord> points) {
+		if (points.isEmpty() || points.get(0).equals(points.get(points.size() - 1)))
+			return points;
+
+		List<Coord> copy = new ArrayList<Coord>(points.size() + 1);
+		copy.addAll(points);
+		copy.add(points.get(0));
+		return copy;
+	}
+
+	private static void addPoint(List<Coord> shape, Coord co) {
+		if (shape.isEmpty() || !shape.get(shape.size() - 1).equals(co))
+			shape.add(co);
+	}
+
+	/**
+	 * Add the shape to the list, unless it has no area.
+	 */
+	private static void addShape(List<List<Coord>> list, List<Coord> shape) {
+		if (list == null || shape.size() < 4)
+			return;
+
+		if (signedArea(shape) != 0)
+			list.add(shape);
+	}
+
+	/**
+	 * Twice the area of a closed polygon, positive if it goes round
+	 * anti-clockwise.
+	 */
+	private static long signedArea(List<Coord> shape) {
+		long area = 0;
+		Coord p1 = shape.get(0);
+		for (int i = 1; i < shape.size(); i++) {
+			Coord p2 = shape.get(i);
+			area += (long) p1.getLongitude() * p2.getLatitude() - (long) p2.getLongitude() * p1.getLatitude();
+			p1 = p2;
+		}
+		return area;
+	}
+
+	/**
+	 * Check that a closed ring does not cross or touch itself anywhere, apart
+	 * from where each edge joins the next one.
+	 *
+	 * The edges are taken from left to right, and each one is only tested
+	 * against the earlier ones that reach across to it, so for the usual
+	 * shapes this is much quicker than testing every pair.
+	 */
+	private static boolean isSimple(List<Coord> points) {
+		// The edges in order round the ring, leaving out any with no length.
+		int n = points.size() - 1;
+		int[] x1 = new int[n];
+		int[] y1 = new int[n];
+		int[] x2 = new int[n];
+		int[] y2 = new int[n];
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			Coord a = points.get(i);
+			Coord b = points.get(i + 1);
+			if (a.getLongitude() == b.getLongitude() && a.getLatitude() == b.getLatitude())
+				continue;
+			x1[m] = a.getLongitude();
+			y1[m] = a.getLatitude();
+			x2[m] = b.getLongitude();
+			y2[m] = b.getLatitude();
+			m++;
+		}
+
+		// Sort by the left end, with the edge number in the low bits.
+		long[] order = new long[m];
+		for (int k = 0; k < m; k++)
+			order[k] = ((long) Math.min(x1[k], x2[k]) << 32) | k;
+		Arrays.sort(order);
+
+		int[] active = new int[m];
+		int nactive = 0;
+		for (long key : order) {
+			int k = (int) key;
+			int left = Math.min(x1[k], x2[k]);
+			int bottom = Math.min(y1[k], y2[k]);
+			int top = Math.max(y1[k], y2[k]);
+
+			int kept = 0;
+			for (int a = 0; a < nactive; a++) {
+				int j = active[a];
+				if (Math.max(x1[j], x2[j]) < left)
+					continue;
+				active[kept++] = j;
+
+				boolean adjacent = j == k + 1 || k == j + 1 || (j == 0 && k == m - 1) || (k == 0 && j == m - 1);
+				if (adjacent || Math.max(y1[j], y2[j]) < bottom || Math.min(y1[j], y2[j]) > top)
+					continue;
+				if (edgesMeet(x1[j], y1[j], x2[j], y2[j], x1[k], y1[k], x2[k], y2[k]))
+					return false;
+			}
+			nactive = kept;
+			active[nactive++] = k;
+		}
+		return true;
+	}
+
+	/**
+	 * True if the edge from 1 to 2 crosses or touches the edge from 3 to 4.
+	 */
+	private static boolean edgesMeet(int x1, int y1, int x2, int y2, int x3, int y3, int x4, int y4) {
+		int d1 = side(x3, y3, x4, y4, x1, y1);
+		int d2 = side(x3, y3, x4, y4, x2, y2);
+		int d3 = side(x1, y1, x2, y2, x3, y3);
+		int d4 = side(x1, y1, x2, y2, x4, y4);
+		if (d1 * d2 < 0 && d3 * d4 < 0)
+			return true;
+
+		// The end of one edge lies on the other
+		return d1 == 0 && between(x3, y3, x4, y4, x1, y1)
+				|| d2 == 0 && between(x3, y3, x4, y4, x2, y2)
+				|| d3 == 0 && between(x1, y1, x2, y2, x3, y3)
+				|| d4 == 0 && between(x1, y1, x2, y2, x4, y4);
+	}
+
+	/**
+	 * Which side of the line from a to b the point p is on, zero if it is
+	 * on the line.
+	 */
+	private static int side(int ax, int ay, int bx, int by, int px, int py) {
+		long cross = (long) (bx - ax) * (py - ay) - (long) (by - ay) * (px - ax);
+		return cross > 0 ? 1 : (cross < 0 ? -1 : 0);
+	}
+
+	/**
+	 * For a point p that is on the line through a and b, whether it is on
+	 * the part between them.
+	 */
+	private static boolean between(int ax, int ay, int bx, int by, int px, int py) {
+		return px >= Math.min(ax, bx) && px <= Math.max(ax, bx)
+				&& py >= Math.min(ay, by) && py <= Math.max(ay, by);
+	}
+
+	/**
+	 * The point where the edge from a to b crosses the line.  If either end is
+	 * on the line, then it is used.
+	 */
+	private static Coord crossingPoint(Coord a, Coord b, int line, boolean isLongitude) {
+		int va = value(a, isLongitude);
+		int vb = value(b, isLongitude);
+		if (va == line)
+			return a;
+		if (vb == line)
+			return b;
+
+		int pa = position(a, isLongitude);
+		int pb = position(b, isLongitude);
+		int pos = pa + (int) Math.round((double) (pb - pa) * (line - va) / (vb - va));
+		if (isLongitude)
+			return new Coord(pos, line);
+		else
+			return new Coord(line, pos);
+	}
+
+	/**
+	 * The coordinate that is compared with the dividing line.
+	 */
+	private static int value(Coord co, boolean isLongitude) {
+		return isLongitude ? co.getLongitude() : co.getLatitude();
+	}
+
+	/**
+	 * The coordinate along the dividing line.
+	 */
+	private static int position(Coord co, boolean isLongitude) {
+		return isLongitude ? co.getLatitude() : co.getLongitude();
+	}
+
+	private static class Crossing {
+		// The position of this crossing going round the polygon.
+		private final int index;
+		// The ring that it is on.
+		private final int ring;
+		// The index of the first point of the edge that crosses.
+		private final int edge;
+		private final Coord point;
+		// True if the polygon is going to the 'more' side at this crossing.
+		private final boolean enteringMore;
+		// The position of this crossing when sorted along the line.
+		private int rank;
+
+		Crossing(int index, int ring, int edge, Coord point, boolean enteringMore) {
+			this.index = index;
+			this.ring = ring;
+			this.edge = edge;
+			this.point = point;
+			this.enteringMore = enteringMore;
+		}
+	}
+}
@@ -59,10 +59,12 @@ import uk.me.parabola.mkgmap.osmstyle.StyleFileLoader;
 import uk.me.parabola.mkgmap.osmstyle.StyleImpl;
 import uk.me.parabola.mkgmap.reader.osm.Style;
 import uk.me.parabola.mkgmap.reader.osm.StyleInfo;
+import uk.me.parabola.mkgmap.reader.osm.Tags;
 import uk.me.parabola.mkgmap.reader.osm.boundary.BoundaryPreparer;
 import uk.me.parabola.mkgmap.reader.overview.OverviewMapDataSource;
 import uk.me.parabola.mkgmap.scan.SyntaxException;
 import uk.me.parabola.mkgmap.srt.SrtTextReader;
+import uk.me.parabola.util.StringPool;
 
 /**
  * The new main program.  There can be many file names to process and there can
@@ -74,6 +76,9 @@ import uk.me.parabola.mkgmap.srt.SrtTextReader;
 public class Main implements ArgumentProcessor {
 	private static final Logger log = Logger.getLogger(Main.class);
 
+	// The most tag values that are shared between the tiles of a run.
+	private static final int TAG_VALUE_POOL_SIZE = 256 * 1024;
+
 	private final List<Preparer> preparers = new ArrayList<Preparer>();
 	
 	// Final .img file combiners.
@@ -214,6 +219,7 @@ public class Main implements ArgumentProcessor {
 			}
 		});
 		task.setArgs(args);
+		task.setInputName(filename);
 		futures.add(task);
 	}
 
@@ -330,6 +336,11 @@ public class Main implements ArgumentProcessor {
 
 		addPreparer(new BoundaryPreparer());
 
+		// Equal tag values are shared for the rest of the run, instead of
+		// being interned.
+		StringPool tagValues = new StringPool(TAG_VALUE_POOL_SIZE);
+		Tags.setValuePool(tagValues);
+
 		log.info("Start tile processors");
 		if (threadPool == null) {
 			log.info("Creating thread pool with " + maxJobs + " threads");
@@ -360,29 +371,32 @@ public class Main implements ArgumentProcessor {
 		long pt2 = System.currentTimeMillis();
 		log.info("All preparers finished after " + (pt2-pt1) + " ms");
 
-		// process all input files
-		for (FilenameTask task : futures) {
-			threadPool.execute(task);
+		// Get the combiners set up before any maps are made, so that they can
+		// start on each map as soon as it is ready.
+		if (!combiners.isEmpty()) {
+			args.setSort(getSort(args));
+			for (Combiner c : combiners)
+				c.init(args);
 		}
 
-
-		List<FilenameTask> filenames = new ArrayList<FilenameTask>();
-
-		if (threadPool != null) {
-			threadPool.shutdown();
-			while (!futures.isEmpty()) {
+		// process all input files
+		TileScheduler scheduler = new TileScheduler(threadPool, maxJobs, TileScheduler.defaultMemoryBudget());
+		for (FilenameTask task : futures)
+			scheduler.add(task, TileScheduler.estimateHeap(task.getInputName()));
+		scheduler.start();
+
+		// Wait for the results in the original order, so the output does not
+		// depend on which tile finished first.  Each map is passed to the
+		// combiners while the later ones are still being made.
+		try {
+			for (FilenameTask future : futures) {
+				boolean made = false;
 				try {
 					try {
-						// don't call get() until a job has finished
-						if (futures.get(0).isDone()) {
-							FilenameTask future = futures.remove(0);
-
-							// Provoke any exceptions by calling get and then
-							// save the result for later use
-							future.setFilename(future.get());
-							filenames.add(future);
-						} else
-							Thread.sleep(100);
+						// Provoke any exceptions by calling get and then
+						// save the result for later use
+						future.setFilename(future.get());
+						made = true;
 					} catch (ExecutionException e) {
 						// Re throw the underlying exception
 						Throwable cause = e.getCause();
@@ -405,39 +419,41 @@ public class Main implements ArgumentProcessor {
 						throw new ExitException("Exiting - if you want to carry on regardless, use the --keep-going option");
 					}
 				}
+
+				if (made)
+					combineMap(future);
 			}
+		} finally {
+			threadPool.shutdown();
+			Tags.setValuePool(null);
+			log.info("Tag values:", tagValues);
 		}
+		futures.clear();
 
 		if (combiners.isEmpty())
 			return;
 
-		log.info("Combining maps");
-
-		args.setSort(getSort(args));
-
-		// Get them all set up.
+		// All done, allow tidy up or file creation to happen
 		for (Combiner c : combiners)
-			c.init(args);
+			c.onFinish();
+	}
 
-		// Tell them about each filename
-		for (FilenameTask file : filenames) {
-			if (file == null || file.isCancelled())
-				continue;
+	/**
+	 * Pass a finished map to each of the combiners.
+	 */
+	private void combineMap(FilenameTask file) {
+		if (combiners.isEmpty())
+			return;
 
-			try {
-				log.info("  " + file);
-				FileInfo fileInfo = FileInfo.getFileInfo(file.getFilename());
-				fileInfo.setArgs(file.getArgs());
-				for (Combiner c : combiners)
-					c.onMapEnd(fileInfo);
-			} catch (FileNotFoundException e) {
-				throw new MapFailedException("could not open file " + e.getMessage());
-			}
+		try {
+			log.info("Combining " + file);
+			FileInfo fileInfo = FileInfo.getFileInfo(file.getFilename());
+			fileInfo.setArgs(file.getArgs());
+			for (Combiner c : combiners)
+				c.onMapEnd(fileInfo);
+		} catch (FileNotFoundException e) {
+			throw new MapFailedException("could not open file " + e.getMessage());
 		}
-
-		// All done, allow tidy up or file creation to happen
-		for (Combiner c : combiners)
-			c.onFinish();
 	}
 
 	private void fileOptions(CommandArgs args) {
@@ -501,6 +517,7 @@ public class Main implements ArgumentProcessor {
 
 	private static class FilenameTask extends FutureTask<String> {
 		private CommandArgs args;
+		private String inputName;
 		private String filename;
 
 		private FilenameTask(Callable<String> callable) {
@@ -515,6 +532,14 @@ public class Main implements ArgumentProcessor {
 			return args;
 		}
 
+		public void setInputName(String inputName) {
+			this.inputName = inputName;
+		}
+
+		public String getInputName() {
+			return inputName;
+		}
+
 		public void setFilename(String filename) {
 			this.filename = filename;
 		}
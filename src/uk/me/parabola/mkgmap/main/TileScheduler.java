@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.main;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import uk.me.parabola.log.Logger;
+
+/**
+ * Decides when each map tile is started.
+ *
+ * The tiles are started largest first, so that a single big tile does not
+ * end up running on its own at the end.  A tile is only started when there
+ * is a free thread and its estimated heap use fits in what is left of the
+ * heap, so that --max-jobs can be set for the typical tile rather than the
+ * largest.  If the largest waiting tile does not fit, then the largest one
+ * that does fit is started instead.  A tile is always started when nothing
+ * else is running, however big it is.
+ *
+ * When a tile finishes, the next ones are started straight away from the
+ * thread that ran it.
+ *
+ * @author agent
+ */
+public class TileScheduler {
+	private static final Logger log = Logger.getLogger(TileScheduler.class);
+
+	private final Executor executor;
+	private final int maxJobs;
+	private final long memoryBudget;
+
+	// Waiting jobs, largest first once started.
+	private final List<Job> pending = new ArrayList<Job>();
+
+	private int running;
+	private long reserved;
+
+	public TileScheduler(Executor executor, int maxJobs, long memoryBudget) {
+		this.executor = executor;
+		this.maxJobs = maxJobs;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Add a task to be run.  Nothing is started until {@link #start}.
+	 * @param task The task, it must not throw; a FutureTask is normal.
+	 * @param cost The estimated number of bytes of heap that the task needs.
+	 */
+	public synchronized void add(Runnable task, long cost) {
+		pending.add(new Job(task, cost));
+	}
+
+	/**
+	 * Start running tasks.  Returns straight away, use the futures of the
+	 * tasks to wait for them.
+	 */
+	public synchronized void start() {
+		Collections.sort(pending, new Comparator<Job>() {
+			public int compare(Job o1, Job o2) {
+				if (o1.cost == o2.cost)
+					return 0;
+				return o1.cost > o2.cost ? -1 : 1;
+			}
+		});
+		admit();
+	}
+
+	private synchronized void finished(Job job) {
+		running--;
+		reserved -= job.cost;
+		admit();
+	}
+
+	/**
+	 * Start as many of the waiting jobs as will fit.
+	 */
+	private void admit() {
+		while (running < maxJobs && !pending.isEmpty()) {
+			Job job = null;
+			if (running == 0) {
+				job = pending.remove(0);
+			} else {
+				long available = memoryBudget - reserved;
+				for (int i = 0; i < pending.size(); i++) {
+					if (pending.get(i).cost <= available) {
+						job = pending.remove(i);
+						break;
+					}
+				}
+			}
+
+			if (job == null) {
+				log.info("Waiting for memory before starting another job,", running, "running");
+				return;
+			}
+
+			running++;
+			reserved += job.cost;
+			try {
+				executor.execute(job);
+			} catch (RejectedExecutionException e) {
+				// The executor has been shut down because we are giving up.
+				log.info("Not starting", pending.size() + 1, "remaining jobs");
+				pending.clear();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Make a rough estimate of the heap needed to make a map from the given
+	 * input file.  This is based on the size of the file, the compressed
+	 * formats expand to many more objects per byte than plain xml does.
+	 * Other kinds of file, such as existing img files, need very little.
+	 *
+	 * @param filename The input file.
+	 * @return An estimate in bytes.
+	 */
+	public static long estimateHeap(String filename) {
+		long size = new File(filename).length();
+		String name = filename.toLowerCase(Locale.ENGLISH);
+		if (name.endsWith(".pbf") || name.endsWith(".gz") || name.endsWith(".bz2"))
+			return size * 30;
+		if (name.endsWith(".osm") || name.endsWith(".xml"))
+			return size * 3;
+		return 0;
+	}
+
+	/**
+	 * The heap that can be shared between the jobs.  Some is left for the
+	 * combiners and everything else.
+	 */
+	public static long defaultMemoryBudget() {
+		return Runtime.getRuntime().maxMemory() / 10 * 8;
+	}
+
+	private class Job implements Runnable {
+		private final Runnable task;
+		private final long cost;
+
+		Job(Runnable task, long cost) {
+			this.task = task;
+			this.cost = cost;
+		}
+
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				finished(this);
+			}
+		}
+	}
+}
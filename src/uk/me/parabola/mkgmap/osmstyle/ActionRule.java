@@ -19,6 +19,7 @@ package uk.me.parabola.mkgmap.osmstyle;
 import java.util.List;
 
 import uk.me.parabola.mkgmap.osmstyle.actions.Action;
+import uk.me.parabola.mkgmap.osmstyle.eval.ExpressionCompiler;
 import uk.me.parabola.mkgmap.osmstyle.eval.Op;
 import uk.me.parabola.mkgmap.reader.osm.Element;
 import uk.me.parabola.mkgmap.reader.osm.GType;
@@ -36,7 +37,7 @@ import uk.me.parabola.mkgmap.reader.osm.TypeResult;
  * @author Steve Ratcliffe
  */
 public class ActionRule implements Rule {
-	private final Op expression;
+	private Op expression;
 	private final List<Action> actions;
 	private final GType type;
 
@@ -74,6 +75,14 @@ public class ActionRule implements Rule {
 		result.add(element, type);
 	}
 
+	/**
+	 * Replace the expression with one where the tag tests are shared with
+	 * the other rules in the rule set.
+	 */
+	void compile(ExpressionCompiler compiler) {
+		expression = compiler.compile(expression);
+	}
+
 	public String toString() {
 		StringBuilder fmt = new StringBuilder();
 		if (expression != null)
@@ -16,6 +16,7 @@
  */
 package uk.me.parabola.mkgmap.osmstyle;
 
+import uk.me.parabola.mkgmap.osmstyle.eval.ExpressionCompiler;
 import uk.me.parabola.mkgmap.osmstyle.eval.Op;
 import uk.me.parabola.mkgmap.reader.osm.Element;
 import uk.me.parabola.mkgmap.reader.osm.GType;
@@ -29,7 +30,7 @@ import uk.me.parabola.mkgmap.reader.osm.TypeResult;
  * @author Steve Ratcliffe
  */
 public class ExpressionRule implements Rule {
-	private final Op expression;
+	private Op expression;
 	private final GType gtype;
 
 	public ExpressionRule(Op expression, GType gtype) {
@@ -42,6 +43,14 @@ public class ExpressionRule implements Rule {
 			result.add(el, gtype);
 	}
 
+	/**
+	 * Replace the expression with one where the tag tests are shared with
+	 * the other rules in the rule set.
+	 */
+	void compile(ExpressionCompiler compiler) {
+		expression = compiler.compile(expression);
+	}
+
 	public String toString() {
 		return expression.toString() + ' ' + gtype;
 	}
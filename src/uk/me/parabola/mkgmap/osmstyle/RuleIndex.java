@@ -70,6 +70,9 @@ public class RuleIndex {
 	// Maps a rule number to the tags that might be changed by that rule
 	private final Map<Integer, List<String>> changeTags = new HashMap<Integer, List<String>>();
 
+	// The rules for each tag key, so that a lookup needs no string building.
+	private volatile Map<String, KeyRules> keyIndex;
+
 	private boolean inited;
 
 	/**
@@ -118,25 +121,28 @@ public class RuleIndex {
 	}
 
 	/**
-	 * Get a list of rules that might be matched by this tag.
-	 * @param tagval The tag and its value eg highway=primary.
-	 * @return A BitSet of rules numbers.
-	 * If there are no rules then null will be returned.
+	 * Add all the rules that might be matched by this tag to the given set.
+	 * This is the rules that start with key=value and those that start with
+	 * key=*.  No objects are created.
+	 *
+	 * @param key The tag key eg highway.
+	 * @param value The tag value eg primary.
+	 * @param candidates The rule numbers are added to this set.
 	 */
-	public BitSet getRulesForTag(String tagval) {
-		BitSet set = tagVals.get(tagval);
-
-		// Need to also look up all rules that might match highway=*
-		int i = tagval.indexOf('=');
-		String s2 = tagval.substring(0, i);
-		BitSet set2 = existKeys.get(s2);
-		
-		BitSet res = new BitSet();
+	public void addRulesForTag(String key, String value, BitSet candidates) {
+		Map<String, KeyRules> index = keyIndex;
+		if (index == null)
+			index = buildKeyIndex();
+
+		KeyRules kr = index.get(key);
+		if (kr == null)
+			return;
+
+		if (kr.exists != null)
+			candidates.or(kr.exists);
+		BitSet set = kr.values.get(value);
 		if (set != null)
-			res.or(set);
-		if (set2 != null) 
-			res.or(set2);
-		return res;
+			candidates.or(set);
 	}
 
 	/**
@@ -202,6 +208,38 @@ public class RuleIndex {
 		}
 
 		inited = true;
+		buildKeyIndex();
+	}
+
+	/**
+	 * Rearrange the existKeys and tagVals maps by key.  The same BitSet
+	 * objects are used, so it is always up to date.
+	 */
+	private Map<String, KeyRules> buildKeyIndex() {
+		Map<String, KeyRules> index = new HashMap<String, KeyRules>();
+		for (Map.Entry<String, BitSet> ent : existKeys.entrySet())
+			getKeyRules(index, ent.getKey()).exists = ent.getValue();
+
+		for (Map.Entry<String, BitSet> ent : tagVals.entrySet()) {
+			String keyval = ent.getKey();
+			int ind = keyval.indexOf('=');
+			if (ind < 0)
+				continue;
+			String key = keyval.substring(0, ind);
+			getKeyRules(index, key).values.put(keyval.substring(ind + 1), ent.getValue());
+		}
+
+		keyIndex = index;
+		return index;
+	}
+
+	private static KeyRules getKeyRules(Map<String, KeyRules> index, String key) {
+		KeyRules kr = index.get(key);
+		if (kr == null) {
+			kr = new KeyRules();
+			index.put(key, kr);
+		}
+		return kr;
 	}
 
 	private void addExists(String keystring, int ruleNumber) {
@@ -245,4 +283,14 @@ public class RuleIndex {
 	public List<RuleDetails> getRuleDetails() {
 		return ruleDetails;
 	}
+
+	/**
+	 * The rules for one tag key.
+	 */
+	private static class KeyRules {
+		// Rules that start with key=*
+		private BitSet exists;
+		// Rules that start with key=value, by value
+		private final Map<String, BitSet> values = new HashMap<String, BitSet>();
+	}
 }
@@ -22,8 +22,10 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import uk.me.parabola.mkgmap.osmstyle.eval.ExpressionCompiler;
 import uk.me.parabola.mkgmap.reader.osm.Element;
 import uk.me.parabola.mkgmap.reader.osm.Rule;
+import uk.me.parabola.mkgmap.reader.osm.Tags;
 import uk.me.parabola.mkgmap.reader.osm.TypeResult;
 import uk.me.parabola.mkgmap.reader.osm.WatchableTypeResult;
 
@@ -40,6 +42,13 @@ public class RuleSet implements Rule, Iterable<Rule> {
 	private RuleIndex index = new RuleIndex();
 	private final Set<String> usedTags = new HashSet<String>();
 
+	// The candidate set is reused for each element, one for each thread.
+	private final ThreadLocal<BitSet> candidateSet = new ThreadLocal<BitSet>() {
+		protected BitSet initialValue() {
+			return new BitSet();
+		}
+	};
+
 	/**
 	 * Resolve the type for this element by running the rules in order.
 	 *
@@ -55,12 +64,13 @@ public class RuleSet implements Rule, Iterable<Rule> {
 	public void resolveType(Element el, TypeResult result) {
 		WatchableTypeResult a = new WatchableTypeResult(result);
 
-		// Get all the rules that could match from the index.  
-		BitSet candidates = new BitSet();
-		for (String tag : el) {
-			BitSet rules = index.getRulesForTag(tag);
-			if (rules != null)
-				candidates.or(rules);
+		// Get all the rules that could match from the index.
+		BitSet candidates = candidateSet.get();
+		candidates.clear();
+		Tags tags = el.getTags();
+		if (tags != null) {
+			for (int i = tags.nextTag(0); i >= 0; i = tags.nextTag(i + 1))
+				index.addRulesForTag(tags.getKeyAt(i), tags.getValueAt(i), candidates);
 		}
 
 		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {			
@@ -144,6 +154,28 @@ public class RuleSet implements Rule, Iterable<Rule> {
 		rules = index.getRules();
 	}
 
+	/**
+	 * Compile the rules so that each different tag test is shared by all
+	 * the rules that use it and is evaluated only once per element.  The
+	 * rules are otherwise run exactly as before.
+	 *
+	 * The compiled rules hold state, so the rule set must only be used
+	 * from one thread afterwards.  This is already the case as each map
+	 * has its own style.
+	 */
+	public void compile() {
+		if (rules == null)
+			prepare();
+
+		ExpressionCompiler compiler = new ExpressionCompiler();
+		for (Rule rule : rules) {
+			if (rule instanceof ExpressionRule)
+				((ExpressionRule) rule).compile(compiler);
+			else if (rule instanceof ActionRule)
+				((ActionRule) rule).compile(compiler);
+		}
+	}
+
 	public Set<String> getUsedTags() {
 		return usedTags;
 	}
@@ -17,6 +17,7 @@
 package uk.me.parabola.mkgmap.osmstyle;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -165,6 +166,13 @@ public class StyledConverter implements OsmConverter {
 		lineRules = style.getLineRules();
 		polygonRules = style.getPolygonRules();
 
+		if (props.getProperty("compile-style") != null) {
+			for (Rule rules : Arrays.asList(wayRules, nodeRules, lineRules, polygonRules)) {
+				if (rules instanceof RuleSet)
+					((RuleSet) rules).compile();
+			}
+		}
+
 		ignoreMaxspeeds = props.getProperty("ignore-maxspeeds") != null;
 		driveOnLeft = props.getProperty("drive-on-left") != null;
 		NODHeader.setDriveOnLeft(driveOnLeft);
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.osmstyle.eval;
+
+import uk.me.parabola.mkgmap.reader.osm.Element;
+import uk.me.parabola.mkgmap.reader.osm.Tags;
+
+/**
+ * Wraps a simple tag test and remembers the result for the last element
+ * that it was evaluated for.
+ *
+ * The {@link ExpressionCompiler} arranges that every rule that contains the
+ * same test uses the same one of these, so that when several rules
+ * test for example highway=primary, the tag is only looked at once for
+ * each element.
+ *
+ * The result is only reused while the tags of the element are unchanged,
+ * as an action in an earlier rule may have added or changed a tag.
+ *
+ * Like {@link LinkedOp} this holds state, so it must not be shared between
+ * threads.
+ *
+ * @author agent
+ */
+public class CachedOp implements Op {
+	private final Op wrapped;
+
+	private Element lastElement;
+	private Tags lastTags;
+	private int lastVersion;
+	private boolean lastResult;
+
+	public CachedOp(Op wrapped) {
+		this.wrapped = wrapped;
+	}
+
+	public boolean eval(Element el) {
+		Tags tags = el.getTags();
+		if (el == lastElement && tags == lastTags && (tags == null || tags.getVersion() == lastVersion))
+			return lastResult;
+
+		boolean result = wrapped.eval(el);
+		lastElement = el;
+		lastTags = tags;
+		lastVersion = tags == null ? 0 : tags.getVersion();
+		lastResult = result;
+		return result;
+	}
+
+	public boolean hasHigherPriority(Op other) {
+		return wrapped.hasHigherPriority(other);
+	}
+
+	public Op getFirst() {
+		return wrapped.getFirst();
+	}
+
+	public void setFirst(Op first) {
+		wrapped.setFirst(first);
+	}
+
+	public char getType() {
+		return wrapped.getType();
+	}
+
+	public String value() {
+		return wrapped.value();
+	}
+
+	public boolean isType(char value) {
+		return wrapped.isType(value);
+	}
+
+	public int priority() {
+		return wrapped.priority();
+	}
+
+	public String getTypeString() {
+		return wrapped.getTypeString();
+	}
+
+	public String toString() {
+		return wrapped.toString();
+	}
+}
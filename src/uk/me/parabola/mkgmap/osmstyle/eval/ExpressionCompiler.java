@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.osmstyle.eval;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rewrites the expressions of a set of rules so that identical tag tests
+ * are shared between all the rules.
+ *
+ * Each simple test such as highway=primary, name=* or maxspeed&lt;30 is
+ * replaced by a single {@link CachedOp} for the whole rule set, so that it
+ * is evaluated at most once for an element however many rules use it.
+ * The AND, OR and NOT operations are kept as they are, with their operands
+ * rewritten in place.
+ *
+ * Tests on style functions such as length() are not shared, as they may
+ * depend on more than the tags.
+ *
+ * @author agent
+ */
+public class ExpressionCompiler {
+	private final Map<String, Op> tests = new HashMap<String, Op>();
+
+	/**
+	 * Compile an expression.
+	 * @param op The top of the expression tree, may be null.
+	 * @return The expression to use in its place.  This may be the same object
+	 * with its operands replaced.
+	 */
+	public Op compile(Op op) {
+		if (op == null)
+			return null;
+
+		if (op instanceof LinkedOp) {
+			// A LinkedBinaryOp must keep wrapping a binary operation.
+			LinkedOp lop = (LinkedOp) op;
+			Op compiled = compile(lop.wrapped);
+			if (compiled instanceof BinaryOp || !(lop instanceof BinaryOp))
+				lop.setWrapped(compiled);
+			return op;
+		}
+
+		if (op instanceof CachedOp)
+			return share(op);
+
+		if (op.isType(Op.AND) || op.isType(Op.OR)) {
+			BinaryOp bop = (BinaryOp) op;
+			bop.setFirst(compile(bop.getFirst()));
+			bop.setSecond(compile(bop.getSecond()));
+			return op;
+		}
+
+		if (op.isType(Op.NOT)) {
+			op.setFirst(compile(op.getFirst()));
+			return op;
+		}
+
+		if (isTagTest(op))
+			return share(op);
+
+		return op;
+	}
+
+	/**
+	 * @return The number of different tests that have been found.
+	 */
+	public int getTestCount() {
+		return tests.size();
+	}
+
+	private Op share(Op op) {
+		String key = op.toString();
+		Op shared = tests.get(key);
+		if (shared == null) {
+			shared = (op instanceof CachedOp) ? op : new CachedOp(op);
+			tests.put(key, shared);
+		}
+		return shared;
+	}
+
+	/**
+	 * A test that depends only on the value of a single tag.
+	 */
+	private static boolean isTagTest(Op op) {
+		switch (op.getType()) {
+		case Op.EQUALS:
+		case Op.NOT_EQUALS:
+		case Op.EXISTS:
+		case Op.NOT_EXISTS:
+		case Op.REGEX:
+		case Op.GT:
+		case Op.GTE:
+		case Op.LT:
+		case Op.LTE:
+			Op first = op.getFirst();
+			return first != null && first.isType(Op.VALUE) && !first.value().endsWith("()");
+		default:
+			return false;
+		}
+	}
+}
@@ -38,7 +38,7 @@ import uk.me.parabola.mkgmap.reader.osm.Element;
  * @author Steve Ratcliffe
  */
 public class LinkedOp implements Op {
-	protected final Op wrapped;
+	protected Op wrapped;
 	private final boolean first;
 	private LinkedOp link;
 	private Element current;
@@ -121,6 +121,13 @@ public class LinkedOp implements Op {
 			link.setMatched(el);
 	}
 
+	/**
+	 * Replace the wrapped operation, used when the expression is compiled.
+	 */
+	void setWrapped(Op wrapped) {
+		this.wrapped = wrapped;
+	}
+
 	public void setLink(LinkedOp link) {
 		if (this.link == null)
 			this.link = link;
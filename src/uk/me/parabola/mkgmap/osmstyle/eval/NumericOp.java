@@ -27,6 +27,8 @@ import uk.me.parabola.mkgmap.reader.osm.Element;
  * @author Steve Ratcliffe
  */
 public abstract class NumericOp extends AbstractBinaryOp {
+	// The value that is being compared against, parsed once.
+	private ValueWithUnit ourVal;
 
 	/**
 	 * This is passed the result of a compareTo and the subclass
@@ -49,14 +51,17 @@ public abstract class NumericOp extends AbstractBinaryOp {
 			return false;
 
 		ValueWithUnit result = new ValueWithUnit(val);
-		ValueWithUnit ourVal = new ValueWithUnit(getSecond().value());  // TODO optimise
-
 		if (!result.isValid() || !ourVal.isValid())
 			return false;
 		int inter = result.compareTo(ourVal);
 		return doesCompare(inter);
 	}
 
+	public void setSecond(Op second) {
+		super.setSecond(second);
+		ourVal = new ValueWithUnit(second.value());
+	}
+
 	public String toString() {
 		return "(" + first + getTypeString() + getSecond() + ')';
 	}
@@ -21,7 +21,15 @@ import java.io.FileNotFoundException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import uk.me.parabola.imgfmt.ExitException;
 import uk.me.parabola.imgfmt.FileSystemParam;
@@ -43,6 +51,7 @@ import uk.me.parabola.mkgmap.reader.osm.Style;
 import uk.me.parabola.mkgmap.reader.osm.Way;
 import uk.me.parabola.mkgmap.scan.SyntaxException;
 import uk.me.parabola.util.EnhancedProperties;
+import uk.me.parabola.util.ThreadUtils;
 
 
 /**
@@ -66,6 +75,9 @@ public abstract class DEM {
 
 	protected int lat;
 	protected int lon;
+	// The size of the grid, in points from the origin at lat, lon.
+	protected int sizeX = N;
+	protected int sizeY = N;
 
 	protected abstract double ele(int x, int y);
 
@@ -80,32 +92,19 @@ public abstract class DEM {
 		double maxLon = Utils.toDegrees(bounds.getMaxLong());
 
 		System.out.printf("bounds: %f %f %f %f\n", minLat, minLon, maxLat, maxLon);
-		DEM data;
-		String demType = config.getProperty("dem-type", "SRTM");
-
-		try {
-			String dataPath;
-			Class demClass;
-			if (demType.equals("ASTER")) {
-				dataPath = config.getProperty("dem-path", "ASTER");
-				demClass = Class.forName("uk.me.parabola.mkgmap.reader.dem.optional.GeoTiffDEM$ASTER");
-			} else if (demType.equals("CGIAR")) {
-				dataPath = config.getProperty("dem-path", "CGIAR");
-				demClass = Class.forName("uk.me.parabola.mkgmap.reader.dem.optional.GeoTiffDEM$CGIAR");
-			} else {
-				dataPath = config.getProperty("dem-path", "SRTM");
-				demClass = Class.forName("uk.me.parabola.mkgmap.reader.dem.HGTDEM");
-			}
-			Constructor<DEM> constructor = demClass.getConstructor(String.class,
-					Double.TYPE, Double.TYPE,
-					Double.TYPE, Double.TYPE);
-			data = constructor.newInstance(dataPath, minLat, minLon, maxLat, maxLon);
-		}
-		catch (Exception ex) {
-			throw new ExitException("failed to create DEM", ex);
-		}
+		DEM data = createDEM(config, minLat, minLon, maxLat, maxLon);
 
 		Isolines lines = data.new Isolines(data, minLat, minLon, maxLat, maxLon);
+
+		// The lines are simplified as they are traced, for the most detailed
+		// resolution of the map. The map builder filters them further for
+		// the other resolutions.
+		int maxBits = 0;
+		for (LevelInfo info : mapData.mapLevels())
+			maxBits = Math.max(maxBits, info.getBits());
+		double simplify = config.getProperty("dem-simplify", config.getProperty("reduce-point-density", 2.6));
+		lines.simplifyDistance = simplify * (1 << (24 - maxBits));
+
 		int increment = config.getProperty("dem-increment", 10);
 
 		double minHeight = lines.getMinHeight();
@@ -142,19 +141,29 @@ public abstract class DEM {
 			throw new ExitException("Could not open style " + name1);
 		}
 
+		List<Integer> levels = new ArrayList<Integer>();
 		for (int level = 0; level < maxHeight; level += increment) {
 			if (level < minHeight) continue;
+			levels.add(level);
+		}
 
-			// create isolines
-			lines.addLevel(level);
-
-			for (Isolines.Isoline line : lines.isolines) {
-				Way way = new Way(id--, line.points);
-				way.addTag("contour", "elevation");
-				way.addTag("ele", String.format("%d", (int) line.level));
-				converter.convertWay(way);
+		int threads = Math.min(ThreadUtils.getThreadCount(config, "dem-threads"), levels.size());
+		if (threads > 1) {
+			// A DEM is not thread safe, so each thread needs its own
+			List<Isolines> workers = new ArrayList<Isolines>();
+			workers.add(lines);
+			for (int i = 1; i < threads; i++) {
+				DEM dem = createDEM(config, minLat, minLon, maxLat, maxLon);
+				workers.add(dem.new Isolines(dem, lines));
+			}
+			addLevelsInParallel(workers, levels, converter);
+		} else {
+			for (int level : levels) {
+				// create isolines
+				lines.addLevel(level);
+				convertIsolines(lines.isolines, converter);
+				lines.isolines.clear();
 			}
-			lines.isolines.clear();
 		}
 
 		if (config.getProperty("dem-separate-img", false)) {
@@ -193,6 +202,83 @@ public abstract class DEM {
 		}
 	}
 
+	private static DEM createDEM(EnhancedProperties config, double minLat, double minLon, double maxLat, double maxLon) {
+		String demType = config.getProperty("dem-type", "SRTM");
+
+		try {
+			String dataPath;
+			Class demClass;
+			if (demType.equals("ASTER")) {
+				dataPath = config.getProperty("dem-path", "ASTER");
+				demClass = Class.forName("uk.me.parabola.mkgmap.reader.dem.optional.GeoTiffDEM$ASTER");
+			} else if (demType.equals("CGIAR")) {
+				dataPath = config.getProperty("dem-path", "CGIAR");
+				demClass = Class.forName("uk.me.parabola.mkgmap.reader.dem.optional.GeoTiffDEM$CGIAR");
+			} else {
+				dataPath = config.getProperty("dem-path", "SRTM");
+				demClass = Class.forName("uk.me.parabola.mkgmap.reader.dem.HGTDEM");
+			}
+			Constructor<DEM> constructor = demClass.getConstructor(String.class,
+					Double.TYPE, Double.TYPE,
+					Double.TYPE, Double.TYPE);
+			return constructor.newInstance(dataPath, minLat, minLon, maxLat, maxLon);
+		}
+		catch (Exception ex) {
+			throw new ExitException("failed to create DEM", ex);
+		}
+	}
+
+	/**
+	 * Trace the levels on several threads.  Each thread takes one of the
+	 * isolines, which all have their own DEM, from a queue while it traces a
+	 * level.  The lines are converted on this thread in the order of the
+	 * levels, so that the result is the same as when the levels are done one
+	 * after the other.  Only a few levels are traced ahead of the conversion,
+	 * so that the lines of all the levels are never held at once.
+	 *
+	 * @param workers The isolines to trace with, one for each thread.
+	 */
+	static void addLevelsInParallel(List<Isolines> workers, List<Integer> levels, OsmConverter converter) {
+		int threads = workers.size();
+		final BlockingQueue<Isolines> queue = new LinkedBlockingQueue<Isolines>(workers);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads, ThreadUtils.daemonThreadFactory("contours"));
+		try {
+			int maxAhead = 2 * threads;
+			LinkedList<Future<List<Isolines.Isoline>>> futures = new LinkedList<Future<List<Isolines.Isoline>>>();
+			for (final int level : levels) {
+				if (futures.size() >= maxAhead)
+					convertIsolines(ThreadUtils.waitFor(futures.removeFirst(), "create contours"), converter);
+				futures.add(pool.submit(new Callable<List<Isolines.Isoline>>() {
+					public List<Isolines.Isoline> call() throws InterruptedException {
+						Isolines levelLines = queue.take();
+						try {
+							levelLines.addLevel(level);
+							return new ArrayList<Isolines.Isoline>(levelLines.isolines);
+						} finally {
+							levelLines.isolines.clear();
+							queue.put(levelLines);
+						}
+					}
+				}));
+			}
+
+			while (!futures.isEmpty())
+				convertIsolines(ThreadUtils.waitFor(futures.removeFirst(), "create contours"), converter);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static void convertIsolines(List<Isolines.Isoline> isolines, OsmConverter converter) {
+		for (Isolines.Isoline line : isolines) {
+			Way way = new Way(id--, line.points);
+			way.addTag("contour", "elevation");
+			way.addTag("ele", String.format("%d", (int) line.level));
+			converter.convertWay(way);
+		}
+	}
+
 	private int lastXi = -1;
 	private int lastYi = -1;
 
@@ -215,9 +301,7 @@ public abstract class DEM {
 			{4, -4, 4, -4, 2, 2, -2, -2, 2, -2, -2, 2, 1, 1, 1, 1}
 	};
 
-	private static int lastId = 1000000000;
-	private static double lastX;
-	private static double lastY;
+	private static final AtomicInteger lastId = new AtomicInteger(1000000000);
 
 	private static final int[][] off0 = {{0, 0},
 			{0, 0},
@@ -329,7 +413,7 @@ public abstract class DEM {
 		double t = x - xi;
 		double u = y - yi;
 
-		if (xi < 0 || xi > N + 1 || yi < 0 || yi > N + 1)
+		if (xi < 0 || xi > sizeX + 1 || yi < 0 || yi > sizeY + 1)
 			throw new IndexOutOfBoundsException(String.format("(%f, %f)->(%d, %d)", lat, lon, xi, yi));
 
 		double val = 0;
@@ -359,7 +443,7 @@ public abstract class DEM {
 		double t = x - xi;
 		double u = y - yi;
 
-		if (xi < 0 || xi > N + 1 || yi < 0 || yi > N + 1)
+		if (xi < 0 || xi > sizeX + 1 || yi < 0 || yi > sizeY + 1)
 			throw new IndexOutOfBoundsException(String.format("(%f, %f)->(%d, %d)", lat, lon, xi, yi));
 
 		double val = 0;
@@ -371,7 +455,7 @@ public abstract class DEM {
 	}
 
 	protected double elevation(int x, int y) {
-		if (x < 0 || x > N || y < 0 || y > N)
+		if (x < 0 || x > sizeX || y < 0 || y > sizeY)
 			throw new IndexOutOfBoundsException(String.format("elevation: %d %d", x, y));
 		return ele(x, y);
 	}
@@ -387,6 +471,14 @@ public abstract class DEM {
 		double min;
 		double max;
 
+		// the last point that was added to a line
+		private double lastX;
+		private double lastY;
+
+		// the error in metres that is allowed when simplifying the lines,
+		// zero to keep all the points
+		double simplifyDistance;
+
 		final ArrayList<Isoline> isolines = new ArrayList<Isoline>();
 
 		class Isoline {
@@ -396,7 +488,7 @@ public abstract class DEM {
 
 			private Isoline(double level) {
 				this.level = level;
-				id = lastId++;
+				id = lastId.getAndIncrement();
 				points = new ArrayList<Coord>();
 			}
 
@@ -562,7 +654,7 @@ public abstract class DEM {
 					double dist = quickDistance(p.x, p.y, px[i], py[i]);
 					log.debug("distance %d: %f", i, dist);
 
-					if (dist < md && (visited[p.iy * (N + 1) + p.ix] & brd[edges[i]]) == 0) {
+					if (dist < md && (visited[visitedIndex(p.ix, p.iy)] & brd[edges[i]]) == 0) {
 						md = dist;
 						iMin = i;
 					}
@@ -607,6 +699,69 @@ public abstract class DEM {
 				points.add(points.size(), points.get(0));
 			}
 
+			/**
+			 * Remove the points that are not needed to keep the line within
+			 * the allowed error, using the Douglas-Peucker algorithm.  The
+			 * lines can be long, so the points to keep are marked first and
+			 * the list is only rewritten once.
+			 */
+			void simplify(double allowedError) {
+				int n = points.size();
+				if (n < 3)
+					return;
+
+				boolean[] keep = new boolean[n];
+				keep[0] = true;
+				keep[n - 1] = true;
+				int[] stack = new int[2 * n];
+				int top = 0;
+				stack[top++] = 0;
+				stack[top++] = n - 1;
+				while (top > 0) {
+					int end = stack[--top];
+					int start = stack[--top];
+					if (end - start < 2)
+						continue;
+
+					Coord a = points.get(start);
+					Coord b = points.get(end);
+					double ab = a.distance(b);
+					double maxDistance = 0;
+					int maxIndex = -1;
+					for (int i = start + 1; i < end; i++) {
+						Coord p = points.get(i);
+						double distance;
+						if (ab == 0) {
+							distance = p.distance(a);
+						} else {
+							// distance to the line from a to b by Heron's formula
+							double ap = p.distance(a);
+							double bp = p.distance(b);
+							double s = (ab + ap + bp) / 2;
+							distance = 2 * Math.sqrt(Math.max(0, s * (s - ab) * (s - ap) * (s - bp))) / ab;
+						}
+						if (distance > maxDistance) {
+							maxDistance = distance;
+							maxIndex = i;
+						}
+					}
+					if (maxDistance > allowedError) {
+						keep[maxIndex] = true;
+						stack[top++] = start;
+						stack[top++] = maxIndex;
+						stack[top++] = maxIndex;
+						stack[top++] = end;
+					}
+				}
+
+				int j = 0;
+				for (int i = 0; i < n; i++) {
+					if (keep[i])
+						points.set(j++, points.get(i));
+				}
+				points.subList(j, n).clear();
+			}
+
 		}
 
 		public Isolines(DEM data, double minLat, double minLon, double maxLat, double maxLon) {
@@ -617,10 +772,31 @@ public abstract class DEM {
 			this.minY = (int) ((minLat - data.lat) / res);
 			this.maxX = (int) ((maxLon - data.lon) / res);
 			this.maxY = (int) ((maxLat - data.lat) / res);
+			this.visited = createVisited();
 
 			init();
 		}
 
+		/**
+		 * Make isolines for the same area as another one, but using a
+		 * different DEM for the heights, so that other levels can be added
+		 * on another thread.  The area is read from the DEM here, as some
+		 * kinds of DEM have no heights until it is.
+		 */
+		public Isolines(DEM data, Isolines other) {
+			this.data = data;
+			this.minX = other.minX;
+			this.minY = other.minY;
+			this.maxX = other.maxX;
+			this.maxY = other.maxY;
+			this.min = other.min;
+			this.max = other.max;
+			this.simplifyDistance = other.simplifyDistance;
+			this.visited = createVisited();
+
+			data.read(minX - 2, minY - 2, maxX + 2, maxY + 2);
+		}
+
 		private void init() {
 			System.out.printf("init: %d %d %d %d\n", minX, minY, maxX, maxY);
 			data.read(minX - 2, minY - 2, maxX + 2, maxY + 2);
@@ -683,7 +859,7 @@ public abstract class DEM {
 
 			void markEdge() {
 				log.debug("marking edge: %d %d %d %d", ix, iy, edge, brd[edge]);
-				visited[iy * (N + 1) + ix] |= brd[edge];
+				visited[visitedIndex(ix, iy)] |= brd[edge];
 			}
 
 			void moveCell() {
@@ -695,7 +871,17 @@ public abstract class DEM {
 			}
 		}
 
-		final byte[] visited = new byte[(N + 1) * (N + 1)];
+		// The edges of each cell that have been visited, there is an extra
+		// cell on each side as lines can go just outside the area.
+		final byte[] visited;
+
+		private byte[] createVisited() {
+			return new byte[(maxX - minX + 3) * (maxY - minY + 3)];
+		}
+
+		int visitedIndex(int ix, int iy) {
+			return (iy - minY + 1) * (maxX - minX + 3) + ix - minX + 1;
+		}
 
 		public void addLevel(double level) {
 			if (level < min || level > max)
@@ -703,6 +889,10 @@ public abstract class DEM {
 
 			System.out.printf("addLevel: %f\n", level);
 			Arrays.fill(visited, (byte) 0);
+			// start each level afresh, so it does not matter which thread
+			// or in which order the levels are done
+			lastX = 0;
+			lastY = 0;
 
 			for (int y = minY; y < maxY; y++) {
 				for (int x = minX; x < maxX; x++) {
@@ -734,9 +924,9 @@ public abstract class DEM {
 
 					int k = -1;
 
-					if ((v & 1) > 0 && (visited[y * (N + 1) + x] & 1) == 0) {
+					if ((v & 1) > 0 && (visited[visitedIndex(x, y)] & 1) == 0) {
 						k = 0;
-					} else if ((v & 2) > 0 && (visited[y * (N + 1) + x] & 2) == 0) {
+					} else if ((v & 2) > 0 && (visited[visitedIndex(x, y)] & 2) == 0) {
 						k = 1;
 					}
 
@@ -762,7 +952,10 @@ public abstract class DEM {
 
 							Position p = new Position(x, y, data.lon + (x0 + delta * (x1 - x0)) * DEM.res, data.lat + (y0 + delta * (y1 - y0)) * DEM.res, k);
 							p.markEdge();
-							isolines.add(traceByStepping(level, p, direction));
+							Isoline line = traceByStepping(level, p, direction);
+							if (simplifyDistance > 0)
+								line.simplify(simplifyDistance);
+							isolines.add(line);
 						}
 						catch (RuntimeException ex) {
 							log.debug("error: %s", ex.toString());
@@ -784,7 +977,7 @@ public abstract class DEM {
 
 			while (true) {
 				log.debug("traceByStepping: %f %d %d %f %f %d", level, p.ix, p.iy, p.x, p.y, p.edge);
-				visited[p.iy * (N + 1) + p.ix] |= brd[p.edge];
+				visited[visitedIndex(p.ix, p.iy)] |= brd[p.edge];
 
 				if (n > 0 && p.ix == startP.ix && p.iy == startP.iy && quickDistance(p.x, p.y, startP.x, startP.y) < 5) {
 					log.debug("closed curve!");
@@ -808,7 +1001,6 @@ public abstract class DEM {
 				n++;
 				if (!line.addCell(p, direction) || line.points.size() > maxPoints) {
 					log.debug("ending contour");
-					isolines.add(line);
 					return line;
 				}
 			}
@@ -1,64 +1,154 @@
 /*
  * Copyright (C) 2009 Christian Gawron
- * 
+ *
  *  This program is free software; you can redistribute it and/or modify
  *  it under the terms of the GNU General Public License version 2 as
  *  published by the Free Software Foundation.
- * 
+ *
  *  This program is distributed in the hope that it will be useful,
  *  but WITHOUT ANY WARRANTY; without even the implied warranty of
  *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
  *  GNU General Public License for more details.
- * 
- * 
+ *
+ *
  * Author: Christian Gawron
  * Create date: 03-Jul-2009
  */
 package uk.me.parabola.mkgmap.reader.dem;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Writer;
-import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import uk.me.parabola.imgfmt.ExitException;
+import uk.me.parabola.log.Logger;
 
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 
+/**
+ * Heights from SRTM files in the HGT format.  The area may cover any number
+ * of files, they are put together into one grid.  Missing files, which is
+ * usually the case for the sea, have a height of zero.
+ *
+ * The files are memory mapped.  The mapped files are shared by all
+ * instances, and the most recently used ones are kept for the next tile.
+ * An instance must only be used by one thread at a time.
+ */
 public class HGTDEM extends DEM
 {
-    private MappedByteBuffer buffer ;
-    
+    private static final Logger log = Logger.getLogger(HGTDEM.class);
+
+    // The number of mapped files that are kept for other tiles.
+    private static final int MAX_OPEN_FILES = 32;
+
+    // Marks a file that does not exist.
+    private static final ShortBuffer NO_DATA = ShortBuffer.allocate(0);
+
+    // In access order, so the eldest entry is the least recently used.
+    private static final Map<String, ShortBuffer> openFiles = new LinkedHashMap<String, ShortBuffer>(16, 0.75f, true) {
+	protected boolean removeEldestEntry(Map.Entry<String, ShortBuffer> eldest) {
+	    return size() > MAX_OPEN_FILES;
+	}
+    };
+
+    private final String dataPath;
+
+    // The number of files in each direction, not counting the ring of
+    // files around them that is needed for the interpolation.
+    private final int nLat;
+    private final int nLon;
+    private final ShortBuffer[] files;
+
     public HGTDEM(String dataPath, double minLat, double minLon, double maxLat, double maxLon)
     {
-	this.lat = (int) minLat;
-	this.lon = (int) minLon;
-	if (maxLat > lat+1 || maxLon > lon+1)
-	    throw new ExitException("Area too large (must not span more than one SRTM file)");
-	
-	String northSouth = lat < 0 ? "S" : "N";
-	String eastWest = lon > 0 ? "E" : "W";
-	String fileName = String.format("%s/%s%02d%s%03d.hgt", dataPath, 
-					northSouth, lat < 0 ? -lat : lat, 
-					eastWest, lon < 0 ? -lon : lon);
-	try {
-	    FileInputStream is = new FileInputStream(fileName);
-	    buffer = is.getChannel().map(READ_ONLY, 0, 2*(M+1)*(M+1));
-	}
-	catch (Exception e) {
-	    throw new ExitException("failed to open " + fileName, e);
-	}
+	this.dataPath = dataPath;
+	this.lat = (int) Math.floor(minLat);
+	this.lon = (int) Math.floor(minLon);
+	nLat = Math.max(1, (int) Math.ceil(maxLat) - lat);
+	nLon = Math.max(1, (int) Math.ceil(maxLon) - lon);
+	sizeX = nLon * M;
+	sizeY = nLat * M;
+	files = new ShortBuffer[(nLat + 2) * (nLon + 2)];
+
+	if (!new File(dataPath).isDirectory())
+	    throw new ExitException("DEM directory not found: " + dataPath);
     }
-    
+
     public  void read(int minLon, int minLat, int maxLon, int maxLat)
     {
     }
-    
+
     public double ele(int x, int y)
     {
-	return buffer.getShort(2*((M-y)*(M+1)+x))+delta;
+	// A point on the edge between two files is taken from the file
+	// that is nearer to the origin.
+	int fx = x < 0 ? -1 : Math.min(Math.max(x - 1, 0) / M, nLon);
+	int fy = y < 0 ? -1 : Math.min(Math.max(y - 1, 0) / M, nLat);
+	ShortBuffer buffer = getFile(fx, fy);
+	if (buffer == NO_DATA)
+	    return delta;
+
+	int lx = x - fx * M;
+	int ly = y - fy * M;
+	return buffer.get((M-ly)*(M+1)+lx)+delta;
     }
-    
+
+    /**
+     * Get the file for a position in the grid of files, mapping it if it is
+     * not already open.
+     */
+    private ShortBuffer getFile(int fx, int fy)
+    {
+	int index = (fy + 1) * (nLon + 2) + fx + 1;
+	ShortBuffer buffer = files[index];
+	if (buffer == null) {
+	    buffer = open(fileName(lat + fy, lon + fx));
+	    files[index] = buffer;
+	}
+	return buffer;
+    }
+
+    private String fileName(int fileLat, int fileLon)
+    {
+	String northSouth = fileLat < 0 ? "S" : "N";
+	String eastWest = fileLon >= 0 ? "E" : "W";
+	return String.format("%s/%s%02d%s%03d.hgt", dataPath,
+			     northSouth, fileLat < 0 ? -fileLat : fileLat,
+			     eastWest, fileLon < 0 ? -fileLon : fileLon);
+    }
+
+    private static ShortBuffer open(String fileName)
+    {
+	synchronized (openFiles) {
+	    ShortBuffer buffer = openFiles.get(fileName);
+	    if (buffer != null)
+		return buffer;
+
+	    if (new File(fileName).exists()) {
+		try {
+		    RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+		    try {
+			buffer = raf.getChannel().map(READ_ONLY, 0, 2*(M+1)*(M+1)).asShortBuffer();
+		    } finally {
+			raf.close();
+		    }
+		}
+		catch (IOException e) {
+		    throw new ExitException("failed to open " + fileName, e);
+		}
+	    } else {
+		log.warn("no height data, file not found", fileName);
+		buffer = NO_DATA;
+	    }
+	    openFiles.put(fileName, buffer);
+	    return buffer;
+	}
+    }
+
     public void serializeCopyRight(Writer out) throws IOException
     {
 	out.write("  <copyright>\n");
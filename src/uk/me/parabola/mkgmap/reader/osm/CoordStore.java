@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import uk.me.parabola.imgfmt.app.Coord;
+
+/**
+ * Holds the position of every node that is read from the input file, keyed
+ * by the osm node id, until the ways have been resolved.
+ *
+ * This is usually the largest single structure while a file is being read,
+ * so there are several implementations that trade flexibility against
+ * memory usage. The one to use is selected with the --coord-store option.
+ *
+ * A store must always return the same Coord instance for a given id once it
+ * has been returned, as the Coord is shared between all the ways that use
+ * the node.
+ *
+ * @author agent
+ */
+public interface CoordStore {
+
+	/**
+	 * Save the position of a node.  The store may keep just the
+	 * numbers and create the Coord when it is first asked for.
+	 *
+	 * @param id The osm id of the node.
+	 * @param lat The latitude in map units.
+	 * @param lon The longitude in map units.
+	 */
+	public void put(long id, int lat, int lon);
+
+	/**
+	 * Save a node position as an existing Coord object.  This is also used
+	 * to replace the Coord for a node that is already in the store, for
+	 * example with a CoordPOI.
+	 *
+	 * @param id The osm id of the node.
+	 * @param co The coordinate, it will be returned by {@link #get} as is.
+	 */
+	public void put(long id, Coord co);
+
+	/**
+	 * @param id The osm id of the node.
+	 * @return The Coord for this node or null if it was not saved.
+	 */
+	public Coord get(long id);
+
+	/**
+	 * @return The number of nodes in the store.
+	 */
+	public int size();
+
+	/**
+	 * Release any resources held by the store.  It cannot be used
+	 * afterwards.
+	 */
+	public void close();
+}
@@ -59,6 +59,15 @@ public abstract class Element implements Iterable<String> {
 		}
 	}
 
+	/**
+	 * Get the tags directly, for code that needs to look at every tag
+	 * without the cost of the iterator.
+	 * @return The tags or null if the element has no tags.
+	 */
+	public Tags getTags() {
+		return tags;
+	}
+
 	public Iterator<String> iterator() {
 		if (tags == null) 
 			return Collections.<String>emptyList().iterator();
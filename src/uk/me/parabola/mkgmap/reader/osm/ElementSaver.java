@@ -48,7 +48,7 @@ import uk.me.parabola.util.EnhancedProperties;
 public class ElementSaver {
 	private static final Logger log = Logger.getLogger(ElementSaver.class);
 
-	protected Map<Long, Coord> coordMap = new HashMap<Long, Coord>(50000);
+	protected CoordStore coordStore;
 
 	protected Map<Long, Node> nodeMap;
 	protected Map<Long, Way> wayMap;
@@ -89,6 +89,8 @@ public class ElementSaver {
 			relationMap = new HashMap<Long, Relation>();
 		}
 
+		coordStore = createCoordStore(args.getProperty("coord-store", "hashmap"));
+
 		String rsa = args.getProperty("remove-short-arcs", null);
 		if(rsa != null)
 			minimumArcLength = (rsa.length() > 0)? Double.parseDouble(rsa) : 0.0;
@@ -99,8 +101,18 @@ public class ElementSaver {
 		ignoreTurnRestrictions = args.getProperty("ignore-turn-restrictions", false);
 	}
 
+	private static CoordStore createCoordStore(String type) {
+		if ("sparse".equals(type))
+			return new SparseCoordStore();
+		if ("mapped".equals(type))
+			return new MappedCoordStore();
+		if (!"hashmap".equals(type))
+			log.error("Unknown coord-store type " + type + ", using hashmap");
+		return new HashCoordStore();
+	}
+
 	/**
-	 * {@inheritDoc}
+	 * Save the position of a node.
 	 *
 	 * We use this to calculate a bounding box in the situation where none is
 	 * given.  In the usual case where there is a bounding box, then nothing
@@ -109,17 +121,35 @@ public class ElementSaver {
 	 * @param co The point.
 	 */
 	public void addPoint(long id, Coord co) {
-		coordMap.put(id, co);
+		coordStore.put(id, co);
+		extendBounds(co.getLatitude(), co.getLongitude());
+	}
+
+	/**
+	 * Save the position of a node given in map units.  Depending on the
+	 * coord store in use, the Coord is not created until it is first
+	 * needed, so use this when reading nodes.
+	 *
+	 * @param id The osm id of the node.
+	 * @param lat The latitude in map units.
+	 * @param lon The longitude in map units.
+	 */
+	public void addPoint(long id, int lat, int lon) {
+		coordStore.put(id, lat, lon);
+		extendBounds(lat, lon);
+	}
+
+	private void extendBounds(int lat, int lon) {
 		if (boundingBox == null) {
-			if (co.getLatitude() < minLat)
-				minLat = co.getLatitude();
-			if (co.getLatitude() > maxLat)
-				maxLat = co.getLatitude();
-
-			if (co.getLongitude() < minLon)
-				minLon = co.getLongitude();
-			if (co.getLongitude() > maxLon)
-				maxLon = co.getLongitude();
+			if (lat < minLat)
+				minLat = lat;
+			if (lat > maxLat)
+				maxLat = lat;
+
+			if (lon < minLon)
+				minLon = lon;
+			if (lon > maxLon)
+				maxLon = lon;
 		}
 	}
 
@@ -192,7 +222,7 @@ public class ElementSaver {
 	}
 
 	public Coord getCoord(long id) {
-		return coordMap.get(id);
+		return coordStore.get(id);
 	}
 
 	public Node getNode(long id) {
@@ -208,7 +238,8 @@ public class ElementSaver {
 	}
 	
 	public void finishLoading() {
-		coordMap = null;
+		coordStore.close();
+		coordStore = null;
 	}
 
 	/**
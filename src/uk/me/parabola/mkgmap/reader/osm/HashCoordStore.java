@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.me.parabola.imgfmt.app.Coord;
+
+/**
+ * The original coordinate store, a hash map from the id to a Coord that is
+ * created straight away.  Works with ids in any order, but uses the most
+ * memory.
+ *
+ * @author agent
+ */
+public class HashCoordStore implements CoordStore {
+	private final Map<Long, Coord> coordMap = new HashMap<Long, Coord>(50000);
+
+	public void put(long id, int lat, int lon) {
+		coordMap.put(id, new Coord(lat, lon));
+	}
+
+	public void put(long id, Coord co) {
+		coordMap.put(id, co);
+	}
+
+	public Coord get(long id) {
+		return coordMap.get(id);
+	}
+
+	public int size() {
+		return coordMap.size();
+	}
+
+	public void close() {
+		coordMap.clear();
+	}
+}
@@ -13,9 +13,12 @@
 
 package uk.me.parabola.mkgmap.reader.osm;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.log.Logger;
@@ -23,6 +26,7 @@ import uk.me.parabola.mkgmap.reader.osm.boundary.BoundaryGrid;
 import uk.me.parabola.mkgmap.reader.osm.boundary.BoundaryQuadTree;
 import uk.me.parabola.mkgmap.reader.osm.boundary.BoundaryUtil;
 import uk.me.parabola.util.EnhancedProperties;
+import uk.me.parabola.util.ThreadUtils;
 
 public class LocationHook extends OsmReadingHooksAdaptor {
 	private static final Logger log = Logger.getLogger(LocationHook.class);
@@ -42,6 +46,11 @@ public class LocationHook extends OsmReadingHooksAdaptor {
 	private String boundaryDirName;
 
 	
+	// the points of an element that are searched first
+	private static final int MIDDLE_POINT = 0;
+	private static final int FIRST_POINT = 1;
+	private static final int LAST_POINT = 2;
+
 	/** this static object is used to synchronize the check if the bounds directory contains any bounds */
 	private static final Object BOUNDS_CHECK_LOCK = new Object();
 	
@@ -52,6 +61,9 @@ public class LocationHook extends OsmReadingHooksAdaptor {
 	
 	private EnhancedProperties props;
 
+	// the number of threads to look up the locations with
+	private int locationThreads = 1;
+
 	public boolean init(ElementSaver saver, EnhancedProperties props) {
 		boundaryDirName = props.getProperty("bounds");
 		
@@ -62,6 +74,7 @@ public class LocationHook extends OsmReadingHooksAdaptor {
 		
 		this.props = props;
 		this.saver = saver;
+		this.locationThreads = ThreadUtils.getThreadCount(props, "location-threads");
 
 		long t1 = System.currentTimeMillis();
 
@@ -96,7 +109,16 @@ public class LocationHook extends OsmReadingHooksAdaptor {
 		log.info("Starting with location hook");
 
 		boundaryGrid = new BoundaryGrid(boundaryDirName, saver.getBoundingBox(), props);
-		processLocationRelevantElements();
+		ExecutorService pool = null;
+		if (locationThreads > 1) {
+			pool = Executors.newFixedThreadPool(locationThreads, ThreadUtils.daemonThreadFactory("location-hook"));
+		}
+		try {
+			processLocationRelevantElements(pool);
+		} finally {
+			if (pool != null)
+				pool.shutdown();
+		}
 
 		boundaryGrid = null;
 		
@@ -111,107 +133,163 @@ public class LocationHook extends OsmReadingHooksAdaptor {
 
 	/**
 	 * Iterate over all elements for which the boundary assignment should be performed.
+	 * @param pool null or a pool to run the searches on
 	 */
-	private void processLocationRelevantElements() {
+	private void processLocationRelevantElements(ExecutorService pool) {
+		List<Element> elems = new ArrayList<Element>();
+
 		// process all nodes that might be converted to a garmin node (tagcount > 0)
 		for (Node node : saver.getNodes().values()) {
 			if (node.getTagCount() > 0) {
 				if (saver.getBoundingBox().contains(node.getLocation())){
-					processElem(node);
-					if (resultLog.isDebugEnabled())
-						resultLog.debug("N", node.getId(), locationTagsToString(node));
+					elems.add(node);
 				}
 			}
 		}
+		int nodeCount = elems.size();
 
 		// process  all ways that might be converted to a garmin way (tagcount > 0)
 		for (Way way : saver.getWays().values()) {
 			if (way.getTagCount() > 0) {
-				processElem(way);
-				if (resultLog.isDebugEnabled())
-					resultLog.debug("W", way.getId(), locationTagsToString(way));
+				elems.add(way);
 			}
 		}
-		
+		int wayCount = elems.size() - nodeCount;
+
 		// process all multipolygons - the add-pois-to-area function uses its
 		// center point and its tags so the mp must be tagged itself with the bounds
 		// tags
+		List<Relation> mpRels = new ArrayList<Relation>();
 		for (Relation r : saver.getRelations().values()) {
 			if (r instanceof MultiPolygonRelation) {
 				// check if the mp could be processed
 				Coord mpCenter = ((MultiPolygonRelation) r).getCofG();
 				if (mpCenter != null && saver.getBoundingBox().contains(mpCenter)){
 					// create a fake node for which the bounds information is collected
-					Node mpNode = new Node(FakeIdGenerator.makeFakeId(), mpCenter);
-					processElem(mpNode);
-					// copy the bounds tags back to the multipolygon
-					for (String boundsTag : BoundaryQuadTree.mkgmapTagsArray) {
-						String tagValue = mpNode.getTag(boundsTag);
-						if (tagValue != null) {
-							r.addTag(boundsTag, tagValue);
-						}
+					elems.add(new Node(FakeIdGenerator.makeFakeId(), mpCenter));
+					mpRels.add(r);
+				}
+			}
+		}
+
+		processElems(elems, pool);
+
+		for (int i = 0; i < elems.size(); i++) {
+			Element elem = elems.get(i);
+			if (i >= nodeCount + wayCount) {
+				// copy the bounds tags back to the multipolygon
+				Relation r = mpRels.get(i - nodeCount - wayCount);
+				for (String boundsTag : BoundaryQuadTree.mkgmapTagsArray) {
+					String tagValue = elem.getTag(boundsTag);
+					if (tagValue != null) {
+						r.addTag(boundsTag, tagValue);
 					}
-					if (resultLog.isDebugEnabled())
-						resultLog.debug("R", r.getId(), locationTagsToString(r));
 				}
+				elem = r;
 			}
+			if (resultLog.isDebugEnabled())
+				resultLog.debug(elem instanceof Node ? "N" : (elem instanceof Way ? "W" : "R"),
+						elem.getId(), locationTagsToString(elem));
 		}
 	}
 
 	/**
-	 * Extract the location info and perform a test 
-	 * against the BoundaryGrid. If found, assign the tags.  
-	 * @param elem A way or Node
+	 * Extract the location info and perform a test against the
+	 * BoundaryGrid. If found, assign the tags.
+	 *
+	 * The points that are tried first for each element are looked up
+	 * together: the location of nodes and the middle of ways, then the
+	 * first and then the last point of the ways not found so far.  Any
+	 * remaining ways try the rest of their points one at a time.
+	 * @param elems Ways and Nodes
+	 * @param pool null or a pool to run the searches on
 	 */
-	private void processElem(Element elem){
-		Tags tags = null;
+	private void processElems(List<Element> elems, ExecutorService pool){
+		Tags[] found = new Tags[elems.size()];
+		searchAll(elems, found, MIDDLE_POINT, pool);
+		searchAll(elems, found, FIRST_POINT, pool);
+		searchAll(elems, found, LAST_POINT, pool);
 
-		if (elem instanceof Node){
-			Node node = (Node) elem;
-			tags = search(node.getLocation());
-		}
-		else if (elem instanceof Way){
-			Way way = (Way) elem;
-			// try the mid point of the way first
-			int middle = way.getPoints().size() / 2;
-			tags = search(way.getPoints().get(middle));
-			if (tags == null){
-				// try 1st point next
-				tags = search(way.getPoints().get(0));
+		for (int n = 0; n < elems.size(); n++) {
+			Element elem = elems.get(n);
+			Tags tags = found[n];
+			if (elem instanceof Way){
+				Way way = (Way) elem;
+				int middle = way.getPoints().size() / 2;
+				if (tags == null){
+					// still not found, try rest
+					for (int i = 1; i < way.getPoints().size()-1; i++){
+						if (i == middle)
+							continue;
+						tags = search(way.getPoints().get(i));
+						if (tags != null) 
+							break;
+					}
+				}
+				if (tags == null)
+					++cntwayNotFnd;
 			}
+
 			if (tags == null){
-				// try last point next
-				tags = search(way.getPoints().get(way.getPoints().size()-1));
+				++cntNotFnd;
 			}
-			if (tags == null){
-				// still not found, try rest
-				for (int i = 1; i < way.getPoints().size()-1; i++){
-					if (i == middle)
-						continue;
-					tags = search(way.getPoints().get(i));
-					if (tags != null) 
-						break;
+			else{
+				// tag the element with all tags referenced by the boundary
+				Iterator<Entry<String,String>> tagIter = tags.entryIterator();
+				while (tagIter.hasNext()) {
+					Entry<String,String> tag = tagIter.next();
+					if (elem.getTag(tag.getKey()) == null){
+						elem.addTag(tag.getKey(),tag.getValue());
+					}
 				}
 			}
-			if (tags == null)
-				++cntwayNotFnd;
 		}
+	}
 
-		if (tags == null){
-			++cntNotFnd;
-		}
-		else{
-			// tag the element with all tags referenced by the boundary
-			Iterator<Entry<String,String>> tagIter = tags.entryIterator();
-			while (tagIter.hasNext()) {
-				Entry<String,String> tag = tagIter.next();
-				if (elem.getTag(tag.getKey()) == null){
-					elem.addTag(tag.getKey(),tag.getValue());
-				}
+	/**
+	 * Search one point of each element that has not been found yet.
+	 * Nodes are only searched once, with the {@link #MIDDLE_POINT}.
+	 * @param elems Ways and Nodes
+	 * @param found the results so far, updated with the new ones
+	 * @param which which point of the ways to search
+	 * @param pool null or a pool to run the searches on
+	 */
+	private void searchAll(List<Element> elems, Tags[] found, int which, ExecutorService pool){
+		Coord[] points = new Coord[elems.size()];
+		int count = 0;
+		for (int n = 0; n < elems.size(); n++) {
+			if (found[n] != null)
+				continue;
+			Element elem = elems.get(n);
+			Coord co = null;
+			if (elem instanceof Node){
+				if (which == MIDDLE_POINT)
+					co = ((Node) elem).getLocation();
+			} else if (elem instanceof Way){
+				List<Coord> wayPoints = ((Way) elem).getPoints();
+				if (which == MIDDLE_POINT)
+					co = wayPoints.get(wayPoints.size() / 2);
+				else if (which == FIRST_POINT)
+					co = wayPoints.get(0);
+				else
+					co = wayPoints.get(wayPoints.size() - 1);
 			}
+			if (co != null && saver.getBoundingBox().contains(co)){
+				++cntQTSearch;
+				points[n] = co;
+				count++;
+			}
+		}
+		if (count == 0)
+			return;
+
+		Tags[] res = boundaryGrid.get(points, pool);
+		for (int n = 0; n < res.length; n++) {
+			if (points[n] != null)
+				found[n] = res[n];
 		}
 	}
-	
+
 	/**
 	 * perform search in grid and maintain statistic counter
 	 * @param co a point that is to be searched
@@ -243,7 +321,4 @@ public class LocationHook extends OsmReadingHooksAdaptor {
 		}
 		return res.toString();
 	}
-
 }
-
-
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import uk.me.parabola.imgfmt.ExitException;
+import uk.me.parabola.log.Logger;
+
+/**
+ * A sparse coordinate store where the ids and positions are kept off the
+ * java heap in a memory mapped temporary file.  Only the Coord objects that
+ * have actually been looked up are on the heap.
+ *
+ * The operating system decides how much of the file is kept in memory, so
+ * this allows very large inputs to be read with a small heap.
+ *
+ * @author agent
+ */
+public class MappedCoordStore extends SparseCoordStore {
+	private static final Logger log = Logger.getLogger(MappedCoordStore.class);
+
+	// Each entry is the id followed by the latitude and longitude.
+	private static final int ENTRY_SIZE = 16;
+
+	private static final int SEGMENT_SHIFT = 20;
+	private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+	private static final long SEGMENT_BYTES = (long) ENTRY_SIZE << SEGMENT_SHIFT;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private MappedByteBuffer[] segments = new MappedByteBuffer[16];
+
+	public MappedCoordStore() {
+		try {
+			file = File.createTempFile("mkgmap-coords", ".tmp");
+			file.deleteOnExit();
+			raf = new RandomAccessFile(file, "rw");
+			channel = raf.getChannel();
+		} catch (IOException e) {
+			throw new ExitException("Could not create temporary file for the coordinate store", e);
+		}
+	}
+
+	protected void store(int idx, long id, int lat, int lon) {
+		int seg = idx >>> SEGMENT_SHIFT;
+		if (seg >= segments.length)
+			segments = Arrays.copyOf(segments, segments.length * 2);
+
+		MappedByteBuffer buf = segments[seg];
+		if (buf == null) {
+			try {
+				buf = channel.map(FileChannel.MapMode.READ_WRITE, seg * SEGMENT_BYTES, SEGMENT_BYTES);
+			} catch (IOException e) {
+				throw new ExitException("Could not extend the coordinate store file " + file, e);
+			}
+			segments[seg] = buf;
+		}
+
+		int pos = (idx & SEGMENT_MASK) * ENTRY_SIZE;
+		buf.putLong(pos, id);
+		buf.putInt(pos + 8, lat);
+		buf.putInt(pos + 12, lon);
+	}
+
+	protected long getId(int idx) {
+		return segments[idx >>> SEGMENT_SHIFT].getLong((idx & SEGMENT_MASK) * ENTRY_SIZE);
+	}
+
+	protected int getLat(int idx) {
+		return segments[idx >>> SEGMENT_SHIFT].getInt((idx & SEGMENT_MASK) * ENTRY_SIZE + 8);
+	}
+
+	protected int getLon(int idx) {
+		return segments[idx >>> SEGMENT_SHIFT].getInt((idx & SEGMENT_MASK) * ENTRY_SIZE + 12);
+	}
+
+	public void close() {
+		super.close();
+		segments = null;
+		try {
+			raf.close();
+		} catch (IOException e) {
+			log.warn("Could not close", file);
+		}
+		if (!file.delete())
+			log.info("Could not delete", file, "it will be removed on exit");
+	}
+}
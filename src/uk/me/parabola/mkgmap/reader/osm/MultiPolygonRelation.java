@@ -37,6 +37,7 @@ import java.util.logging.Level;
 
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.log.Logger;
+import uk.me.parabola.mkgmap.general.ShapeSplitter;
 import uk.me.parabola.util.Java2DConverter;
 
 /**
@@ -1412,25 +1413,11 @@ public class MultiPolygonRelation extends Relation {
 				}
 			} else {
 				// we need to cut the area into two halves to get singular areas
-				Rectangle r1 = cutPoint.getCutRectangleForArea(areaCutData.outerArea, true);
-				Rectangle r2 = cutPoint.getCutRectangleForArea(areaCutData.outerArea, false);
-
-				// Now find the intersection of these two boxes with the
-				// original polygon. This will make two new areas, and each
-				// area will be one (or more) polygons.
-				Area a1 = areaCutData.outerArea;
-				Area a2 = (Area) a1.clone();
-				a1.intersect(new Area(r1));
-				a2.intersect(new Area(r2));
+				List<Area> cuttedAreas = cutInHalves(areaCutData.outerArea, cutPoint);
 
 				if (areaCutData.innerAreas.isEmpty()) {
-					finishedAreas.addAll(Java2DConverter.areaToSingularAreas(a1));
-					finishedAreas.addAll(Java2DConverter.areaToSingularAreas(a2));
+					finishedAreas.addAll(cuttedAreas);
 				} else {
-					ArrayList<Area> cuttedAreas = new ArrayList<Area>();
-					cuttedAreas.addAll(Java2DConverter.areaToSingularAreas(a1));
-					cuttedAreas.addAll(Java2DConverter.areaToSingularAreas(a2));
-					
 					for (Area nextOuterArea : cuttedAreas) {
 						ArrayList<Area> nextInnerAreas = null;
 						// go through all remaining inner areas and check if they
@@ -1474,6 +1461,42 @@ public class MultiPolygonRelation extends Relation {
 		return cuttedOuterPolygon;
 	}
 
+	/**
+	 * Cut an area into two halves along the line of the cut point.
+	 *
+	 * @param area the area to cut, it may be changed
+	 * @param cutPoint gives the line to cut along
+	 * @return the singular areas of both halves
+	 */
+	private List<Area> cutInHalves(Area area, CutPoint cutPoint) {
+		// Cutting the outlines directly is much quicker than intersecting areas
+		List<List<Coord>> pieces = new ArrayList<List<Coord>>();
+		if (ShapeSplitter.splitRings(Java2DConverter.areaToShapes(area), cutPoint.getCutPoint(),
+				cutPoint.axis == CoordinateAxis.LONGITUDE, pieces, pieces))
+		{
+			List<Area> areas = new ArrayList<Area>(pieces.size());
+			for (List<Coord> piece : pieces)
+				areas.addAll(Java2DConverter.areaToSingularAreas(Java2DConverter.createArea(piece)));
+			return areas;
+		}
+
+		Rectangle r1 = cutPoint.getCutRectangleForArea(area, true);
+		Rectangle r2 = cutPoint.getCutRectangleForArea(area, false);
+
+		// Now find the intersection of these two boxes with the
+		// original polygon. This will make two new areas, and each
+		// area will be one (or more) polygons.
+		Area a1 = area;
+		Area a2 = (Area) a1.clone();
+		a1.intersect(new Area(r1));
+		a2.intersect(new Area(r2));
+
+		List<Area> areas = new ArrayList<Area>();
+		areas.addAll(Java2DConverter.areaToSingularAreas(a1));
+		areas.addAll(Java2DConverter.areaToSingularAreas(a2));
+		return areas;
+	}
+
 	/**
 	 * Create the areas that are enclosed by the way. Usually the result should
 	 * only be one area but some ways contain intersecting lines. To handle these
@@ -1485,11 +1508,20 @@ public class MultiPolygonRelation extends Relation {
 	 */
 	private List<Area> createAreas(Way w, boolean clipBbox) {
 		Area area = Java2DConverter.createArea(w.getPoints());
+		List<Area> areaList = null;
 		if (clipBbox && !bboxArea.contains(area.getBounds())) {
 			// the area intersects the bounding box => clip it
-			area.intersect(bboxArea);
+			List<List<Coord>> clipped = ShapeSplitter.clipToBounds(w.getPoints(), getBbox());
+			if (clipped == null) {
+				area.intersect(bboxArea);
+			} else {
+				areaList = new ArrayList<Area>(clipped.size());
+				for (List<Coord> shape : clipped)
+					areaList.addAll(Java2DConverter.areaToSingularAreas(Java2DConverter.createArea(shape)));
+			}
 		}
-		List<Area> areaList = Java2DConverter.areaToSingularAreas(area);
+		if (areaList == null)
+			areaList = Java2DConverter.areaToSingularAreas(area);
 		if (log.isDebugEnabled()) {
 			log.debug("Bbox clipped way",w.getId()+"=>",areaList.size(),"distinct area(s).");
 		}
@@ -106,6 +106,18 @@ public class OsmHandler {
 		return key;
 	}
 
+	/**
+	 * Check if a tag with this key could be kept at all.  When it cannot,
+	 * keepTag() will return null whatever the value, so a reader does not need
+	 * to decode the value.
+	 *
+	 * @param key The tag key.
+	 * @return False if tags with this key are always discarded.
+	 */
+	protected boolean isKeyUsed(String key) {
+		return usedTags == null || usedTags.containsKey(key);
+	}
+
 	/**
 	 * Actually set the bounding box.  The boundary values are given.
 	 */
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.log.Logger;
+import uk.me.parabola.mkgmap.general.LoadableMapDataSource;
+import uk.me.parabola.mkgmap.reader.osm.xml.Osm5PrecompSeaDataSource;
+import uk.me.parabola.util.EnhancedProperties;
+import uk.me.parabola.util.ThreadUtils;
+
+/**
+ * Keeps the index and the tiles of the precompiled sea that have been
+ * read, so that the tiles of a map that are next to each other do not each
+ * have to read the same sea tiles again.
+ *
+ * The cache is shared by all the tiles that are processed in this run, and
+ * may be used from several threads at once.  A sea tile is stored as plain
+ * coordinates, and new ways are made from it each time it is used, so the
+ * caller is free to change them.  When the estimated heap used by the sea
+ * tiles goes over the limit, the least recently used ones are dropped.
+ *
+ * @author agent
+ */
+public class PrecompSeaCache {
+	private static final Logger log = Logger.getLogger(PrecompSeaCache.class);
+
+	// Rough heap used for each point and each way of a stored tile.
+	private static final int HEAP_PER_POINT = 12;
+	private static final int HEAP_PER_WAY = 64;
+
+	private static final PrecompSeaCache INSTANCE = new PrecompSeaCache(Runtime.getRuntime().maxMemory() / 16);
+
+	private static final List<Class<? extends LoadableMapDataSource>> precompSeaLoader;
+
+	static {
+		String[] sources = {
+				"uk.me.parabola.mkgmap.reader.osm.bin.OsmBinPrecompSeaDataSource",
+				// must be last as it is the default
+				"uk.me.parabola.mkgmap.reader.osm.xml.Osm5PrecompSeaDataSource", };
+
+		precompSeaLoader = new ArrayList<Class<? extends LoadableMapDataSource>>();
+
+		for (String source : sources) {
+			try {
+				@SuppressWarnings({ "unchecked" })
+				Class<? extends LoadableMapDataSource> c = (Class<? extends LoadableMapDataSource>) Class
+						.forName(source);
+				precompSeaLoader.add(c);
+			} catch (ClassNotFoundException e) {
+				// not available, try the rest
+			} catch (NoClassDefFoundError e) {
+				// not available, try the rest
+			}
+		}
+	}
+
+	private final long maxCost;
+	private long cost;
+
+	// The index of each precompiled sea directory, key => sea/land/tilename
+	private final Map<File, Map<String, String>> indexes = new HashMap<File, Map<String, String>>();
+
+	// In access order, so the first entry is the least recently used.
+	private final LinkedHashMap<File, Entry> tiles = new LinkedHashMap<File, Entry>(16, 0.75f, true);
+
+	private ExecutorService pool;
+
+	PrecompSeaCache(long maxCost) {
+		this.maxCost = maxCost;
+	}
+
+	public static PrecompSeaCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the index of a precompiled sea directory, reading it the first time
+	 * it is asked for.  The index is read from index.txt.gz or index.txt.
+	 *
+	 * @param precompSeaDir The directory with the precompiled sea tiles.
+	 * @return The assignment key => sea/land/tilename, or null if the
+	 * directory does not contain an index file.  The map must not be changed.
+	 * @throws IOException If the index file cannot be read.
+	 */
+	public Map<String, String> getIndex(File precompSeaDir) throws IOException {
+		File key = precompSeaDir.getAbsoluteFile();
+		synchronized (indexes) {
+			Map<String, String> index = indexes.get(key);
+			if (index == null) {
+				index = readIndex(key);
+				if (index != null)
+					indexes.put(key, index);
+			}
+			return index;
+		}
+	}
+
+	private static Map<String, String> readIndex(File precompSeaDir) throws IOException {
+		File indexFile = new File(precompSeaDir, "index.txt.gz");
+		if (indexFile.exists() == false) {
+			// check if the unzipped index file exists
+			indexFile = new File(precompSeaDir, "index.txt");
+		}
+		if (indexFile.exists() == false)
+			return null;
+
+		InputStream fileStream = new FileInputStream(indexFile);
+		if (indexFile.getName().endsWith(".gz")) {
+			fileStream = new GZIPInputStream(fileStream);
+		}
+		LineNumberReader indexReader = new LineNumberReader(new InputStreamReader(fileStream));
+		try {
+			Pattern csvSplitter = Pattern.compile(Pattern.quote(";"));
+			String indexLine = null;
+			Map<String, String> indexItems = new HashMap<String, String>();
+			while ((indexLine = indexReader.readLine()) != null) {
+				String[] items = csvSplitter.split(indexLine);
+				if (items.length != 2) {
+					log.warn("Invalid format in index file: " + indexLine);
+					continue;
+				}
+				if (items[0].startsWith("#")) {
+					// comment
+					continue;
+				}
+				indexItems.put(items[0].trim().intern(), items[1].trim().intern());
+			}
+			return Collections.unmodifiableMap(indexItems);
+		} finally {
+			indexReader.close();
+		}
+	}
+
+	/**
+	 * Get the given precompiled sea tiles.  The tiles that are not already
+	 * in the cache are read at the same time on several threads.
+	 *
+	 * @param files The precompiled sea tile files.
+	 * @return The tiles in the same order as the files.  The entry is null if
+	 * the tile could not be read, the error has already been logged.
+	 */
+	public List<SeaTile> get(List<File> files) {
+		List<SeaTile> result = new ArrayList<SeaTile>(files.size());
+		int missing = 0;
+		for (File file : files) {
+			if (!isLoaded(file))
+				missing++;
+		}
+
+		if (missing < 2) {
+			for (File file : files)
+				result.add(getOrLog(file));
+			return result;
+		}
+
+		ExecutorService executor = getPool();
+		List<Future<SeaTile>> futures = new ArrayList<Future<SeaTile>>(files.size());
+		for (final File file : files) {
+			futures.add(executor.submit(new Callable<SeaTile>() {
+				public SeaTile call() {
+					return getOrLog(file);
+				}
+			}));
+		}
+		for (Future<SeaTile> future : futures)
+			result.add(ThreadUtils.waitFor(future, "load precompiled sea tiles"));
+		return result;
+	}
+
+	/**
+	 * Get a precompiled sea tile, reading it if it is not already in the cache.
+	 *
+	 * @param file The precompiled sea tile file.
+	 * @return The tile.
+	 * @throws FileNotFoundException If the tile file does not exist.
+	 */
+	public SeaTile get(File file) throws FileNotFoundException {
+		File key = file.getAbsoluteFile();
+
+		Entry entry;
+		synchronized (tiles) {
+			entry = tiles.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				tiles.put(key, entry);
+			}
+		}
+
+		// Only the first thread to want a tile reads it, any others wait for it.
+		synchronized (entry) {
+			if (entry.tile == null) {
+				SeaTile tile = loadPrecompTile(key.getPath());
+				entry.tile = tile;
+
+				synchronized (tiles) {
+					if (tiles.get(key) == entry)
+						cost += tile.getCost();
+					evict(entry);
+				}
+			}
+			return entry.tile;
+		}
+	}
+
+	private SeaTile getOrLog(File file) {
+		try {
+			return get(file);
+		} catch (FileNotFoundException exp) {
+			log.error("Preompiled sea tile " + file + " not found.");
+		} catch (Exception exp) {
+			log.error(exp);
+			exp.printStackTrace();
+		}
+		return null;
+	}
+
+	private boolean isLoaded(File file) {
+		synchronized (tiles) {
+			Entry entry = tiles.get(file.getAbsoluteFile());
+			return entry != null && entry.tile != null;
+		}
+	}
+
+	/**
+	 * Drop the least recently used tiles until the total is within the
+	 * limit.  The entry that has just been loaded is kept.
+	 */
+	private void evict(Entry keep) {
+		Iterator<Entry> it = tiles.values().iterator();
+		while (cost > maxCost && it.hasNext()) {
+			Entry entry = it.next();
+			if (entry == keep || entry.tile == null)
+				continue;
+
+			it.remove();
+			cost -= entry.tile.getCost();
+			log.info("dropped precompiled sea tile from cache, cached size now", cost);
+		}
+	}
+
+	/**
+	 * Creates a reader for the given filename of the precomiled sea tile.
+	 * @param filename precompiled sea tile
+	 * @return the reader for the tile
+	 */
+	private static OsmMapDataSource createTileReader(String filename) {
+		for (Class<? extends LoadableMapDataSource> loader : precompSeaLoader) {
+			try {
+				LoadableMapDataSource src = loader.newInstance();
+				if (filename != null && src instanceof OsmMapDataSource
+						&& src.isFileSupported(filename))
+					return (OsmMapDataSource) src;
+			} catch (InstantiationException e) {
+				// try the next one.
+			} catch (IllegalAccessException e) {
+				// try the next one.
+			} catch (NoClassDefFoundError e) {
+				// try the next one
+			}
+		}
+
+		// Give up and assume it is in the XML format. If it isn't we will get
+		// an error soon enough anyway.
+		return new Osm5PrecompSeaDataSource();
+	}
+
+	/**
+	 * Loads the precomp sea tile with the given filename.  Tiles in the
+	 * compact format are read directly, the others through an OSM reader.
+	 * @param filename the filename of the precomp sea tile
+	 * @return the ways of the tile
+	 * @throws FileNotFoundException if the tile could not be found
+	 */
+	private static SeaTile loadPrecompTile(String filename) throws FileNotFoundException {
+		if (PrecompSeaFile.isCompact(filename))
+			return PrecompSeaFile.read(new File(filename));
+
+		OsmMapDataSource src = createTileReader(filename);
+		src.config(new EnhancedProperties());
+		log.info("Started loading coastlines from", filename);
+		src.load(filename);
+		log.info("Finished loading coastlines from", filename);
+		return new SeaTile(src.getElementSaver().getWays().values());
+	}
+
+	private synchronized ExecutorService getPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), ThreadUtils.daemonThreadFactory("precomp-sea"));
+		}
+		return pool;
+	}
+
+	/**
+	 * The ways of a precompiled sea tile.  The points are held once each,
+	 * even where they are used by more than one way, and are only turned
+	 * back into Coords and Ways when the tile is used.
+	 */
+	public static class SeaTile {
+		private final int[] lats;
+		private final int[] lons;
+		private final int[][] ways;
+		private final String[][] tags;
+
+		SeaTile(int[] lats, int[] lons, int[][] ways, String[][] tags) {
+			this.lats = lats;
+			this.lons = lons;
+			this.ways = ways;
+			this.tags = tags;
+		}
+
+		SeaTile(Collection<Way> loaded) {
+			Map<Coord, Integer> pointIndex = new IdentityHashMap<Coord, Integer>();
+			List<Coord> coords = new ArrayList<Coord>();
+			ways = new int[loaded.size()][];
+			tags = new String[loaded.size()][];
+
+			int n = 0;
+			for (Way w : loaded) {
+				List<Coord> points = w.getPoints();
+				int[] way = new int[points.size()];
+				for (int i = 0; i < way.length; i++) {
+					Coord co = points.get(i);
+					Integer index = pointIndex.get(co);
+					if (index == null) {
+						index = coords.size();
+						pointIndex.put(co, index);
+						coords.add(co);
+					}
+					way[i] = index;
+				}
+				ways[n] = way;
+
+				List<String> wayTags = new ArrayList<String>();
+				for (Map.Entry<String, String> tag : w.getEntryIteratable()) {
+					wayTags.add(tag.getKey());
+					wayTags.add(tag.getValue());
+				}
+				tags[n] = wayTags.toArray(new String[wayTags.size()]);
+				n++;
+			}
+
+			lats = new int[coords.size()];
+			lons = new int[coords.size()];
+			for (int i = 0; i < lats.length; i++) {
+				lats[i] = coords.get(i).getLatitude();
+				lons[i] = coords.get(i).getLongitude();
+			}
+		}
+
+		/**
+		 * Make new ways for this tile, each with a new fake id, so that the
+		 * ids do not interfere with the ids of this run.  Ways that share a
+		 * point in the tile share the same Coord.
+		 * @return The new ways in the order that they were read.
+		 */
+		public List<Way> createWays() {
+			Coord[] coords = new Coord[lats.length];
+			for (int i = 0; i < coords.length; i++)
+				coords[i] = new Coord(lats[i], lons[i]);
+
+			List<Way> result = new ArrayList<Way>(ways.length);
+			for (int n = 0; n < ways.length; n++) {
+				List<Coord> points = new ArrayList<Coord>(ways[n].length);
+				for (int index : ways[n])
+					points.add(coords[index]);
+				Way w = new Way(FakeIdGenerator.makeFakeId(), points);
+				for (int i = 0; i < tags[n].length; i += 2)
+					w.addTag(tags[n][i], tags[n][i + 1]);
+				result.add(w);
+			}
+			return result;
+		}
+
+		public int getWayCount() {
+			return ways.length;
+		}
+
+		long getCost() {
+			long points = lats.length;
+			for (int[] way : ways)
+				points += way.length;
+			return HEAP_PER_POINT * points + HEAP_PER_WAY * ways.length;
+		}
+	}
+
+	private static class Entry {
+		private SeaTile tile;
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.me.parabola.imgfmt.FormatException;
+import uk.me.parabola.imgfmt.app.Coord;
+
+/**
+ * A precompiled sea tile in the compact format.  This is written by the
+ * PrecompSeaGenerator and read straight into the coordinates of the land
+ * and sea polygons, without going through an OSM reader.
+ *
+ * Each polygon is stored as a flag byte and a ring of points.  The points
+ * are delta encoded as signed variable length numbers, the first one from
+ * the corner of the tile and the others from the point before.  The closing
+ * point of a closed ring is not stored.
+ *
+ * The layout is:
+ * <pre>
+ * UTF "SEA", int version
+ * int minLat, minLong                    the corner of the tile
+ * int nWays, int nPoints                 number of polygons and stored points
+ * for each polygon: byte flags, varint nPoints, nPoints * (varint dLat, varint dLong)
+ * </pre>
+ *
+ * @author agent
+ */
+public class PrecompSeaFile {
+	/** The file name extension of tiles in this format */
+	public static final String EXTENSION = ".sea";
+
+	private static final String MAGIC = "SEA";
+	private static final int VERSION = 1;
+
+	private static final int FLAG_LAND = 0x1;
+	private static final int FLAG_CLOSED = 0x2;
+
+	private PrecompSeaFile() {
+	}
+
+	/**
+	 * Check if the file is a precompiled sea tile in the compact format.
+	 * Only the name is looked at.
+	 */
+	public static boolean isCompact(String filename) {
+		return filename.endsWith(EXTENSION);
+	}
+
+	/**
+	 * Read a tile in the compact format.  Points that are the same in
+	 * different polygons are only held once, just as they would be when
+	 * the tile is read from an OSM file.
+	 *
+	 * @param file The tile file.
+	 * @return The polygons of the tile.
+	 * @throws FileNotFoundException If the file does not exist.
+	 * @throws FormatException If the file is not in the compact format or
+	 * cannot be read.
+	 */
+	public static PrecompSeaCache.SeaTile read(File file) throws FileNotFoundException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+		try {
+			try {
+				return read(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new FormatException("Cannot read precompiled sea tile " + file, e);
+		}
+	}
+
+	static PrecompSeaCache.SeaTile read(InputStream in) throws IOException {
+		DataInputStream dis = new DataInputStream(in);
+		String magic;
+		try {
+			magic = dis.readUTF();
+		} catch (IOException e) {
+			magic = null;
+		}
+		if (!MAGIC.equals(magic))
+			throw new FormatException("not a compact precompiled sea tile");
+		int version = dis.readInt();
+		if (version != VERSION)
+			throw new FormatException("unsupported precompiled sea tile version " + version);
+
+		int minLat = dis.readInt();
+		int minLong = dis.readInt();
+		int nWays = dis.readInt();
+		int nPoints = dis.readInt();
+
+		Map<Long, Integer> pointIndex = new HashMap<Long, Integer>(nPoints * 4 / 3 + 1);
+		int[] lats = new int[nPoints];
+		int[] lons = new int[nPoints];
+		int nDistinct = 0;
+
+		int[][] ways = new int[nWays][];
+		boolean[] land = new boolean[nWays];
+		for (int n = 0; n < nWays; n++) {
+			int flags = dis.readUnsignedByte();
+			land[n] = (flags & FLAG_LAND) != 0;
+			boolean closed = (flags & FLAG_CLOSED) != 0;
+
+			int len = readVarInt(dis);
+			int[] way = new int[closed ? len + 1 : len];
+			int lat = minLat;
+			int lon = minLong;
+			for (int i = 0; i < len; i++) {
+				lat += readSignedVarInt(dis);
+				lon += readSignedVarInt(dis);
+				Long key = (long) lat << 32 | (lon & 0xffffffffL);
+				Integer index = pointIndex.get(key);
+				if (index == null) {
+					index = nDistinct++;
+					pointIndex.put(key, index);
+					lats[index] = lat;
+					lons[index] = lon;
+				}
+				way[i] = index;
+			}
+			if (closed && len > 0)
+				way[len] = way[0];
+			ways[n] = way;
+		}
+
+		String[][] tags = new String[nWays][];
+		for (int n = 0; n < nWays; n++)
+			tags[n] = new String[] {"natural", land[n] ? "land" : "sea"};
+
+		int[] distinctLats = new int[nDistinct];
+		int[] distinctLons = new int[nDistinct];
+		System.arraycopy(lats, 0, distinctLats, 0, nDistinct);
+		System.arraycopy(lons, 0, distinctLons, 0, nDistinct);
+		return new PrecompSeaCache.SeaTile(distinctLats, distinctLons, ways, tags);
+	}
+
+	private static int readVarInt(InputStream in) throws IOException {
+		int val = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.read();
+			if (b < 0)
+				throw new EOFException();
+			val |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return val;
+	}
+
+	private static int readSignedVarInt(InputStream in) throws IOException {
+		int val = readVarInt(in);
+		return (val >>> 1) ^ -(val & 1);
+	}
+
+	private static void writeVarInt(OutputStream out, int val) throws IOException {
+		while ((val & ~0x7f) != 0) {
+			out.write((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		out.write(val);
+	}
+
+	private static void writeSignedVarInt(OutputStream out, int val) throws IOException {
+		writeVarInt(out, (val << 1) ^ (val >> 31));
+	}
+
+	/**
+	 * Collects the land and sea polygons of one tile and writes them in the
+	 * compact format.
+	 */
+	public static class Writer {
+		private final int minLat;
+		private final int minLong;
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		private int nWays;
+		private int nPoints;
+
+		/**
+		 * @param minLat The latitude of the corner of the tile.
+		 * @param minLong The longitude of the corner of the tile.
+		 */
+		public Writer(int minLat, int minLong) {
+			this.minLat = minLat;
+			this.minLong = minLong;
+		}
+
+		/**
+		 * Add a polygon.
+		 * @param land True for a land polygon, false for sea.
+		 * @param points The points of the polygon.
+		 */
+		public void addWay(boolean land, List<Coord> points) {
+			int len = points.size();
+			boolean closed = len > 1 && points.get(0).equals(points.get(len - 1));
+			if (closed)
+				len--;
+
+			int flags = (land ? FLAG_LAND : 0) | (closed ? FLAG_CLOSED : 0);
+			try {
+				data.write(flags);
+				writeVarInt(data, len);
+				int lat = minLat;
+				int lon = minLong;
+				for (int i = 0; i < len; i++) {
+					Coord co = points.get(i);
+					writeSignedVarInt(data, co.getLatitude() - lat);
+					writeSignedVarInt(data, co.getLongitude() - lon);
+					lat = co.getLatitude();
+					lon = co.getLongitude();
+				}
+			} catch (IOException e) {
+				// cannot happen with a ByteArrayOutputStream
+				throw new IllegalStateException(e);
+			}
+			nWays++;
+			nPoints += len;
+		}
+
+		/**
+		 * Add the ways of a tile, the natural tag says if each is land or sea.
+		 */
+		public void addWays(List<Way> ways) {
+			for (Way w : ways)
+				addWay("land".equals(w.getTag("natural")), w.getPoints());
+		}
+
+		public void write(OutputStream stream) throws IOException {
+			DataOutputStream out = new DataOutputStream(stream);
+			out.writeUTF(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(minLat);
+			out.writeInt(minLong);
+			out.writeInt(nWays);
+			out.writeInt(nPoints);
+			data.writeTo(out);
+			out.flush();
+		}
+
+		public void write(File file) throws IOException {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+			try {
+				write(out);
+			} finally {
+				out.close();
+			}
+		}
+	}
+}
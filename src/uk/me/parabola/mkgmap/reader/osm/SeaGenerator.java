@@ -13,12 +13,8 @@
 package uk.me.parabola.mkgmap.reader.osm;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -31,16 +27,13 @@ import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 import uk.me.parabola.imgfmt.MapFailedException;
 import uk.me.parabola.imgfmt.app.Area;
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.log.Logger;
 import uk.me.parabola.mkgmap.general.LineClipper;
-import uk.me.parabola.mkgmap.general.LoadableMapDataSource;
 import uk.me.parabola.mkgmap.osmstyle.StyleImpl;
-import uk.me.parabola.mkgmap.reader.osm.xml.Osm5PrecompSeaDataSource;
 import uk.me.parabola.util.EnhancedProperties;
 
 /**
@@ -81,33 +74,9 @@ public class SeaGenerator extends OsmReadingHooksAdaptor {
 	 * precompiled sea should not be used.
 	 */
 	private File precompSeaDir;
-	private static ThreadLocal<Map<String,String>> precompIndex = new ThreadLocal<Map<String,String>>();
-
-	private static final List<Class<? extends LoadableMapDataSource>> precompSeaLoader;
-
-	static {
-		String[] sources = {
-				"uk.me.parabola.mkgmap.reader.osm.bin.OsmBinPrecompSeaDataSource",
-				// must be last as it is the default
-				"uk.me.parabola.mkgmap.reader.osm.xml.Osm5PrecompSeaDataSource", };
-
-		precompSeaLoader = new ArrayList<Class<? extends LoadableMapDataSource>>();
-
-		for (String source : sources) {
-			try {
-				@SuppressWarnings({ "unchecked" })
-				Class<? extends LoadableMapDataSource> c = (Class<? extends LoadableMapDataSource>) Class
-						.forName(source);
-				precompSeaLoader.add(c);
-			} catch (ClassNotFoundException e) {
-				// not available, try the rest
-			} catch (NoClassDefFoundError e) {
-				// not available, try the rest
-			}
-		}
-	}
-	
-	
+	// the index with assignment key => sea/land/tilename
+	private Map<String,String> precompIndex;
+
 	/**
 	 * Sort out options from the command line.
 	 * Returns true only if the option to generate the sea is active, so that
@@ -121,55 +90,19 @@ public class SeaGenerator extends OsmReadingHooksAdaptor {
 		if (precompSea != null) {
 			precompSeaDir = new File(precompSea);
 			if (precompSeaDir.exists()) {
-				if (precompIndex.get() == null) {
-					File indexFile = new File(precompSeaDir, "index.txt.gz");
-					if (indexFile.exists() == false) {
-						// check if the unzipped index file exists
-						indexFile = new File(precompSeaDir, "index.txt");
-					}
-					
-					if (indexFile.exists()) {
-						try {
-							InputStream fileStream = new FileInputStream(indexFile);
-							if (indexFile.getName().endsWith(".gz")) {
-								fileStream = new GZIPInputStream(fileStream);
-							}
-							LineNumberReader indexReader = new LineNumberReader(
-									new InputStreamReader(fileStream));
-							Pattern csvSplitter = Pattern.compile(Pattern
-									.quote(";"));
-							String indexLine = null;
-							Map<String, String> indexItems = new HashMap<String, String>();
-							while ((indexLine = indexReader.readLine()) != null) {
-								String[] items = csvSplitter.split(indexLine);
-								if (items.length != 2) {
-									log.warn("Invalid format in index file: "
-											+ indexLine);
-									continue;
-								}
-								if (items[0].startsWith("#")) {
-									// comment
-									continue;
-								}
-								indexItems.put(items[0].trim().intern(),
-										items[1].trim().intern());
-							}
-							indexReader.close();
-							precompIndex.set(indexItems);
-						} catch (IOException exp) {
-							log.error("Cannot read index file " + indexFile,
-									exp);
-							precompIndex.set(null);
-							precompSea = null;
-						}
-					} else {
+				try {
+					precompIndex = PrecompSeaCache.getInstance().getIndex(precompSeaDir);
+					if (precompIndex == null) {
 						log.error("Disable precompiled sea due to missing index.txt file in precompiled sea directory "
 							+ precompSeaDir);
 						System.err.println("Disable precompiled sea due to missing index.txt file in precompiled sea directory "
 							+ precompSeaDir);
-						precompIndex.set(null);
 						precompSeaDir = null;
 					}
+				} catch (IOException exp) {
+					log.error("Cannot read index file in " + precompSeaDir, exp);
+					precompSea = null;
+					precompSeaDir = null;
 				}
 			} else {
 				log.error("Directory with precompiled sea does not exist: "
@@ -311,48 +244,6 @@ public class SeaGenerator extends OsmReadingHooksAdaptor {
 		}
 	}
 
-	/**
-	 * Creates a reader for the given filename of the precomiled sea tile.
-	 * @param filename precompiled sea tile 
-	 * @return the reader for the tile
-	 */
-	private static OsmMapDataSource createTileReader(String filename) {
-		for (Class<? extends LoadableMapDataSource> loader : precompSeaLoader) {
-			try {
-				LoadableMapDataSource src = loader.newInstance();
-				if (filename != null && src instanceof OsmMapDataSource
-						&& src.isFileSupported(filename))
-					return (OsmMapDataSource) src;
-			} catch (InstantiationException e) {
-				// try the next one.
-			} catch (IllegalAccessException e) {
-				// try the next one.
-			} catch (NoClassDefFoundError e) {
-				// try the next one
-			}
-		}
-
-		// Give up and assume it is in the XML format. If it isn't we will get
-		// an error soon enough anyway.
-		return new Osm5PrecompSeaDataSource();
-	}
-	
-	/**
-	 * Loads the precomp sea tile with the given filename.
-	 * @param filename the filename of the precomp sea tile
-	 * @return all ways of the tile
-	 * @throws FileNotFoundException if the tile could not be found
-	 */
-	private Collection<Way> loadPrecompTile(String filename)
-			throws FileNotFoundException {
-		OsmMapDataSource src = createTileReader(filename);
-		src.config(new EnhancedProperties());
-		log.info("Started loading coastlines from", filename);
-		src.load(filename);
-		log.info("Finished loading coastlines from", filename);
-		return src.getElementSaver().getWays().values();
-	}
-
 	private int getPrecompTileStart(int value) {
 		int rem = value % PRECOMP_RASTER;
 		if (rem == 0) {
@@ -407,10 +298,19 @@ public class SeaGenerator extends OsmReadingHooksAdaptor {
 		List<Way> landWays = new ArrayList<Way>();
 		List<Way> seaWays = new ArrayList<Way>();
 		
-		// get the index with assignment key => sea/land/tilename
-		Map<String,String> index = precompIndex.get();
-		for (String precompKey : getPrecompKeyNames()) {
-			String tileName = index.get(precompKey);
+		// the tiles that are not all sea or all land are read first, all
+		// at the same time
+		List<String> precompKeys = getPrecompKeyNames();
+		List<File> precompFiles = new ArrayList<File>();
+		for (String precompKey : precompKeys) {
+			String tileName = precompIndex.get(precompKey);
+			if (tileName != null && !"sea".equals(tileName) && !"land".equals(tileName))
+				precompFiles.add(new File(precompSeaDir, tileName));
+		}
+		Iterator<PrecompSeaCache.SeaTile> precompTiles = PrecompSeaCache.getInstance().get(precompFiles).iterator();
+
+		for (String precompKey : precompKeys) {
+			String tileName = precompIndex.get(precompKey);
 			
 			if (tileName == null) {
 				log.error("Precompile sea tile "+tileName+" is missing in the index. Skipping.");
@@ -442,30 +342,25 @@ public class SeaGenerator extends OsmReadingHooksAdaptor {
 				
 			} else {
 				distinctTilesOnly = false;
-				String precompTile = new File(precompSeaDir,tileName).getAbsolutePath();
-				try {
-					Collection<Way> seaPrecompWays = loadPrecompTile(precompTile);
-					
-					if (log.isDebugEnabled())
-						log.debug(seaPrecompWays.size(), "precomp sea ways from",
-							precompTile, "loaded.");
-
-					for (Way w : seaPrecompWays) {
-						// set a new id to be sure that the precompiled ids do not
-						// interfere with the ids of this run
-						w.setId(FakeIdGenerator.makeFakeId());
-					
-						if ("land".equals(w.getTag("natural"))) {
-							landWays.add(w);
-						} else {
-							seaWays.add(w);
-						}
+				PrecompSeaCache.SeaTile tile = precompTiles.next();
+				if (tile == null) {
+					// the error is already reported
+					continue;
+				}
+
+				// the ways are new copies with new ids, so that the precompiled
+				// ids do not interfere with the ids of this run
+				List<Way> seaPrecompWays = tile.createWays();
+				if (log.isDebugEnabled())
+					log.debug(seaPrecompWays.size(), "precomp sea ways from",
+						tileName, "loaded.");
+
+				for (Way w : seaPrecompWays) {
+					if ("land".equals(w.getTag("natural"))) {
+						landWays.add(w);
+					} else {
+						seaWays.add(w);
 					}
-				} catch (FileNotFoundException exp) {
-					log.error("Preompiled sea tile " + precompTile + " not found.");
-				} catch (Exception exp) {
-					log.error(exp);
-					exp.printStackTrace();
 				}
 			}
 		}
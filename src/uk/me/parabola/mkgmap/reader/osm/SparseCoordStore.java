@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.me.parabola.imgfmt.app.Coord;
+
+/**
+ * A coordinate store that keeps the ids and positions in primitive arrays.
+ *
+ * The nodes in an osm file are sorted by id, so the ids can just be appended
+ * to an array and found again with a binary search.  The latitude and
+ * longitude are kept as a pair of ints next to each other.  A Coord object
+ * is only created when a node is first looked up, which is usually when it
+ * is added to a way, and then it is kept so that the same instance is
+ * returned every time.
+ *
+ * The arrays are allocated in chunks so that there is never a large copy
+ * as they grow.  Any node that arrives out of order is saved in a hash
+ * map instead, so the result is always correct, just less compact for
+ * unsorted input.
+ *
+ * @author agent
+ */
+public class SparseCoordStore implements CoordStore {
+	protected static final int CHUNK_SHIFT = 16;
+	protected static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	protected static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private long[][] idChunks = new long[16][];
+	private int[][] posChunks = new int[16][];
+
+	// The Coords that have been created so far, in the same order as the ids.
+	private Coord[][] coordChunks = new Coord[16][];
+
+	// Number of entries in the sorted part of the store.
+	private int count;
+	private long lastId = Long.MIN_VALUE;
+
+	// Nodes that did not arrive in id order.
+	private final Map<Long, Coord> unsorted = new HashMap<Long, Coord>();
+
+	public void put(long id, int lat, int lon) {
+		if (id > lastId) {
+			append(id, lat, lon);
+			return;
+		}
+
+		int idx = find(id);
+		if (idx >= 0)
+			setCoord(idx, new Coord(lat, lon));
+		else
+			unsorted.put(id, new Coord(lat, lon));
+	}
+
+	public void put(long id, Coord co) {
+		if (id > lastId) {
+			append(id, co.getLatitude(), co.getLongitude());
+			setCoord(count - 1, co);
+			return;
+		}
+
+		int idx = find(id);
+		if (idx >= 0)
+			setCoord(idx, co);
+		else
+			unsorted.put(id, co);
+	}
+
+	public Coord get(long id) {
+		int idx = find(id);
+		if (idx < 0) {
+			if (unsorted.isEmpty())
+				return null;
+			return unsorted.get(id);
+		}
+
+		Coord[] coords = coordChunks[idx >>> CHUNK_SHIFT];
+		if (coords == null) {
+			coords = new Coord[CHUNK_SIZE];
+			coordChunks[idx >>> CHUNK_SHIFT] = coords;
+		}
+
+		Coord co = coords[idx & CHUNK_MASK];
+		if (co == null) {
+			co = new Coord(getLat(idx), getLon(idx));
+			coords[idx & CHUNK_MASK] = co;
+		}
+		return co;
+	}
+
+	public int size() {
+		return count + unsorted.size();
+	}
+
+	public void close() {
+		idChunks = null;
+		posChunks = null;
+		coordChunks = null;
+		unsorted.clear();
+	}
+
+	/**
+	 * Find the index of the given id in the sorted part of the store.
+	 * @return The index or -1 if it is not there.
+	 */
+	private int find(long id) {
+		int lo = 0;
+		int hi = count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long midId = getId(mid);
+			if (midId < id)
+				lo = mid + 1;
+			else if (midId > id)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private void append(long id, int lat, int lon) {
+		int chunk = count >>> CHUNK_SHIFT;
+		if (chunk >= coordChunks.length)
+			coordChunks = Arrays.copyOf(coordChunks, coordChunks.length * 2);
+
+		store(count, id, lat, lon);
+		count++;
+		lastId = id;
+	}
+
+	private void setCoord(int idx, Coord co) {
+		Coord[] coords = coordChunks[idx >>> CHUNK_SHIFT];
+		if (coords == null) {
+			coords = new Coord[CHUNK_SIZE];
+			coordChunks[idx >>> CHUNK_SHIFT] = coords;
+		}
+		coords[idx & CHUNK_MASK] = co;
+	}
+
+	/**
+	 * Save the raw values of a node at the given index.  The index is always
+	 * one more than the previous one.
+	 */
+	protected void store(int idx, long id, int lat, int lon) {
+		int chunk = idx >>> CHUNK_SHIFT;
+		if (chunk >= idChunks.length) {
+			idChunks = Arrays.copyOf(idChunks, idChunks.length * 2);
+			posChunks = Arrays.copyOf(posChunks, posChunks.length * 2);
+		}
+		if (idChunks[chunk] == null) {
+			idChunks[chunk] = new long[CHUNK_SIZE];
+			posChunks[chunk] = new int[2 * CHUNK_SIZE];
+		}
+
+		int off = idx & CHUNK_MASK;
+		idChunks[chunk][off] = id;
+		posChunks[chunk][2 * off] = lat;
+		posChunks[chunk][2 * off + 1] = lon;
+	}
+
+	protected long getId(int idx) {
+		return idChunks[idx >>> CHUNK_SHIFT][idx & CHUNK_MASK];
+	}
+
+	protected int getLat(int idx) {
+		return posChunks[idx >>> CHUNK_SHIFT][2 * (idx & CHUNK_MASK)];
+	}
+
+	protected int getLon(int idx) {
+		return posChunks[idx >>> CHUNK_SHIFT][2 * (idx & CHUNK_MASK) + 1];
+	}
+}
@@ -20,6 +20,8 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import uk.me.parabola.util.StringPool;
+
 /**
  * Store the tags that belong to an Element.
  *
@@ -38,11 +40,18 @@ import java.util.Map.Entry;
 public class Tags implements Iterable<String> {
 	private static final int INIT_SIZE = 8;
 
+	// Equal values are shared through this pool while a run is in
+	// progress, see setValuePool().
+	private static volatile StringPool valuePool;
+
 	private short keySize;
 	private short capacity;
 	
 	private short size;
 
+	// Incremented on every change, so that cached results can be checked.
+	private int version;
+
 	private String[] keys;
 	private String[] values;
 
@@ -52,6 +61,14 @@ public class Tags implements Iterable<String> {
 		capacity = INIT_SIZE;
 	}
 
+	/**
+	 * Set the pool that tag values are shared through, or null to stop
+	 * sharing them.  The pool is used by all the threads making tiles.
+	 */
+	public static void setValuePool(StringPool pool) {
+		valuePool = pool;
+	}
+
 	public String get(String key) {
 		int ind = keyPos(key);
 		if (ind < 0)
@@ -69,6 +86,11 @@ public class Tags implements Iterable<String> {
 	}
 
 	public String put(String key, String value) {
+		StringPool pool = valuePool;
+		return store(key, pool == null ? value : pool.get(value));
+	}
+
+	private String store(String key, String value) {
 		assert key != null : "key is null";
 		assert value != null : "value is null";
 		ensureSpace();
@@ -83,6 +105,7 @@ public class Tags implements Iterable<String> {
 			size++;
 		}
 		values[ind] = value;
+		version++;
 
 		return old;
 	}
@@ -96,11 +119,20 @@ public class Tags implements Iterable<String> {
 			String old = values[k];
 			values[k] = null;
 			size--;
+			version++;
 			return old;
 		}
 		return null;
 	}
 	
+	/**
+	 * The version changes every time a tag is added, changed or removed.
+	 * @return A number that is different after any change to the tags.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
 	/**
 	 * Make a deep copy of this object.
 	 * @return A copy of this object.
@@ -130,7 +162,7 @@ public class Tags implements Iterable<String> {
 				String k = okey[i];
 				String v = oval[i]; // null if tag has been removed
 				if (k != null && v != null)
-					put(k, v);
+					store(k, v);
 			}
 		}
 		assert keySize < capacity;
@@ -209,6 +241,34 @@ public class Tags implements Iterable<String> {
 		};
 	}
 
+	/**
+	 * Step through the tags without creating any objects, for the places
+	 * where that matters such as looking up the style rules.
+	 *
+	 * <pre>
+	 * for (int i = tags.nextTag(0); i >= 0; i = tags.nextTag(i + 1))
+	 *     use(tags.getKeyAt(i), tags.getValueAt(i));
+	 * </pre>
+	 *
+	 * @param pos The position to start looking from, 0 for the first tag.
+	 * @return The position of the next tag, or -1 if there are no more.
+	 */
+	public int nextTag(int pos) {
+		for (int i = pos; i < capacity; i++) {
+			if (values[i] != null)
+				return i;
+		}
+		return -1;
+	}
+
+	public String getKeyAt(int pos) {
+		return keys[pos];
+	}
+
+	public String getValueAt(int pos) {
+		return values[pos];
+	}
+
 	public Iterator<Map.Entry<String, String>> entryIterator() {
 		return new Iterator<Map.Entry<String, String>>() {
 			private int pos;
@@ -259,6 +319,7 @@ public class Tags implements Iterable<String> {
 		}
 		keySize = 0;
 		size = 0;
+		version++;
 	}
 	
 	public String toString() {
@@ -15,6 +15,7 @@ package uk.me.parabola.mkgmap.reader.osm.bin;
 import java.util.List;
 
 import uk.me.parabola.imgfmt.MapFailedException;
+import uk.me.parabola.imgfmt.Utils;
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.mkgmap.reader.osm.Element;
 import uk.me.parabola.mkgmap.reader.osm.GeneralRelation;
@@ -61,19 +62,19 @@ public class OsmBinHandler extends OsmHandler {
 
 		protected void parseNodes(List<Osmformat.Node> nodes) {
 			for (Osmformat.Node binNode : nodes) {
-				Coord co = new Coord(parseLat(binNode.getLat()), parseLon(binNode.getLon()));
 				long id = binNode.getId();
-				saver.addPoint(id, co);
+				saver.addPoint(id, Utils.toMapUnit(parseLat(binNode.getLat())),
+						Utils.toMapUnit(parseLon(binNode.getLon())));
 
 				int tagCount = binNode.getKeysCount();
 				if (tagCount > 0) {
-					Node node = new Node(id, co);
+					Node node = new Node(id, saver.getCoord(id));
 					for (int tid = 0; tid < tagCount; tid++) {
 						String key = getStringById(binNode.getKeys(tid));
 						String val = getStringById(binNode.getVals(tid));
 						key = keepTag(key, val);
 						if (key != null)
-							node.addTag(key, val.intern());
+							node.addTag(key, val);
 					}
 
 					saver.addNode(node);
@@ -95,8 +96,7 @@ public class OsmBinHandler extends OsmHandler {
 				lastLon = lon;
 				lastId = id;
 
-				Coord co = new Coord(parseLat(lat), parseLon(lon));
-				saver.addPoint(id, co);
+				saver.addPoint(id, Utils.toMapUnit(parseLat(lat)), Utils.toMapUnit(parseLon(lon)));
 
 				if (nodes.getKeysValsCount() > 0) {
 					int ntags = 0;
@@ -109,8 +109,8 @@ public class OsmBinHandler extends OsmHandler {
 						key = keepTag(key, val);
 						if (key != null) {
 							if (node == null)
-								node = new Node(id, co);
-							node.addTag(key, val.intern());
+								node = new Node(id, saver.getCoord(id));
+							node.addTag(key, val);
 							ntags++;
 						}
 					}
@@ -135,7 +135,7 @@ public class OsmBinHandler extends OsmHandler {
 					String val = getStringById(binWay.getVals(j));
 					key = keepTag(key, val);
 					if (key != null)
-						way.addTag(key, val.intern());
+						way.addTag(key, val);
 				}
 
 				long nid = 0;
@@ -162,7 +162,7 @@ public class OsmBinHandler extends OsmHandler {
 					if (key == null)
 						tagsIncomplete = true;
 					else
-						rel.addTag(key, val.intern());
+						rel.addTag(key, val);
 				}
 
 				if (tagsIncomplete) {
@@ -21,6 +21,7 @@ import uk.me.parabola.imgfmt.FormatException;
 import uk.me.parabola.imgfmt.Utils;
 import uk.me.parabola.mkgmap.reader.osm.OsmMapDataSource;
 import uk.me.parabola.mkgmap.reader.osm.bin.OsmBinHandler.BinParser;
+import uk.me.parabola.util.ThreadUtils;
 
 import crosby.binary.file.BlockInputStream;
 
@@ -59,8 +60,14 @@ public class OsmBinMapDataSource extends OsmMapDataSource {
 		try {
 			BinParser reader = handler.new BinParser();
 			handler = null;
-			BlockInputStream stream = new BlockInputStream(is, reader);
-			stream.process();
+			int nThreads = ThreadUtils.getThreadCount(getConfig(), "pbf-decode-threads");
+			if (nThreads > 1) {
+				PipelinedBlockReader stream = new PipelinedBlockReader(is, reader, nThreads);
+				stream.process();
+			} else {
+				BlockInputStream stream = new BlockInputStream(is, reader);
+				stream.process();
+			}
 		} catch (NoClassDefFoundError e) {
 			throw new FormatException("Failed to read binary file, probably missing protobuf.jar");
 		} catch (IOException e) {
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm.bin;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import uk.me.parabola.log.Logger;
+import uk.me.parabola.util.ThreadUtils;
+
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+
+/**
+ * Reads a pbf file, decoding the blocks on a pool of worker threads.
+ *
+ * The raw blobs are read from the file on the calling thread and handed to
+ * the pool, where they are inflated and parsed into protobuf messages.  The
+ * decoded blocks are then passed to the parser on the calling thread
+ * strictly in file order, so the element saver and the reading hooks see
+ * exactly the same sequence as with the plain BlockInputStream.
+ *
+ * Only a limited number of blocks are in flight at once, so the memory
+ * used does not depend on the file size.
+ *
+ * @author agent
+ */
+public class PipelinedBlockReader {
+	private static final Logger log = Logger.getLogger(PipelinedBlockReader.class);
+
+	// Limits from the file format specification.
+	private static final int MAX_HEADER_SIZE = 64 * 1024;
+	private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+	private final DataInputStream input;
+	private final OsmBinHandler.BinParser parser;
+	private final int nThreads;
+
+	public PipelinedBlockReader(InputStream is, OsmBinHandler.BinParser parser, int nThreads) {
+		this.input = new DataInputStream(is);
+		this.parser = parser;
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Read the whole file, passing every block to the parser.
+	 */
+	public void process() throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads, ThreadUtils.daemonThreadFactory("pbf-decoder"));
+
+		int maxInFlight = 2 * nThreads;
+		Deque<Future<DecodedBlock>> inFlight = new ArrayDeque<Future<DecodedBlock>>(maxInFlight);
+		try {
+			boolean eof = false;
+			while (!eof || !inFlight.isEmpty()) {
+				while (!eof && inFlight.size() < maxInFlight) {
+					Callable<DecodedBlock> raw = readBlob();
+					if (raw == null)
+						eof = true;
+					else
+						inFlight.add(pool.submit(raw));
+				}
+
+				if (!inFlight.isEmpty())
+					dispatch(ThreadUtils.waitFor(inFlight.remove(), IOException.class, "decode a block"));
+			}
+			parser.complete();
+		} finally {
+			pool.shutdownNow();
+			input.close();
+		}
+	}
+
+	/**
+	 * Read the next blob header and the blob data that follows it.
+	 * @return A task that will decode the blob, or null at the end of the file.
+	 */
+	private Callable<DecodedBlock> readBlob() throws IOException {
+		int headerSize;
+		try {
+			headerSize = input.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+			throw new IOException("Invalid blob header size " + headerSize);
+
+		byte[] buf = new byte[headerSize];
+		input.readFully(buf);
+		Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(buf);
+
+		int dataSize = header.getDatasize();
+		if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+			throw new IOException("Invalid blob size " + dataSize);
+
+		final String type = header.getType();
+		final byte[] data = new byte[dataSize];
+		input.readFully(data);
+
+		return new Callable<DecodedBlock>() {
+			public DecodedBlock call() throws IOException {
+				return decode(type, data);
+			}
+		};
+	}
+
+	/**
+	 * Runs on a worker thread to inflate and parse the block.
+	 */
+	private static DecodedBlock decode(String type, byte[] data) throws IOException {
+		Fileformat.Blob blob = Fileformat.Blob.parseFrom(data);
+
+		byte[] content;
+		if (blob.hasRaw()) {
+			content = blob.getRaw().toByteArray();
+		} else if (blob.hasZlibData()) {
+			content = new byte[blob.getRawSize()];
+			Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(blob.getZlibData().toByteArray());
+				inflater.inflate(content);
+				if (!inflater.finished())
+					throw new IOException("Blob larger than its declared size");
+			} catch (DataFormatException e) {
+				throw new IOException("Could not inflate blob: " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+		} else {
+			throw new IOException("Unsupported blob compression");
+		}
+
+		DecodedBlock block = new DecodedBlock(type);
+		if ("OSMData".equals(type))
+			block.data = Osmformat.PrimitiveBlock.parseFrom(content);
+		else if ("OSMHeader".equals(type))
+			block.header = Osmformat.HeaderBlock.parseFrom(content);
+		return block;
+	}
+
+	private void dispatch(DecodedBlock block) {
+		if (block.data != null)
+			parser.parse(block.data);
+		else if (block.header != null)
+			parser.parse(block.header);
+		else
+			log.warn("Ignoring unknown block type", block.type);
+	}
+
+	private static class DecodedBlock {
+		private final String type;
+		private Osmformat.PrimitiveBlock data;
+		private Osmformat.HeaderBlock header;
+
+		DecodedBlock(String type) {
+			this.type = type;
+		}
+	}
+}
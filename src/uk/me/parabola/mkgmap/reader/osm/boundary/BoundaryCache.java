@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm.boundary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import uk.me.parabola.log.Logger;
+import uk.me.parabola.util.EnhancedProperties;
+
+/**
+ * Keeps the BoundaryQuadTrees and compact bounds files that have been
+ * loaded, so that tiles that are next to each other do not each have to
+ * read the same bounds files.
+ *
+ * The cache is shared by all the tiles that are processed in this run, and
+ * may be used from several threads at once.  The trees are not changed once
+ * they are loaded so they can be shared.  When the estimated heap used by
+ * the trees goes over the limit, the least recently used ones are dropped.
+ *
+ * @author agent
+ */
+public class BoundaryCache {
+	private static final Logger log = Logger.getLogger(BoundaryCache.class);
+
+	// Rough ratio of the heap used by a loaded tree to the size of its file.
+	private static final int HEAP_PER_FILE_BYTE = 4;
+	// A compact file is mapped, only the decoded parts use the heap.
+	private static final int HEAP_PER_COMPACT_FILE_BYTE = 1;
+
+	private static final BoundaryCache INSTANCE = new BoundaryCache(Runtime.getRuntime().maxMemory() / 8);
+
+	private final long maxCost;
+	private long cost;
+
+	// In access order, so the first entry is the least recently used.
+	private final LinkedHashMap<String, Entry> trees = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	BoundaryCache(long maxCost) {
+		this.maxCost = maxCost;
+	}
+
+	public static BoundaryCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Get the lookup for a bounds file, loading it if it is not already
+	 * in the cache.  The whole file is loaded, so that it can be used by
+	 * every tile that overlaps it.  Files in the compact format are opened
+	 * directly, the others are read into a BoundaryQuadTree.
+	 *
+	 * @param boundaryDirName The bounds directory or zip file.
+	 * @param boundaryFileName The name of the *.bnd file.
+	 * @param props Used to set the location names.
+	 * @return The lookup, or null if the file does not exist or cannot be read.
+	 */
+	public BoundaryLookup get(String boundaryDirName, String boundaryFileName, EnhancedProperties props) {
+		String key = getKey(boundaryDirName, boundaryFileName, props);
+
+		Entry entry;
+		synchronized (trees) {
+			entry = trees.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				trees.put(key, entry);
+			}
+		}
+
+		// Only the first thread to want a file loads it, any others wait for it.
+		synchronized (entry) {
+			if (!entry.loaded) {
+				entry.tree = CompactBoundaryFile.open(boundaryDirName, boundaryFileName, props);
+				if (entry.tree != null) {
+					entry.cost = HEAP_PER_COMPACT_FILE_BYTE * getFileSize(boundaryDirName, boundaryFileName);
+				} else {
+					Map<String, BoundaryQuadTree> loaded = BoundaryUtil.loadQuadTrees(boundaryDirName,
+							Collections.singletonList(boundaryFileName), null, props);
+					entry.tree = loaded.get(boundaryFileName);
+					if (entry.tree != null)
+						entry.cost = HEAP_PER_FILE_BYTE * getFileSize(boundaryDirName, boundaryFileName);
+				}
+				entry.loaded = true;
+
+				synchronized (trees) {
+					if (trees.get(key) == entry)
+						cost += entry.cost;
+					evict(entry);
+				}
+			}
+			return entry.tree;
+		}
+	}
+
+	/**
+	 * Drop the least recently used trees until the total is within the
+	 * limit.  The entry that has just been loaded is kept.
+	 */
+	private void evict(Entry keep) {
+		Iterator<Entry> it = trees.values().iterator();
+		while (cost > maxCost && it.hasNext()) {
+			Entry entry = it.next();
+			if (entry == keep || !entry.loaded)
+				continue;
+
+			it.remove();
+			cost -= entry.cost;
+			log.info("dropped boundary tree from cache, cached size now", cost);
+		}
+	}
+
+	/**
+	 * The props change the location information that is stored in the trees,
+	 * so they have to be part of the key.
+	 */
+	private static String getKey(String boundaryDirName, String boundaryFileName, EnhancedProperties props) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(boundaryDirName).append('|').append(boundaryFileName);
+		if (props != null) {
+			sb.append('|').append(props.getProperty("name-tag-list"));
+			sb.append('|').append(props.getProperty("location-autofill"));
+		}
+		return sb.toString();
+	}
+
+	private static long getFileSize(String boundaryDirName, String boundaryFileName) {
+		File boundaryDir = new File(boundaryDirName);
+		if (boundaryDir.isDirectory())
+			return new File(boundaryDir, boundaryFileName).length();
+
+		try {
+			ZipFile zipFile = new ZipFile(boundaryDir);
+			try {
+				ZipEntry entry = zipFile.getEntry(boundaryFileName);
+				return entry == null ? 0 : Math.max(entry.getSize(), 0);
+			} finally {
+				zipFile.close();
+			}
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static class Entry {
+		private boolean loaded;
+		private BoundaryLookup tree;
+		private long cost;
+	}
+}
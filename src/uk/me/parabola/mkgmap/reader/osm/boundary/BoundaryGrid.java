@@ -12,17 +12,21 @@
  */
 package uk.me.parabola.mkgmap.reader.osm.boundary;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.log.Logger;
 import uk.me.parabola.mkgmap.reader.osm.Tags;
 import uk.me.parabola.util.EnhancedProperties;
+import uk.me.parabola.util.ThreadUtils;
 
 /**
- * A simple grid that stores the BoundaryQuadTrees that intersect with the grid.
+ * A simple grid that stores the BoundaryQuadTrees (or compact bounds files)
+ * that intersect with the grid.
  * Each element of the grid is related to one *.bnd file.
  * 
  * @author GerdP
@@ -31,8 +35,11 @@ import uk.me.parabola.util.EnhancedProperties;
 public class BoundaryGrid {
 	private static final Logger log = Logger.getLogger(BoundaryGrid.class);
 
+	// The number of points that are looked up together in one task.
+	private static final int BATCH_SIZE = 2048;
+
 	private final uk.me.parabola.imgfmt.app.Area searchBbox;
-	private final BoundaryQuadTree[][] grid;
+	private final BoundaryLookup[][] grid;
 	private final boolean [][]emptyMessagePrinted;
 	private final int minLat;
 	private final int minLon;
@@ -58,7 +65,7 @@ public class BoundaryGrid {
 		int gridMaxLon = BoundaryUtil.getSplitBegin(bbox.getMaxLong());
 		int dimLat = (gridMaxLat - minLat) / BoundaryUtil.RASTER + 1;
 		int dimLon = (gridMaxLon - minLon) / BoundaryUtil.RASTER + 1;
-		grid = new BoundaryQuadTree[dimLat][dimLon];
+		grid = new BoundaryLookup[dimLat][dimLon];
 		emptyMessagePrinted = new boolean[dimLat][dimLon];
 		this.searchBbox = bbox;
 
@@ -78,12 +85,7 @@ public class BoundaryGrid {
 		int gridLat = (co.getLatitude() - minLat) / BoundaryUtil.RASTER;
 		int gridLon = (co.getLongitude() - minLon) / BoundaryUtil.RASTER;
 		if (grid[gridLat][gridLon] == null){
-			if (emptyMessagePrinted[gridLat][gridLon] == false){
-				emptyMessagePrinted[gridLat][gridLon] = true;
-				int keyLat = BoundaryUtil.getSplitBegin(co.getLatitude());
-				int keyLon = BoundaryUtil.getSplitBegin(co.getLongitude());
-				log.warn("no precompiled boundary information available for raster tile", BoundaryUtil.getKey(keyLat,keyLon));
-			}
+			warnEmpty(co, gridLat, gridLon);
 			return null;
 		}
 		else
@@ -91,21 +93,138 @@ public class BoundaryGrid {
 	}
 
 	/**
-	 * Fill the grid. Calculate the names of the *.bnd files that 
-	 * may be needed. For each file, try to create a BoundaryQuadTree.
-	 * Save each tree to its place in the grid. 
-	 * 
+	 * Returns the location relevant tags for many points at once.
+	 * The points in each raster tile are sorted along a Z-order curve,
+	 * so that points which are close together are looked up one after
+	 * the other.  The sorted points are then looked up in batches, which
+	 * are run on the pool if one is given.
+	 * @param points the points, null entries are allowed
+	 * @param pool null or a pool to run the batches on
+	 * @return the tags for each point at the same index as the point, 
+	 * null where nothing was found
+	 */
+	public Tags[] get(Coord[] points, ExecutorService pool) {
+		final Tags[] result = new Tags[points.length];
+		int dimLon = grid[0].length;
+
+		// Put the points into the raster tiles they are in.
+		int[] cells = new int[points.length];
+		int[] counts = new int[grid.length * dimLon];
+		for (int i = 0; i < points.length; i++) {
+			Coord co = points[i];
+			cells[i] = -1;
+			if (co == null || !searchBbox.contains(co))
+				continue;
+			int gridLat = (co.getLatitude() - minLat) / BoundaryUtil.RASTER;
+			int gridLon = (co.getLongitude() - minLon) / BoundaryUtil.RASTER;
+			if (grid[gridLat][gridLon] == null){
+				warnEmpty(co, gridLat, gridLon);
+				continue;
+			}
+			cells[i] = gridLat * dimLon + gridLon;
+			counts[cells[i]]++;
+		}
+
+		// Sort the points of each raster tile along the curve.  The position
+		// on the curve goes in the top bits, and the index of the point in
+		// the bottom ones.
+		int[] starts = new int[counts.length + 1];
+		for (int cell = 0; cell < counts.length; cell++)
+			starts[cell + 1] = starts[cell] + counts[cell];
+		int[] fill = Arrays.copyOf(starts, counts.length);
+		long[] order = new long[starts[counts.length]];
+		for (int i = 0; i < points.length; i++) {
+			int cell = cells[i];
+			if (cell < 0)
+				continue;
+			int cellLat = minLat + (cell / dimLon) * BoundaryUtil.RASTER;
+			int cellLon = minLon + (cell % dimLon) * BoundaryUtil.RASTER;
+			long z = interleave(points[i].getLatitude() - cellLat, points[i].getLongitude() - cellLon);
+			order[fill[cell]++] = z << 31 | i;
+		}
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int cell = 0; cell < counts.length; cell++) {
+			if (counts[cell] == 0)
+				continue;
+			Arrays.sort(order, starts[cell], starts[cell + 1]);
+
+			final BoundaryLookup lookup = grid[cell / dimLon][cell % dimLon];
+			for (int start = starts[cell]; start < starts[cell + 1]; start += BATCH_SIZE) {
+				int end = Math.min(starts[cell + 1], start + BATCH_SIZE);
+				final int[] index = new int[end - start];
+				final Coord[] batch = new Coord[end - start];
+				for (int k = 0; k < batch.length; k++) {
+					index[k] = (int) (order[start + k] & Integer.MAX_VALUE);
+					batch[k] = points[index[k]];
+				}
+
+				Runnable task = new Runnable() {
+					public void run() {
+						Tags[] found = new Tags[batch.length];
+						lookup.get(batch, 0, batch.length, found);
+						for (int k = 0; k < found.length; k++)
+							result[index[k]] = found[k];
+					}
+				};
+				if (pool == null)
+					task.run();
+				else
+					futures.add(pool.submit(task));
+			}
+		}
+
+		for (Future<?> future : futures)
+			ThreadUtils.waitFor(future, "look up locations");
+		return result;
+	}
+
+	private void warnEmpty(Coord co, int gridLat, int gridLon) {
+		if (emptyMessagePrinted[gridLat][gridLon] == false){
+			emptyMessagePrinted[gridLat][gridLon] = true;
+			int keyLat = BoundaryUtil.getSplitBegin(co.getLatitude());
+			int keyLon = BoundaryUtil.getSplitBegin(co.getLongitude());
+			log.warn("no precompiled boundary information available for raster tile", BoundaryUtil.getKey(keyLat,keyLon));
+		}
+	}
+
+	/**
+	 * Interleave the bits of two values that are less than 2^16 to give the
+	 * position on a Z-order (Morton) curve.
+	 */
+	private static long interleave(int lat, int lon) {
+		return spread(lat) << 1 | spread(lon);
+	}
+
+	private static long spread(int val) {
+		long x = val & 0xffff;
+		x = (x | (x << 8)) & 0x00ff00ffL;
+		x = (x | (x << 4)) & 0x0f0f0f0fL;
+		x = (x | (x << 2)) & 0x33333333L;
+		x = (x | (x << 1)) & 0x55555555L;
+		return x;
+	}
+
+	/**
+	 * Fill the grid. Calculate the names of the *.bnd files that
+	 * may be needed. For each file, try to get a BoundaryQuadTree or
+	 * compact file from the cache that is shared with the other tiles.
+	 * Save each tree to its place in the grid.
+	 *
 	 * @param boundaryDir
 	 *            Directory or a *.zip file with bnd files
 	 */
 	private void init(String boundaryDirName){
 		List<String> requiredFileNames = BoundaryUtil.getRequiredBoundaryFileNames(searchBbox);
-		Map<String,BoundaryQuadTree> trees = BoundaryUtil.loadQuadTrees(boundaryDirName, requiredFileNames, searchBbox, props);
-		for (Entry<String,BoundaryQuadTree> entry: trees.entrySet()) {
-			uk.me.parabola.imgfmt.app.Area fileBbox = BoundaryUtil.getBbox(entry.getKey());
+		BoundaryCache cache = BoundaryCache.getInstance();
+		for (String fileName : requiredFileNames) {
+			BoundaryLookup tree = cache.get(boundaryDirName, fileName, props);
+			if (tree == null)
+				continue;
+			uk.me.parabola.imgfmt.app.Area fileBbox = BoundaryUtil.getBbox(fileName);
 			int gridLat = (fileBbox.getMinLat() - minLat) / BoundaryUtil.RASTER;
 			int gridLon = (fileBbox.getMinLong() - minLon) / BoundaryUtil.RASTER;
-			grid[gridLat][gridLon] = entry.getValue();
+			grid[gridLat][gridLon] = tree;
 		}
 	}
 }
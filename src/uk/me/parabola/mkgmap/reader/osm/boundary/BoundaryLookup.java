@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm.boundary;
+
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.mkgmap.reader.osm.Tags;
+
+/**
+ * Finds the location relevant tags for a point from the boundaries in
+ * one bounds file.
+ *
+ * @author agent
+ */
+public interface BoundaryLookup {
+
+	/**
+	 * Return location relevant Tags for the point defined by Coord
+	 * @param co the point
+	 * @return a reference to the internal Tags or null if the point was not found.
+	 * The returned Tags must not be modified by the caller.
+	 */
+	public Tags get(Coord co);
+
+	/**
+	 * Look up a run of points.  This gives the same results as calling
+	 * {@link #get(Coord)} for each point, but is quicker when points that are
+	 * next to each other in the array are also close together on the map.
+	 * @param points the points
+	 * @param from the index of the first point to look up
+	 * @param to the index after the last point to look up
+	 * @param result the tags for each point are stored here at the same
+	 * index as the point
+	 */
+	public void get(Coord[] points, int from, int to, Tags[] result);
+}
@@ -15,6 +15,7 @@ package uk.me.parabola.mkgmap.reader.osm.boundary;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -86,6 +87,7 @@ public class BoundaryPreparer extends Preparer {
 	private String boundaryFilename;
 	private String inDir;
 	private String outDir;
+	private String dataFormat = BoundarySaver.QUADTREE_DATA_FORMAT;
 
 	public BoundaryPreparer() {
 		
@@ -95,10 +97,12 @@ public class BoundaryPreparer extends Preparer {
 	 * constructor for stand-alone usage (workout only)
 	 * @param in source directory or zip file 
 	 * @param out target directory
+	 * @param dataFormat the format of the files that are written
 	 */
-	private BoundaryPreparer(String in, String out){
+	private BoundaryPreparer(String in, String out, String dataFormat){
 		this.inDir = in;
 		this.outDir = out;
+		this.dataFormat = dataFormat;
 		this.workoutOnly = true;
 	}
 	
@@ -168,7 +172,8 @@ public class BoundaryPreparer extends Preparer {
 		if (args[0].equals("--help")) {
 			System.err.println("Usage:");
 			System.err
-					.println("java -cp mkgmap.jar uk.me.parabola.mkgmap.reader.osm.boundary.BoundaryPreparer [<boundsdir1>] [<boundsdir2>]");
+					.println("java -cp mkgmap.jar uk.me.parabola.mkgmap.reader.osm.boundary.BoundaryPreparer [--compact] [<boundsdir1>] [<boundsdir2>]");
+			System.err.println(" --compact: write the files in the compact format, which can only be used with the bounds option");
 			System.err.println(" <boundsdir1>: optional directory name or zip file with *.bnd files, default is bounds");
 			System.err
 			.println(" <boundsdir2>: optional output directory, if not specified, files in input are overwritten.");
@@ -179,6 +184,11 @@ public class BoundaryPreparer extends Preparer {
 		} 
 		String in = "bounds";
 		String out = "bounds";
+		String dataFormat = BoundarySaver.QUADTREE_DATA_FORMAT;
+		if (args.length >= 1 && args[0].equals("--compact")) {
+			dataFormat = BoundarySaver.COMPACT_DATA_FORMAT;
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
 		if (args.length >= 1)
 			in = args[0];
 		if (args.length >= 2)
@@ -192,7 +202,7 @@ public class BoundaryPreparer extends Preparer {
 
 		EnhancedProperties props = new EnhancedProperties();
 		
-		BoundaryPreparer p = new BoundaryPreparer(in, out);
+		BoundaryPreparer p = new BoundaryPreparer(in, out, dataFormat);
 		p.init(props, threadPool);
 		try {
 			p.runPreparer();
@@ -212,7 +222,7 @@ public class BoundaryPreparer extends Preparer {
 	 * Reworks all bounds files of the given directory so that all boundaries
 	 * are applied with the information with which boundary they intersect.<br/>
 	 * The files are rewritten in the QUADTREE_DATA_FORMAT which is used in the 
-	 * LocationHook.
+	 * LocationHook, or in the COMPACT_DATA_FORMAT if that was asked for.
 	 * 
 	 * @param inputDirName the directory or zip file name that identifies the input
 	 * @param outputDirName a directory name for the rewritten bnd files
@@ -247,7 +257,7 @@ public class BoundaryPreparer extends Preparer {
 			log.info("splitting", boundsFileName, "took", dt, "ms");
 			if (bqt != null){
 				File outDir = new File(outputDirName);
-				BoundarySaver saver = new BoundarySaver(outDir, BoundarySaver.QUADTREE_DATA_FORMAT);
+				BoundarySaver saver = new BoundarySaver(outDir, dataFormat);
 				saver.setCreateEmptyFiles(false);
 
 				saver.saveQuadTree(bqt, boundsFileName); 		
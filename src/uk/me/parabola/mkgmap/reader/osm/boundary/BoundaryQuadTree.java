@@ -48,7 +48,7 @@ import uk.me.parabola.util.Java2DConverter;
  * @author GerdP 
  *
  */
-public class BoundaryQuadTree {
+public class BoundaryQuadTree implements BoundaryLookup {
 	private static final Logger log = Logger.getLogger(BoundaryQuadTree.class);
 	private static final boolean DEBUG = false;
 	// debugging  aid 
@@ -155,7 +155,40 @@ public class BoundaryQuadTree {
 	 */
 	public Tags get(Coord co){
 		Tags res = root.get(co/*, "_"*/);
-		if (res == null && bbox.contains(co.getLongitude(),co.getLatitude())){
+		if (res == null)
+			res = getNearby(co);
+		return res;
+	}
+
+	/**
+	 * Look up a run of points.  While the points fall strictly inside the
+	 * same leaf, that leaf is searched directly without going down the tree
+	 * again.  A point on the edge of a leaf could be in two of them, so it
+	 * is looked up from the root as usual.
+	 */
+	public void get(Coord[] points, int from, int to, Tags[] result){
+		Node leaf = null;
+		for (int i = from; i < to; i++){
+			Coord co = points[i];
+			if (leaf == null || !leaf.isStrictlyInside(co))
+				leaf = root.findLeaf(co);
+			Tags res;
+			if (leaf != null)
+				res = leaf.get(co);
+			else
+				res = root.get(co);
+			if (res == null)
+				res = getNearby(co);
+			result[i] = res;
+		}
+	}
+
+	/**
+	 * Called when a point was not found.
+	 */
+	private Tags getNearby(Coord co){
+		Tags res = null;
+		if (bbox.contains(co.getLongitude(),co.getLatitude())){
 			// we did not find the point, probably it lies on a boundary and
 			// the clauses regarding insideness of areas make it "invisible"
 			// try again a few other nearby points 
@@ -255,6 +288,22 @@ public class BoundaryQuadTree {
 		root.save(stream, "_");
 	}
 
+	/**
+	 * Save the BoundaryQuadTree to an open stream in the format that is
+	 * read by {@link CompactBoundaryFile}.
+	 * @param stream
+	 * @throws IOException
+	 */
+	public void saveCompact(OutputStream stream) throws IOException{
+		CompactBoundaryFile.Writer writer = new CompactBoundaryFile.Writer(
+				new uk.me.parabola.imgfmt.app.Area(bbox.y, bbox.x, bbox.y + bbox.height, bbox.x + bbox.width));
+		for (Entry<String,Tags> entry : boundaryTags.entrySet()){
+			writer.addTags(entry.getKey(), entry.getValue());
+		}
+		root.saveCompact(writer);
+		writer.write(stream);
+	}
+
 	/**
 	 * Sort the boundary-Tags-Map so that zip-code-only boundaries appear first, followed by
 	 * admin_level-11,10,9,...2
@@ -370,6 +419,63 @@ public class BoundaryQuadTree {
 		}
 	}
 
+	/**
+	 * Calculate the tags that are location relevant for an area of a boundary.
+	 * @param preparedLocationInfo the location info of all the boundaries
+	 * @param boundaryId the boundary the area belongs to
+	 * @param refs the other boundaries that share the same area, or null
+	 * @return a new Tags instance, empty if nothing is known
+	 */
+	static Tags calcLocTags(Map<String, BoundaryLocationInfo> preparedLocationInfo, String boundaryId, String refs){
+		Tags locTags = new Tags();
+		BoundaryLocationInfo bInfo  = preparedLocationInfo.get(boundaryId);
+		if (bInfo == null){
+			log.error("unknown boundaryId " + boundaryId);
+			return locTags;
+		}
+		if (bInfo.getZip() != null){
+			locTags.put("mkgmap:postcode",bInfo.getZip());
+		}
+		
+		if (bInfo.getAdmLevel() != BoundaryLocationPreparer.UNSET_ADMIN_LEVEL){
+			locTags.put(BoundaryQuadTree.mkgmapTagsArray[bInfo.getAdmLevel()-1], bInfo.getName());
+		}
+		if (refs != null && refs.isEmpty() == false){
+			// the common format of refInfo is 
+			// 2:r19884;4:r20039;6:r998818
+			String[] relBounds = refs.split(Pattern.quote(";"));
+			for (String relBound : relBounds) {
+				String[] relParts = relBound.split(Pattern.quote(":"));
+				if (relParts.length != 2) {
+					log.error("Wrong format. Value: " + refs);
+					continue;
+				}
+				BoundaryLocationInfo addInfo = preparedLocationInfo.get(relParts[1]);
+				if (addInfo == null) {
+					log.warn("Referenced boundary not known:", relParts[1]);
+					continue;
+				}
+
+				int addAdmLevel = addInfo.getAdmLevel();
+				String addAdmName = null;
+				if (addAdmLevel != BoundaryLocationPreparer.UNSET_ADMIN_LEVEL){
+					addAdmName = addInfo.getName();
+				}
+				String addZip = addInfo.getZip();
+
+				if (addAdmName != null){
+					if (locTags.get(BoundaryQuadTree.mkgmapTagsArray[addAdmLevel-1]) == null)
+						locTags.put(BoundaryQuadTree.mkgmapTagsArray[addAdmLevel-1], addAdmName);
+				}
+				if (addZip != null){
+					if (locTags.get("mkgmap:postcode") == null)
+						locTags.put("mkgmap:postcode", addZip);
+				}
+			}
+		}
+		return locTags;
+	}
+
 	/**
 	 * Fill the map preparedLocationInfo with data from the boundary tags.
 	 */
@@ -445,6 +551,27 @@ public class BoundaryQuadTree {
 			}
 		}
 
+		/**
+		 * Travel through the tree, pass all usable areas of all leaves
+		 * to the writer.
+		 * @param writer collects the areas for the compact format
+		 */
+		private void saveCompact(CompactBoundaryFile.Writer writer){
+			if (isLeaf){
+				if (nodes != null){
+					for (NodeElem nodeElem :nodes){
+						if (nodeElem.isValid())
+							writer.addArea(nodeElem.boundaryId, nodeElem.locationDataSrc, nodeElem.area);
+					}
+				}
+			}
+			else {
+				for (int i = 0; i < 4; i++){
+					childs[i].saveCompact(writer);
+				}
+			}
+		}
+
 		/**
 		 * Return boundary names relevant for the point defined by Coord 
 		 * @param co the point
@@ -480,6 +607,36 @@ public class BoundaryQuadTree {
 			return null;
 		}
 
+		/**
+		 * Find the leaf that has the point strictly inside it.
+		 * @return null if the point is on the edge of a node
+		 */
+		private Node findLeaf(Coord co){
+			Node node = this;
+			while (node.isStrictlyInside(co)){
+				if (node.isLeaf)
+					return node;
+				Node next = null;
+				for (int i = 0; i < 4; i++){
+					if (node.childs[i].isStrictlyInside(co)){
+						next = node.childs[i];
+						break;
+					}
+				}
+				if (next == null)
+					return null;
+				node = next;
+			}
+			return null;
+		}
+
+		private boolean isStrictlyInside(Coord co){
+			int lat = co.getLatitude();
+			int lon = co.getLongitude();
+			return lat > bounds.getMinLat() && lat < bounds.getMaxLat()
+					&& lon > bounds.getMinLong() && lon < bounds.getMaxLong();
+		}
+
 		/**
 		 * Return location relevant Tags for the point defined by Coord 
 		 * @param co the point
@@ -1079,53 +1236,7 @@ public class BoundaryQuadTree {
 		 * @param boundary
 		 */
 		private void calcLocTags(){
-			locTags = new Tags();
-			tagMask = 0;
-			BoundaryLocationInfo bInfo  = preparedLocationInfo.get(boundaryId);
-			if (bInfo == null){
-				log.error("unknown boundaryId " + boundaryId);
-				return;
-			}
-			if (bInfo.getZip() != null){
-				locTags.put("mkgmap:postcode",bInfo.getZip());
-			}
-			
-			if (bInfo.getAdmLevel() != BoundaryLocationPreparer.UNSET_ADMIN_LEVEL){
-				locTags.put(BoundaryQuadTree.mkgmapTagsArray[bInfo.getAdmLevel()-1], bInfo.getName());
-			}
-			if (locationDataSrc != null && locationDataSrc.isEmpty() == false){
-				// the common format of refInfo is 
-				// 2:r19884;4:r20039;6:r998818
-				String[] relBounds = locationDataSrc.split(Pattern.quote(";"));
-				for (String relBound : relBounds) {
-					String[] relParts = relBound.split(Pattern.quote(":"));
-					if (relParts.length != 2) {
-						log.error("Wrong format. Value: " + locationDataSrc);
-						continue;
-					}
-					BoundaryLocationInfo addInfo = preparedLocationInfo.get(relParts[1]);
-					if (addInfo == null) {
-						log.warn("Referenced boundary not known:", relParts[1]);
-						continue;
-					}
-
-					int addAdmLevel = addInfo.getAdmLevel();
-					String addAdmName = null;
-					if (addAdmLevel != BoundaryLocationPreparer.UNSET_ADMIN_LEVEL){
-						addAdmName = addInfo.getName();
-					}
-					String addZip = addInfo.getZip();
-
-					if (addAdmName != null){
-						if (locTags.get(BoundaryQuadTree.mkgmapTagsArray[addAdmLevel-1]) == null)
-							locTags.put(BoundaryQuadTree.mkgmapTagsArray[addAdmLevel-1], addAdmName);
-					}
-					if (addZip != null){
-						if (locTags.get("mkgmap:postcode") == null)
-							locTags.put("mkgmap:postcode", addZip);
-					}
-				}
-			}
+			locTags = BoundaryQuadTree.calcLocTags(preparedLocationInfo, boundaryId, locationDataSrc);
 			tagMask = calcLocationTagsMask();
 		}
 		
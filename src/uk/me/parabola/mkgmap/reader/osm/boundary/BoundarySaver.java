@@ -45,6 +45,7 @@ public class BoundarySaver {
 	public static final String LEGACY_DATA_FORMAT = ""; // legacy code just wrote the svn release or "svn"
 	public static final String RAW_DATA_FORMAT = "RAW";
 	public static final String QUADTREE_DATA_FORMAT = "QUADTREE";
+	public static final String COMPACT_DATA_FORMAT = "COMPACT";
 	public static final int CURRENT_RECORD_ID = 1;
 	
 	public static final double RESET_DELTA = Double.POSITIVE_INFINITY; 
@@ -117,7 +118,10 @@ public class BoundarySaver {
 		try {
 			StreamInfo streamInfo = getStream(key);
 			if (streamInfo != null && streamInfo.isOpen()) {
-				bqt.save(streamInfo.stream);
+				if (dataFormat == COMPACT_DATA_FORMAT)
+					bqt.saveCompact(streamInfo.stream);
+				else
+					bqt.save(streamInfo.stream);
 				writtenFileNames.add(boundsFileName);
 			}
 		} catch (Exception exp) {
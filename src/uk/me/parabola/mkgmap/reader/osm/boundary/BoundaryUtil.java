@@ -575,6 +575,8 @@ public class BoundaryUtil {
 						format = RAW_DATA_FORMAT_V1;
 					else if ("QUADTREE".equals(dataFormat) && recordVersion == 1)
 						format = QUADTREE_DATA_FORMAT_V1;
+					else if (BoundarySaver.COMPACT_DATA_FORMAT.equals(dataFormat))
+						throw new FormatException("The compact format can only be used to look up locations");
 				}
 				if (format == UNKNOWN_DATA_FORMAT)
 					throw new FormatException("Unsupported file format ");
@@ -0,0 +1,618 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm.boundary;
+
+import java.awt.geom.PathIterator;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import uk.me.parabola.imgfmt.app.Area;
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.log.Logger;
+import uk.me.parabola.mkgmap.reader.osm.Tags;
+import uk.me.parabola.util.EnhancedProperties;
+
+/**
+ * A bounds file in the COMPACT format.  This is made from a
+ * BoundaryQuadTree by the BoundaryPreparer and is only used to look up
+ * the location tags of points.
+ *
+ * The areas are stored as rings of integer coordinates, delta encoded.
+ * There is a table with the bounding box of each area and a grid that
+ * gives the areas that cover each cell of the file.  Only the tags are
+ * read when the file is opened, the rings of an area are only decoded when
+ * a point falls within its bounding box.  When the file is in a directory
+ * it is memory mapped rather than read.
+ *
+ * After the usual header the layout is:
+ * <pre>
+ * int minLat, minLong, maxLat, maxLong   bounds of the file
+ * int gridDim                            number of cells on each side
+ * int nBoundaries, then for each: UTF id, int nTags, nTags * (UTF key, UTF value)
+ * int nRefs, then for each: UTF refs
+ * int nAreas, then for each: int minLat, minLong, maxLat, maxLong, id index, refs index, data offset
+ * int[gridDim * gridDim + 1]             start of the list for each cell, the last is the total
+ * int * total                            area numbers for each cell
+ * int length, then the ring data
+ * </pre>
+ *
+ * @author agent
+ */
+public class CompactBoundaryFile implements BoundaryLookup {
+	private static final Logger log = Logger.getLogger(CompactBoundaryFile.class);
+
+	private static final int GRID_DIM = 16;
+	private static final int AREA_RECORD_SIZE = 7 * 4;
+
+	private final ByteBuffer buf;
+	private final String fileName;
+
+	private final Area bbox;
+	private final int gridDim;
+	private final int cellHeight;
+	private final int cellWidth;
+
+	private final String[] ids;
+	private final String[] refs;
+	private final Map<String, BoundaryLocationInfo> preparedLocationInfo = new HashMap<String, BoundaryLocationInfo>();
+
+	private final int nAreas;
+	private final int areaTablePos;
+	private final int cellStartPos;
+	private final int cellEntriesPos;
+	private final int dataPos;
+
+	// Filled in as they are needed.
+	private final AtomicReferenceArray<Tags> areaTags;
+	private final AtomicReferenceArray<int[][]> areaRings;
+
+	private CompactBoundaryFile(ByteBuffer buf, String fileName, EnhancedProperties props) throws IOException {
+		this.buf = buf;
+		this.fileName = fileName;
+
+		ByteBuffer in = buf.duplicate();
+		DataInputStream dis = new DataInputStream(new BufferInputStream(in));
+		if (!BoundarySaver.COMPACT_DATA_FORMAT.equals(readFormat(dis)))
+			throw new IOException("not in the compact format");
+
+		int minLat = dis.readInt();
+		int minLong = dis.readInt();
+		int maxLat = dis.readInt();
+		int maxLong = dis.readInt();
+		bbox = new Area(minLat, minLong, maxLat, maxLong);
+		gridDim = dis.readInt();
+		cellHeight = cellSize(minLat, maxLat, gridDim);
+		cellWidth = cellSize(minLong, maxLong, gridDim);
+
+		BoundaryLocationPreparer preparer = new BoundaryLocationPreparer(props);
+		ids = new String[dis.readInt()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = dis.readUTF();
+			Tags tags = new Tags();
+			int noOfTags = dis.readInt();
+			for (int j = 0; j < noOfTags; j++) {
+				String name = dis.readUTF();
+				String value = dis.readUTF();
+				tags.put(name, value.intern());
+			}
+			preparedLocationInfo.put(ids[i], preparer.parseTags(tags));
+		}
+
+		refs = new String[dis.readInt()];
+		for (int i = 0; i < refs.length; i++)
+			refs[i] = dis.readUTF();
+
+		nAreas = dis.readInt();
+		areaTablePos = in.position();
+		cellStartPos = areaTablePos + nAreas * AREA_RECORD_SIZE;
+		int nEntries = buf.getInt(cellStartPos + gridDim * gridDim * 4);
+		cellEntriesPos = cellStartPos + (gridDim * gridDim + 1) * 4;
+		dataPos = cellEntriesPos + nEntries * 4 + 4;
+
+		areaTags = new AtomicReferenceArray<Tags>(nAreas);
+		areaRings = new AtomicReferenceArray<int[][]>(nAreas);
+	}
+
+	/**
+	 * Open a bounds file if it is in the compact format.
+	 *
+	 * @param boundaryDirName a directory name or zip file containing the *.bnd file
+	 * @param boundaryFileName the *.bnd file name
+	 * @param props used to set the location names
+	 * @return The opened file, or null if the file does not exist or is in
+	 * one of the other formats.
+	 */
+	public static CompactBoundaryFile open(String boundaryDirName, String boundaryFileName, EnhancedProperties props) {
+		File boundaryDir = new File(boundaryDirName);
+		try {
+			ByteBuffer buf;
+			if (boundaryDir.isDirectory()) {
+				File file = new File(boundaryDir, boundaryFileName);
+				if (!file.exists())
+					return null;
+
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					if (!isCompact(new BufferInputStream(ByteBuffer.wrap(readStart(raf)))))
+						return null;
+					buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+				} finally {
+					raf.close();
+				}
+			} else if (boundaryDirName.endsWith(".zip")) {
+				ZipFile zipFile = new ZipFile(boundaryDir);
+				try {
+					ZipEntry entry = zipFile.getEntry(boundaryFileName);
+					if (entry == null || entry.getSize() < 0 || !isCompact(zipFile.getInputStream(entry)))
+						return null;
+
+					byte[] data = new byte[(int) entry.getSize()];
+					DataInputStream dis = new DataInputStream(zipFile.getInputStream(entry));
+					try {
+						dis.readFully(data);
+					} finally {
+						dis.close();
+					}
+					buf = ByteBuffer.wrap(data);
+				} finally {
+					zipFile.close();
+				}
+			} else {
+				return null;
+			}
+
+			log.info("using compact boundary file", boundaryFileName);
+			return new CompactBoundaryFile(buf, boundaryFileName, props);
+		} catch (IOException e) {
+			log.error("Cannot load boundary file " + boundaryFileName + "." + e);
+			return null;
+		}
+	}
+
+	public Tags get(Coord co) {
+		Tags res = find(co.getLatitude(), co.getLongitude());
+		if (res == null && bbox.contains(co)) {
+			// we did not find the point, probably it lies on a boundary,
+			// try again a few other nearby points as the quadtree does.
+			res = find(co.getLatitude() - 1, co.getLongitude());
+			if (res == null)
+				res = find(co.getLatitude(), co.getLongitude() - 1);
+			if (res == null)
+				res = find(co.getLatitude() + 1, co.getLongitude());
+			if (res == null)
+				res = find(co.getLatitude(), co.getLongitude() + 1);
+		}
+		return res;
+	}
+
+	public void get(Coord[] points, int from, int to, Tags[] result) {
+		for (int i = from; i < to; i++)
+			result[i] = get(points[i]);
+	}
+
+	/**
+	 * Find the first area that contains the point.  The areas in the list
+	 * for each cell are in the same order as in the quadtree.
+	 */
+	private Tags find(int lat, int lon) {
+		if (lat < bbox.getMinLat() || lat > bbox.getMaxLat()
+				|| lon < bbox.getMinLong() || lon > bbox.getMaxLong())
+			return null;
+
+		int cell = cellIndex(lat, bbox.getMinLat(), cellHeight, gridDim) * gridDim
+				+ cellIndex(lon, bbox.getMinLong(), cellWidth, gridDim);
+		int start = buf.getInt(cellStartPos + cell * 4);
+		int end = buf.getInt(cellStartPos + (cell + 1) * 4);
+		for (int i = start; i < end; i++) {
+			int area = buf.getInt(cellEntriesPos + i * 4);
+			int pos = areaTablePos + area * AREA_RECORD_SIZE;
+			if (lat < buf.getInt(pos) || lon < buf.getInt(pos + 4)
+					|| lat > buf.getInt(pos + 8) || lon > buf.getInt(pos + 12))
+				continue;
+
+			Tags tags = getTags(area);
+			if (tags.size() == 0)
+				continue;
+			if (contains(getRings(area), lat, lon))
+				return tags;
+		}
+		return null;
+	}
+
+	private Tags getTags(int area) {
+		Tags tags = areaTags.get(area);
+		if (tags == null) {
+			int pos = areaTablePos + area * AREA_RECORD_SIZE;
+			int refsIndex = buf.getInt(pos + 20);
+			tags = BoundaryQuadTree.calcLocTags(preparedLocationInfo, ids[buf.getInt(pos + 16)],
+					refsIndex < 0 ? null : refs[refsIndex]);
+			areaTags.compareAndSet(area, null, tags);
+		}
+		return tags;
+	}
+
+	private int[][] getRings(int area) {
+		int[][] rings = areaRings.get(area);
+		if (rings == null) {
+			int pos = areaTablePos + area * AREA_RECORD_SIZE;
+			ByteBuffer in = buf.duplicate();
+			in.position(dataPos + buf.getInt(pos + 24));
+
+			int lat = buf.getInt(pos);
+			int lon = buf.getInt(pos + 4);
+			rings = new int[readVarInt(in)][];
+			for (int r = 0; r < rings.length; r++) {
+				int[] ring = new int[readVarInt(in) * 2];
+				for (int i = 0; i < ring.length; i += 2) {
+					lon += readSignedVarInt(in);
+					lat += readSignedVarInt(in);
+					ring[i] = lon;
+					ring[i + 1] = lat;
+				}
+				rings[r] = ring;
+			}
+			areaRings.compareAndSet(area, null, rings);
+		}
+		return rings;
+	}
+
+	/**
+	 * Even-odd test of whether the point is inside the rings.
+	 */
+	private static boolean contains(int[][] rings, int lat, int lon) {
+		boolean inside = false;
+		for (int[] ring : rings) {
+			int n = ring.length;
+			for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+				int xi = ring[i], yi = ring[i + 1];
+				int xj = ring[j], yj = ring[j + 1];
+				if ((yi > lat) != (yj > lat)) {
+					double x = xi + (double) (xj - xi) * (lat - yi) / (yj - yi);
+					if (lon < x)
+						inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
+	public String toString() {
+		return fileName;
+	}
+
+	/**
+	 * Read the header and return the data format.
+	 */
+	private static String readFormat(DataInputStream dis) throws IOException {
+		if (!"BND".equals(dis.readUTF()))
+			return null;
+		dis.readLong();
+		int headerLength = dis.readInt();
+		byte[] header = new byte[headerLength];
+		dis.readFully(header);
+		DataInputStream headerStream = new DataInputStream(new BufferInputStream(ByteBuffer.wrap(header)));
+		return headerLength > 0 ? headerStream.readUTF() : null;
+	}
+
+	private static boolean isCompact(InputStream stream) {
+		try {
+			DataInputStream dis = new DataInputStream(stream);
+			try {
+				return BoundarySaver.COMPACT_DATA_FORMAT.equals(readFormat(dis));
+			} finally {
+				dis.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read enough of the start of the file to hold the header.
+	 */
+	private static byte[] readStart(RandomAccessFile raf) throws IOException {
+		byte[] start = new byte[(int) Math.min(raf.length(), 1024)];
+		raf.readFully(start);
+		return start;
+	}
+
+	private static int cellSize(int min, int max, int dim) {
+		return Math.max(1, (max - min + dim - 1) / dim);
+	}
+
+	private static int cellIndex(int val, int min, int size, int dim) {
+		int idx = (val - min) / size;
+		if (idx < 0)
+			return 0;
+		return Math.min(idx, dim - 1);
+	}
+
+	private static int readVarInt(ByteBuffer in) {
+		int val = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.get();
+			val |= (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return val;
+	}
+
+	private static int readSignedVarInt(ByteBuffer in) {
+		int val = readVarInt(in);
+		return (val >>> 1) ^ -(val & 1);
+	}
+
+	private static void writeVarInt(OutputStream out, int val) throws IOException {
+		while ((val & ~0x7f) != 0) {
+			out.write((val & 0x7f) | 0x80);
+			val >>>= 7;
+		}
+		out.write(val);
+	}
+
+	private static void writeSignedVarInt(OutputStream out, int val) throws IOException {
+		writeVarInt(out, (val << 1) ^ (val >> 31));
+	}
+
+	/**
+	 * Collects the boundaries and areas of a BoundaryQuadTree and writes them
+	 * in the compact format.
+	 */
+	public static class Writer {
+		private final Area bbox;
+		private final Map<String, Tags> boundaryTags = new LinkedHashMap<String, Tags>();
+		private final List<AreaPart> parts = new ArrayList<AreaPart>();
+
+		public Writer(Area bbox) {
+			this.bbox = bbox;
+		}
+
+		public void addTags(String id, Tags tags) {
+			boundaryTags.put(id, tags);
+		}
+
+		/**
+		 * Add an area.  The areas must be added in the order in which they
+		 * should be searched.
+		 */
+		public void addArea(String id, String refs, java.awt.geom.Area area) {
+			List<int[]> rings = toRings(area);
+			if (rings.isEmpty())
+				return;
+			if (!boundaryTags.containsKey(id))
+				boundaryTags.put(id, new Tags());
+			parts.add(new AreaPart(id, refs, rings));
+		}
+
+		/**
+		 * Write everything after the header.
+		 */
+		public void write(OutputStream stream) throws IOException {
+			DataOutputStream dos = new DataOutputStream(stream);
+			dos.writeInt(bbox.getMinLat());
+			dos.writeInt(bbox.getMinLong());
+			dos.writeInt(bbox.getMaxLat());
+			dos.writeInt(bbox.getMaxLong());
+			dos.writeInt(GRID_DIM);
+
+			Map<String, Integer> idIndex = new HashMap<String, Integer>();
+			dos.writeInt(boundaryTags.size());
+			for (Map.Entry<String, Tags> entry : boundaryTags.entrySet()) {
+				idIndex.put(entry.getKey(), idIndex.size());
+				dos.writeUTF(entry.getKey());
+				Tags tags = entry.getValue();
+				dos.writeInt(tags.size());
+				Iterator<Map.Entry<String, String>> tagIter = tags.entryIterator();
+				while (tagIter.hasNext()) {
+					Map.Entry<String, String> tag = tagIter.next();
+					dos.writeUTF(tag.getKey());
+					dos.writeUTF(tag.getValue());
+				}
+			}
+
+			Map<String, Integer> refsIndex = new LinkedHashMap<String, Integer>();
+			for (AreaPart part : parts) {
+				if (part.refs != null && !refsIndex.containsKey(part.refs))
+					refsIndex.put(part.refs, refsIndex.size());
+			}
+			dos.writeInt(refsIndex.size());
+			for (String refs : refsIndex.keySet())
+				dos.writeUTF(refs);
+
+			// The rings go after the index, so encode them first to get the offsets.
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			dos.writeInt(parts.size());
+			for (AreaPart part : parts) {
+				dos.writeInt(part.minLat);
+				dos.writeInt(part.minLong);
+				dos.writeInt(part.maxLat);
+				dos.writeInt(part.maxLong);
+				dos.writeInt(idIndex.get(part.id));
+				dos.writeInt(part.refs == null ? -1 : refsIndex.get(part.refs));
+				dos.writeInt(data.size());
+				part.writeRings(data);
+			}
+
+			int cellHeight = cellSize(bbox.getMinLat(), bbox.getMaxLat(), GRID_DIM);
+			int cellWidth = cellSize(bbox.getMinLong(), bbox.getMaxLong(), GRID_DIM);
+			List<List<Integer>> cells = new ArrayList<List<Integer>>();
+			for (int i = 0; i < GRID_DIM * GRID_DIM; i++)
+				cells.add(new ArrayList<Integer>());
+			for (int i = 0; i < parts.size(); i++) {
+				AreaPart part = parts.get(i);
+				int lat1 = cellIndex(part.minLat, bbox.getMinLat(), cellHeight, GRID_DIM);
+				int lat2 = cellIndex(part.maxLat, bbox.getMinLat(), cellHeight, GRID_DIM);
+				int lon1 = cellIndex(part.minLong, bbox.getMinLong(), cellWidth, GRID_DIM);
+				int lon2 = cellIndex(part.maxLong, bbox.getMinLong(), cellWidth, GRID_DIM);
+				for (int lat = lat1; lat <= lat2; lat++) {
+					for (int lon = lon1; lon <= lon2; lon++)
+						cells.get(lat * GRID_DIM + lon).add(i);
+				}
+			}
+			int nEntries = 0;
+			for (List<Integer> cell : cells) {
+				dos.writeInt(nEntries);
+				nEntries += cell.size();
+			}
+			dos.writeInt(nEntries);
+			for (List<Integer> cell : cells) {
+				for (int i : cell)
+					dos.writeInt(i);
+			}
+
+			dos.writeInt(data.size());
+			data.writeTo(dos);
+			dos.flush();
+		}
+
+		/**
+		 * Convert an area into rings of integer coordinates, without the
+		 * closing point.
+		 */
+		private static List<int[]> toRings(java.awt.geom.Area area) {
+			List<int[]> rings = new ArrayList<int[]>();
+			double[] res = new double[6];
+			int[] ring = new int[16];
+			int len = 0;
+			PathIterator pit = area.getPathIterator(null);
+			while (!pit.isDone()) {
+				int type = pit.currentSegment(res);
+				switch (type) {
+				case PathIterator.SEG_MOVETO:
+					ring[0] = (int) Math.round(res[0]);
+					ring[1] = (int) Math.round(res[1]);
+					len = 2;
+					break;
+				case PathIterator.SEG_LINETO:
+					int lon = (int) Math.round(res[0]);
+					int lat = (int) Math.round(res[1]);
+					if (len > 0 && ring[len - 2] == lon && ring[len - 1] == lat)
+						break;
+					if (len == ring.length) {
+						int[] bigger = new int[len * 2];
+						System.arraycopy(ring, 0, bigger, 0, len);
+						ring = bigger;
+					}
+					ring[len++] = lon;
+					ring[len++] = lat;
+					break;
+				case PathIterator.SEG_CLOSE:
+					if (len > 2 && ring[0] == ring[len - 2] && ring[1] == ring[len - 1])
+						len -= 2;
+					if (len >= 6) {
+						int[] copy = new int[len];
+						System.arraycopy(ring, 0, copy, 0, len);
+						rings.add(copy);
+					}
+					len = 0;
+					break;
+				default:
+					log.error("Unsupported path iterator type " + type
+							+ ". This is an mkgmap error.");
+				}
+				pit.next();
+			}
+			return rings;
+		}
+	}
+
+	private static class AreaPart {
+		private final String id;
+		private final String refs;
+		private final List<int[]> rings;
+		private int minLat = Integer.MAX_VALUE;
+		private int minLong = Integer.MAX_VALUE;
+		private int maxLat = Integer.MIN_VALUE;
+		private int maxLong = Integer.MIN_VALUE;
+
+		AreaPart(String id, String refs, List<int[]> rings) {
+			this.id = id;
+			this.refs = refs;
+			this.rings = rings;
+			for (int[] ring : rings) {
+				for (int i = 0; i < ring.length; i += 2) {
+					minLong = Math.min(minLong, ring[i]);
+					maxLong = Math.max(maxLong, ring[i]);
+					minLat = Math.min(minLat, ring[i + 1]);
+					maxLat = Math.max(maxLat, ring[i + 1]);
+				}
+			}
+		}
+
+		/**
+		 * Each point is written as the difference from the one before, the
+		 * first one from the corner of the bounding box.
+		 */
+		void writeRings(OutputStream out) throws IOException {
+			writeVarInt(out, rings.size());
+			int lastLat = minLat;
+			int lastLon = minLong;
+			for (int[] ring : rings) {
+				writeVarInt(out, ring.length / 2);
+				for (int i = 0; i < ring.length; i += 2) {
+					writeSignedVarInt(out, ring[i] - lastLon);
+					writeSignedVarInt(out, ring[i + 1] - lastLat);
+					lastLon = ring[i];
+					lastLat = ring[i + 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read from a ByteBuffer, so that the DataInputStream methods can be
+	 * used on it.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer buf;
+
+		BufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		public int read() {
+			if (!buf.hasRemaining())
+				return -1;
+			return buf.get() & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!buf.hasRemaining())
+				return -1;
+			int n = Math.min(len, buf.remaining());
+			buf.get(b, off, n);
+			return n;
+		}
+	}
+}
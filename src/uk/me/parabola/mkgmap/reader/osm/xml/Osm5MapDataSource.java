@@ -13,9 +13,12 @@
 
 package uk.me.parabola.mkgmap.reader.osm.xml;
 
+import java.io.BufferedInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -38,6 +41,7 @@ import org.xml.sax.SAXException;
  * @author Steve Ratcliffe
  */
 public class Osm5MapDataSource extends OsmMapDataSource {
+	private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
 
 	public boolean isFileSupported(String name) {
 		// This is the default format so say supported if we get this far,
@@ -54,6 +58,12 @@ public class Osm5MapDataSource extends OsmMapDataSource {
 	public void load(String name) throws FileNotFoundException, FormatException {
 		try {
 			InputStream is = Utils.openFile(name);
+			if (getConfig().getProperty("fast-osm-xml", false)) {
+				is = new BufferedInputStream(is);
+				if (loadWithScanner(is))
+					return;
+			}
+
 			SAXParserFactory parserFactory = SAXParserFactory.newInstance();
 			parserFactory.setXIncludeAware(true);
 			parserFactory.setNamespaceAware(true);
@@ -67,18 +77,13 @@ public class Osm5MapDataSource extends OsmMapDataSource {
 				handler = null;
 				
 				// parse the xml file
-				parser.parse(is, saxHandler);
-
-				elementSaver.finishLoading();
-
-				osmReadingHooks.end();
-				osmReadingHooks = null;
-				
-				// now convert the saved elements
-				elementSaver.convert(getConverter());
-
-				addBackground();
+				try {
+					parser.parse(is, saxHandler);
+				} finally {
+					Utils.closeFile(is);
+				}
 
+				finishLoading();
 			} catch (IOException e) {
 				throw new FormatException("Error reading file", e);
 			}
@@ -88,4 +93,87 @@ public class Osm5MapDataSource extends OsmMapDataSource {
 			throw new FormatException("Internal error configuring xml parser", e);
 		}
 	}
+
+	/**
+	 * Read the file with the XmlScanner instead of an XML parser, if it is
+	 * in an encoding that the scanner can read.
+	 *
+	 * @param is The file, which must support mark.
+	 * @return True if the file was read, false if it must be read by the
+	 * XML parser instead.
+	 */
+	private boolean loadWithScanner(InputStream is) {
+		try {
+			if (!isUtf8(is))
+				return false;
+
+			Osm5XmlHandler handler = new Osm5XmlHandler(getConfig());
+			Osm5XmlHandler.XmlScanner scanner = handler.new XmlScanner();
+
+			setupHandler(handler);
+			handler = null;
+
+			try {
+				scanner.parse(is);
+			} finally {
+				Utils.closeFile(is);
+			}
+
+			finishLoading();
+			return true;
+		} catch (IOException e) {
+			throw new FormatException("Error reading file", e);
+		}
+	}
+
+	private void finishLoading() {
+		elementSaver.finishLoading();
+
+		osmReadingHooks.end();
+		osmReadingHooks = null;
+
+		// now convert the saved elements
+		elementSaver.convert(getConverter());
+
+		addBackground();
+	}
+
+	/**
+	 * Look at the XML declaration at the start of the file to see if it is in
+	 * UTF-8, which is all that the XmlScanner can read.  This is the default
+	 * when there is no declaration, or no encoding in it.
+	 *
+	 * @param is The file, which must support mark.  It is reset to the start.
+	 */
+	private static boolean isUtf8(InputStream is) throws IOException {
+		byte[] start = new byte[200];
+		is.mark(start.length);
+		int len = 0;
+		int n;
+		while (len < start.length && (n = is.read(start, len, start.length - len)) > 0)
+			len += n;
+		is.reset();
+
+		// Skip a UTF-8 byte order mark
+		int off = 0;
+		if (len >= 3 && start[0] == (byte) 0xef && start[1] == (byte) 0xbb && start[2] == (byte) 0xbf)
+			off = 3;
+
+		String decl = new String(start, off, len - off, "ISO-8859-1");
+		if (!decl.startsWith("<?xml")) {
+			// either there is no declaration and it is UTF-8, or it is
+			// in some 16 bit encoding
+			return len == off || decl.charAt(0) == '<';
+		}
+
+		int end = decl.indexOf("?>");
+		if (end < 0)
+			return false;
+		Matcher m = ENCODING.matcher(decl.substring(0, end));
+		if (!m.find())
+			return true;
+
+		String encoding = m.group(1).toUpperCase();
+		return encoding.equals("UTF-8") || encoding.equals("UTF8") || encoding.equals("US-ASCII");
+	}
 }
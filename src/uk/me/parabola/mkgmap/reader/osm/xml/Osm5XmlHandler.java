@@ -13,6 +13,12 @@
 
 package uk.me.parabola.mkgmap.reader.osm.xml;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import uk.me.parabola.imgfmt.FormatException;
+import uk.me.parabola.imgfmt.Utils;
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.log.Logger;
 import uk.me.parabola.mkgmap.reader.osm.Element;
@@ -54,6 +60,43 @@ public class Osm5XmlHandler extends OsmHandler {
 
 	// Options
 	private final boolean ignoreBounds;
+
+	// Names and markers that the XmlScanner looks for.
+	private static final byte[] NODE = bytes("node");
+	private static final byte[] WAY = bytes("way");
+	private static final byte[] RELATION = bytes("relation");
+	private static final byte[] TAG = bytes("tag");
+	private static final byte[] ND = bytes("nd");
+	private static final byte[] MEMBER = bytes("member");
+	private static final byte[] BOUND = bytes("bound");
+	private static final byte[] BOUNDS = bytes("bounds");
+	private static final byte[] ID = bytes("id");
+	private static final byte[] LAT = bytes("lat");
+	private static final byte[] LON = bytes("lon");
+	private static final byte[] K = bytes("k");
+	private static final byte[] V = bytes("v");
+	private static final byte[] REF = bytes("ref");
+	private static final byte[] TYPE = bytes("type");
+	private static final byte[] ROLE = bytes("role");
+	private static final byte[] BOX = bytes("box");
+	private static final byte[] MINLAT = bytes("minlat");
+	private static final byte[] MINLON = bytes("minlon");
+	private static final byte[] MAXLAT = bytes("maxlat");
+	private static final byte[] MAXLON = bytes("maxlon");
+	private static final byte[] AMP = bytes("amp");
+	private static final byte[] LT = bytes("lt");
+	private static final byte[] GT = bytes("gt");
+	private static final byte[] QUOT = bytes("quot");
+	private static final byte[] APOS = bytes("apos");
+	private static final byte[] PI_END = bytes("?>");
+	private static final byte[] COMMENT_START = bytes("<!--");
+	private static final byte[] COMMENT_END = bytes("-->");
+	private static final byte[] CDATA_START = bytes("<![CDATA[");
+	private static final byte[] CDATA_END = bytes("]]>");
+
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+	};
 	// Current state.
 	protected Node currentNode;
 	protected Way currentWay;
@@ -103,7 +146,7 @@ public class Osm5XmlHandler extends OsmHandler {
 
 				} else if (qName.equals("relation")) {
 					mode = MODE_RELATION;
-					currentRelation = new GeneralRelation(idVal(attributes.getValue("id")));
+					startRelation(idVal(attributes.getValue("id")));
 
 				} else if (qName.equals("bound")) {
 					mode = MODE_BOUND;
@@ -115,7 +158,10 @@ public class Osm5XmlHandler extends OsmHandler {
 				} else if (qName.equals("bounds")) {
 					mode = MODE_BOUNDS;
 					if(!ignoreBounds)
-						setupBBoxFromBounds(attributes);
+						setupBBoxFromBounds(attributes.getValue("minlat"),
+								attributes.getValue("minlon"),
+								attributes.getValue("maxlat"),
+								attributes.getValue("maxlon"));
 				}
 
 			} else if (mode == MODE_NODE) {
@@ -146,20 +192,13 @@ public class Osm5XmlHandler extends OsmHandler {
 			if (mode == MODE_NODE) {
 				if (qName.equals("node")) {
 					mode = 0;
-					if (currentNode != null) {
-						saver.addNode(currentNode);
-						hooks.onAddNode(currentNode);
-					}
-					currentElementId = 0;
-					currentNode = null;
+					endNode();
 				}
 
 			} else if (mode == MODE_WAY) {
 				if (qName.equals("way")) {
 					mode = 0;
-
-					endWay(currentWay);
-					currentWay = null;
+					endWay();
 				}
 
 			} else if (mode == MODE_BOUND) {
@@ -173,16 +212,7 @@ public class Osm5XmlHandler extends OsmHandler {
 			} else if (mode == MODE_RELATION) {
 				if (qName.equals("relation")) {
 					mode = 0;
-					
-					// remove the mkgmap:tagsincomplete tags which is used in multipolygons only
-					if (currentRelation.getTag(TAGS_INCOMPLETE_TAG) != null) {
-						String type = currentRelation.getTag("type");
-						if ("multipolygon".equals(type) == false && "boundary".equals(type) == false) {
-							currentRelation.deleteTag(TAGS_INCOMPLETE_TAG);
-						}
-					}
-					
-					saver.addRelation(currentRelation);
+					endRelation();
 				}
 			}
 		}
@@ -200,37 +230,737 @@ public class Osm5XmlHandler extends OsmHandler {
 	}
 
 	/**
-	 * A new tag has been started while we are inside a node element.
-	 * @param qName The new tag name.
-	 * @param attributes Its attributes.
+	 * A reader for OSM XML files that is much quicker than a general XML
+	 * parser.
+	 *
+	 * It looks at the bytes of the file directly and only understands as much
+	 * XML as is used in OSM files.  Ids and coordinates are converted to numbers
+	 * straight from the bytes, tag keys are looked up in a small cache and tag
+	 * values are only turned into strings when the tag is going to be kept.
+	 *
+	 * The file must be in UTF-8 (or plain ASCII).  There is no support for
+	 * DTDs or XInclude and little checking that the file is well formed.
+	 *
+	 * Need an inner class here so that the top class can inherit from OsmHandler.
 	 */
-	private void startInNode(String qName, Attributes attributes) {
-		if (qName.equals("tag")) {
-			String key = attributes.getValue("k");
-			String val = attributes.getValue("v");
-
-			if("mkgmap:on-boundary".equals(key)) { // FIXME checking tag value
-				if("1".equals(val) || "true".equals(val) || "yes".equals(val)) {
-					Coord co = saver.getCoord(currentElementId);
-					co.setOnBoundary(true);
-					co.incHighwayCount();
+	public class XmlScanner {
+		private static final int BUFFER_SIZE = 64 * 1024;
+		private static final int CACHE_SIZE = 1024;
+
+		private static final int EL_OTHER = 0;
+		private static final int EL_NODE = 1;
+		private static final int EL_WAY = 2;
+		private static final int EL_RELATION = 3;
+		private static final int EL_TAG = 4;
+		private static final int EL_ND = 5;
+		private static final int EL_MEMBER = 6;
+		private static final int EL_BOUND = 7;
+		private static final int EL_BOUNDS = 8;
+
+		private InputStream in;
+
+		// The data that has been read, the next position to look at and the
+		// end of the data.
+		private byte[] buf = new byte[BUFFER_SIZE];
+		private int pos;
+		private int end;
+		// The position in the file of the start of the buffer.
+		private long offset;
+
+		private int depth;
+
+		// Start and end of the names and values of the attributes of the
+		// current element.
+		private int nattr;
+		private int[] attrs = new int[4 * 16];
+
+		private char[] chars = new char[256];
+
+		// Strings for tag keys and roles, looked up by their bytes.
+		private final byte[][] cacheBytes = new byte[CACHE_SIZE][];
+		private final String[] cacheStrings = new String[CACHE_SIZE];
+
+		/**
+		 * Read the whole of the file.
+		 * @param in The file, it is not closed here.
+		 * @throws FormatException If the file is not understood.
+		 */
+		public void parse(InputStream in) throws IOException {
+			this.in = in;
+			while (findNext('<')) {
+				if (!ensure(2))
+					throw error("Unexpected end of file");
+
+				byte c = buf[pos + 1];
+				if (c == '?') {
+					skipPast(PI_END);
+				} else if (c == '!') {
+					skipDeclaration();
+				} else if (c == '/') {
+					endTag();
+				} else {
+					startTag();
+				}
+			}
+
+			if (depth != 0)
+				throw error("Unexpected end of file");
+		}
+
+		private void startTag() throws IOException {
+			int tagEnd = findTagEnd();
+			int nameStart = pos + 1;
+			int i = nameStart;
+			while (i < tagEnd && !isSpace(buf[i]) && buf[i] != '/')
+				i++;
+			int nameEnd = i;
+
+			nattr = 0;
+			boolean empty = false;
+			while (true) {
+				while (i < tagEnd && isSpace(buf[i]))
+					i++;
+				if (i == tagEnd)
+					break;
+				if (buf[i] == '/' && i + 1 == tagEnd) {
+					empty = true;
+					break;
+				}
+				i = readAttribute(i, tagEnd);
+			}
+
+			int type = elementType(nameStart, nameEnd);
+			startElement(type);
+			if (empty)
+				endElement(type);
+			else
+				depth++;
+
+			pos = tagEnd + 1;
+		}
+
+		private void endTag() throws IOException {
+			int tagEnd = findTagEnd();
+			int nameStart = pos + 2;
+			int nameEnd = nameStart;
+			while (nameEnd < tagEnd && !isSpace(buf[nameEnd]))
+				nameEnd++;
+
+			if (--depth < 0)
+				throw error("Unexpected end tag");
+			endElement(elementType(nameStart, nameEnd));
+
+			pos = tagEnd + 1;
+		}
+
+		/**
+		 * The same as the start of an element in the SAX handler.
+		 */
+		private void startElement(int type) {
+			if (mode == 0) {
+				if (type == EL_NODE) {
+					mode = MODE_NODE;
+					int id = attribute(ID);
+					int lat = attribute(LAT);
+					int lon = attribute(LON);
+					if (id < 0 || lat < 0 || lon < 0)
+						return;
+
+					try {
+						long nodeId = toLong(id);
+						startNode(nodeId, toDouble(lat), toDouble(lon));
+					} catch (NumberFormatException e) {
+						// ignore bad numeric data. The coord will be discarded
+					}
+
+				} else if (type == EL_WAY) {
+					mode = MODE_WAY;
+					currentWay = startWay(toLong(attribute(ID)));
+
+				} else if (type == EL_RELATION) {
+					mode = MODE_RELATION;
+					startRelation(toLong(attribute(ID)));
+
+				} else if (type == EL_BOUND) {
+					mode = MODE_BOUND;
+					if (!ignoreBounds)
+						setupBBoxFromBound(value(attribute(BOX)));
+
+				} else if (type == EL_BOUNDS) {
+					mode = MODE_BOUNDS;
+					if (!ignoreBounds)
+						setupBBoxFromBounds(value(attribute(MINLAT)),
+								value(attribute(MINLON)),
+								value(attribute(MAXLAT)),
+								value(attribute(MAXLON)));
+				}
+
+			} else if (mode == MODE_NODE) {
+				if (type == EL_TAG) {
+					String key = key();
+					if (key == null)
+						return;
+					if (isKeyUsed(key) || "mkgmap:on-boundary".equals(key))
+						nodeTag(key, value(attribute(V)));
+				}
+
+			} else if (mode == MODE_WAY) {
+				if (type == EL_ND) {
+					wayNode(toLong(attribute(REF)));
+				} else if (type == EL_TAG) {
+					String key = key();
+					if (key != null)
+						wayTag(key, isKeyUsed(key) ? value(attribute(V)) : null);
+				}
+
+			} else if (mode == MODE_RELATION) {
+				if (type == EL_MEMBER) {
+					int role = attribute(ROLE);
+					relationMember(memberType(attribute(TYPE)), toLong(attribute(REF)),
+							role < 0 ? null : cachedString(attrs[4 * role + 2], attrs[4 * role + 3]));
+				} else if (type == EL_TAG) {
+					String key = key();
+					relationTag(key, key != null && isKeyUsed(key) ? value(attribute(V)) : null);
+				}
+			}
+		}
+
+		/**
+		 * The same as the end of an element in the SAX handler.
+		 */
+		private void endElement(int type) {
+			if (mode == MODE_NODE) {
+				if (type == EL_NODE) {
+					mode = 0;
+					endNode();
+				}
+
+			} else if (mode == MODE_WAY) {
+				if (type == EL_WAY) {
+					mode = 0;
+					endWay();
+				}
+
+			} else if (mode == MODE_BOUND) {
+				if (type == EL_BOUND)
+					mode = 0;
+
+			} else if (mode == MODE_BOUNDS) {
+				if (type == EL_BOUNDS)
+					mode = 0;
+
+			} else if (mode == MODE_RELATION) {
+				if (type == EL_RELATION) {
+					mode = 0;
+					endRelation();
 				}
+			}
+		}
+
+		/**
+		 * Read one attribute and save where its name and value are.
+		 * @return The position after the attribute.
+		 */
+		private int readAttribute(int i, int tagEnd) {
+			int nameStart = i;
+			while (i < tagEnd && buf[i] != '=' && !isSpace(buf[i]))
+				i++;
+			int nameEnd = i;
+			while (i < tagEnd && isSpace(buf[i]))
+				i++;
+			if (i == tagEnd || buf[i] != '=')
+				throw error("Bad attribute");
+			i++;
+			while (i < tagEnd && isSpace(buf[i]))
+				i++;
+			if (i == tagEnd || (buf[i] != '"' && buf[i] != '\''))
+				throw error("Bad attribute value");
+
+			byte quote = buf[i++];
+			int valStart = i;
+			while (buf[i] != quote)
+				i++;
+
+			if (4 * nattr == attrs.length)
+				attrs = Arrays.copyOf(attrs, attrs.length * 2);
+			int n = 4 * nattr++;
+			attrs[n] = nameStart;
+			attrs[n + 1] = nameEnd;
+			attrs[n + 2] = valStart;
+			attrs[n + 3] = i;
+			return i + 1;
+		}
+
+		/**
+		 * Find an attribute of the current element.
+		 * @return The index of the attribute, or -1 if there isn't one of that name.
+		 */
+		private int attribute(byte[] name) {
+			for (int i = 0; i < nattr; i++) {
+				if (equalBytes(attrs[4 * i], attrs[4 * i + 1], name))
+					return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * The value of an attribute as a string, null if it is missing.
+		 */
+		private String value(int attr) {
+			if (attr < 0)
+				return null;
+			return decode(attrs[4 * attr + 2], attrs[4 * attr + 3]);
+		}
+
+		/**
+		 * The key of the current tag element.
+		 */
+		private String key() {
+			int attr = attribute(K);
+			if (attr < 0)
+				return null;
+			return cachedString(attrs[4 * attr + 2], attrs[4 * attr + 3]);
+		}
+
+		/**
+		 * The member type, as one of the constant strings that are compared with.
+		 */
+		private String memberType(int attr) {
+			if (attr < 0)
+				return null;
+			int start = attrs[4 * attr + 2];
+			int valEnd = attrs[4 * attr + 3];
+			if (equalBytes(start, valEnd, WAY))
+				return "way";
+			if (equalBytes(start, valEnd, NODE))
+				return "node";
+			if (equalBytes(start, valEnd, RELATION))
+				return "relation";
+			return decode(start, valEnd);
+		}
+
+		/**
+		 * Convert an id attribute to a number.  Anything that is not a simple
+		 * number is passed to idVal(), which may make up an id for it.
+		 */
+		private long toLong(int attr) {
+			if (attr < 0)
+				return idVal(null);
+
+			int start = attrs[4 * attr + 2];
+			int valEnd = attrs[4 * attr + 3];
+			int i = start;
+			boolean neg = false;
+			if (i < valEnd && buf[i] == '-') {
+				neg = true;
+				i++;
+			}
+			if (i == valEnd || valEnd - i > 18)
+				return idVal(decode(start, valEnd));
+
+			long val = 0;
+			for (; i < valEnd; i++) {
+				int d = buf[i] - '0';
+				if (d < 0 || d > 9)
+					return idVal(decode(start, valEnd));
+				val = val * 10 + d;
+			}
+			return neg ? -val : val;
+		}
+
+		/**
+		 * Convert a coordinate attribute to a number.
+		 *
+		 * A plain decimal number with up to 15 digits is exactly the integer
+		 * formed from its digits divided by a power of ten, and both of those
+		 * are exact doubles, so the division gives the same correctly rounded
+		 * result as Double.parseDouble().  Anything else is given to
+		 * Double.parseDouble().
+		 *
+		 * @throws NumberFormatException If it is not a number.
+		 */
+		private double toDouble(int attr) {
+			int start = attrs[4 * attr + 2];
+			int valEnd = attrs[4 * attr + 3];
+			int i = start;
+			boolean neg = false;
+			if (i < valEnd && buf[i] == '-') {
+				neg = true;
+				i++;
+			}
+
+			long val = 0;
+			int ndigits = 0;
+			int scale = -1;
+			for (; i < valEnd; i++) {
+				int c = buf[i];
+				if (c >= '0' && c <= '9') {
+					val = val * 10 + c - '0';
+					if (++ndigits > 15)
+						return Double.parseDouble(decode(start, valEnd));
+					if (scale >= 0)
+						scale++;
+				} else if (c == '.' && scale < 0) {
+					scale = 0;
+				} else {
+					return Double.parseDouble(decode(start, valEnd));
+				}
+			}
+			if (ndigits == 0)
+				return Double.parseDouble(decode(start, valEnd));
+
+			double d = scale > 0 ? val / POWERS_OF_TEN[scale] : val;
+			return neg ? -d : d;
+		}
+
+		/**
+		 * Get the string for a range of bytes from the cache, or decode it and
+		 * put it in the cache.  Used for things like tag keys that have only a
+		 * few different values.
+		 */
+		private String cachedString(int start, int strEnd) {
+			int h = 0;
+			for (int i = start; i < strEnd; i++)
+				h = 31 * h + buf[i];
+			int slot = (h ^ (h >>> 16)) & (CACHE_SIZE - 1);
+
+			byte[] bytes = cacheBytes[slot];
+			if (bytes != null && equalBytes(start, strEnd, bytes))
+				return cacheStrings[slot];
+
+			String s = decode(start, strEnd);
+			cacheBytes[slot] = Arrays.copyOfRange(buf, start, strEnd);
+			cacheStrings[slot] = s;
+			return s;
+		}
+
+		/**
+		 * Decode an attribute value from UTF-8, replacing character and entity
+		 * references and normalising white space as XML requires.
+		 */
+		private String decode(int start, int strEnd) {
+			if (chars.length < strEnd - start)
+				chars = new char[Math.max(strEnd - start, 2 * chars.length)];
+
+			int n = 0;
+			int i = start;
+			while (i < strEnd) {
+				int b = buf[i] & 0xff;
+				if (b < 0x80) {
+					if (b == '&') {
+						i = decodeReference(i, strEnd);
+						n += Character.toChars(codePoint, chars, n);
+						continue;
+					}
+					if (b == '\r') {
+						// a cr lf pair is a single new line
+						if (i + 1 < strEnd && buf[i + 1] == '\n')
+							i++;
+						b = ' ';
+					} else if (b == '\n' || b == '\t') {
+						b = ' ';
+					}
+					chars[n++] = (char) b;
+					i++;
+				} else {
+					int cp;
+					if (b >= 0xc0 && b < 0xe0 && i + 1 < strEnd) {
+						cp = (b & 0x1f) << 6 | buf[i + 1] & 0x3f;
+						i += 2;
+					} else if (b >= 0xe0 && b < 0xf0 && i + 2 < strEnd) {
+						cp = (b & 0x0f) << 12 | (buf[i + 1] & 0x3f) << 6 | buf[i + 2] & 0x3f;
+						i += 3;
+					} else if (b >= 0xf0 && b < 0xf8 && i + 3 < strEnd) {
+						cp = (b & 0x07) << 18 | (buf[i + 1] & 0x3f) << 12 | (buf[i + 2] & 0x3f) << 6
+								| buf[i + 3] & 0x3f;
+						i += 4;
+					} else {
+						cp = 0xfffd;
+						i++;
+					}
+					if (cp > Character.MAX_CODE_POINT)
+						cp = 0xfffd;
+					n += Character.toChars(cp, chars, n);
+				}
+			}
+			return new String(chars, 0, n);
+		}
+
+		// The character found by decodeReference()
+		private int codePoint;
+
+		/**
+		 * Decode a character or entity reference such as &amp;amp; or &amp;#38;
+		 * The character is saved in codePoint.
+		 * @return The position after the reference.
+		 */
+		private int decodeReference(int start, int strEnd) {
+			int semi = start + 1;
+			while (semi < strEnd && buf[semi] != ';')
+				semi++;
+			if (semi == strEnd)
+				throw error("Bad reference");
+
+			int nameStart = start + 1;
+			if (equalBytes(nameStart, semi, AMP))
+				codePoint = '&';
+			else if (equalBytes(nameStart, semi, LT))
+				codePoint = '<';
+			else if (equalBytes(nameStart, semi, GT))
+				codePoint = '>';
+			else if (equalBytes(nameStart, semi, QUOT))
+				codePoint = '"';
+			else if (equalBytes(nameStart, semi, APOS))
+				codePoint = '\'';
+			else if (semi > nameStart + 1 && buf[nameStart] == '#') {
+				int radix = 10;
+				int i = nameStart + 1;
+				if (buf[i] == 'x') {
+					radix = 16;
+					i++;
+				}
+				int cp = 0;
+				for (; i < semi; i++) {
+					int d = Character.digit(buf[i], radix);
+					if (d < 0 || cp > Character.MAX_CODE_POINT)
+						throw error("Bad character reference");
+					cp = cp * radix + d;
+				}
+				if (cp > Character.MAX_CODE_POINT)
+					throw error("Bad character reference");
+				codePoint = cp;
+			} else {
+				throw error("Unknown entity");
+			}
+			return semi + 1;
+		}
+
+		/**
+		 * Skip comments, CDATA sections and declarations such as DOCTYPE,
+		 * which may have square brackets around its internal subset.
+		 */
+		private void skipDeclaration() throws IOException {
+			if (ensure(4) && equalBytes(pos, pos + 4, COMMENT_START)) {
+				skipPast(COMMENT_END);
 				return;
 			}
+			if (ensure(9) && equalBytes(pos, pos + 9, CDATA_START)) {
+				skipPast(CDATA_END);
+				return;
+			}
+
+			int level = 0;
+			int i = 2;
+			while (true) {
+				if (!ensure(i + 1))
+					throw error("Unexpected end of file");
+				byte b = buf[pos + i];
+				if (b == '[')
+					level++;
+				else if (b == ']')
+					level--;
+				else if (b == '>' && level <= 0)
+					break;
+				i++;
+			}
+			pos += i + 1;
+		}
 
-			// We only want to create a full node for nodes that are POI's
-			// and not just one point of a way.  Only create if it has tags that
-			// could be used in a POI.
-			key = keepTag(key, val);
-			if (key != null) {
-				if (currentNode == null) {
-					Coord co = saver.getCoord(currentElementId);
-					currentNode = new Node(currentElementId, co);
+		/**
+		 * Move past the next occurrence of the given bytes.
+		 */
+		private void skipPast(byte[] marker) throws IOException {
+			int i = 2;
+			while (true) {
+				if (!ensure(i + marker.length))
+					throw error("Unexpected end of file");
+				if (equalBytes(pos + i, pos + i + marker.length, marker))
+					break;
+				i++;
+			}
+			pos += i + marker.length;
+		}
+
+		/**
+		 * Find the '>' at the end of the tag that starts at the current
+		 * position, skipping over any in quoted attribute values.  The whole
+		 * tag will then be in the buffer.
+		 */
+		private int findTagEnd() throws IOException {
+			byte quote = 0;
+			int i = 1;
+			while (true) {
+				if (!ensure(i + 1))
+					throw error("Unexpected end of file");
+				byte b = buf[pos + i];
+				if (quote != 0) {
+					if (b == quote)
+						quote = 0;
+				} else if (b == '"' || b == '\'') {
+					quote = b;
+				} else if (b == '>') {
+					return pos + i;
 				}
+				i++;
+			}
+		}
 
-				currentNode.addTag(key, val.intern());
+		/**
+		 * Move to the next occurrence of the given byte, reading more of the
+		 * file as required.  Text between elements is skipped this way.
+		 * @return False at the end of the file.
+		 */
+		private boolean findNext(char c) throws IOException {
+			while (true) {
+				for (int i = pos; i < end; i++) {
+					if (buf[i] == c) {
+						pos = i;
+						return true;
+					}
+				}
+				pos = end;
+				if (!fill())
+					return false;
 			}
 		}
+
+		/**
+		 * Make sure that the buffer holds the given number of bytes from the
+		 * current position.  Reading more can move the data in the buffer, so
+		 * positions must be kept relative to the current position until this
+		 * has been done.
+		 * @return False if the end of the file comes first.
+		 */
+		private boolean ensure(int len) throws IOException {
+			while (pos + len > end) {
+				if (!fill())
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Read more of the file into the buffer, first moving the data from the
+		 * current position to the start of the buffer.  The buffer is made
+		 * larger if it is already full, which only happens with huge elements.
+		 * @return False at the end of the file.
+		 */
+		private boolean fill() throws IOException {
+			if (pos > 0) {
+				System.arraycopy(buf, pos, buf, 0, end - pos);
+				offset += pos;
+				end -= pos;
+				pos = 0;
+			}
+			if (end == buf.length)
+				buf = Arrays.copyOf(buf, 2 * buf.length);
+
+			int n = in.read(buf, end, buf.length - end);
+			if (n < 0)
+				return false;
+			end += n;
+			return true;
+		}
+
+		private FormatException error(String msg) {
+			return new FormatException(msg + " near byte " + (offset + pos));
+		}
+
+		private int elementType(int start, int nameEnd) {
+			switch (nameEnd - start) {
+			case 2:
+				return equalBytes(start, nameEnd, ND) ? EL_ND : EL_OTHER;
+			case 3:
+				if (equalBytes(start, nameEnd, WAY))
+					return EL_WAY;
+				return equalBytes(start, nameEnd, TAG) ? EL_TAG : EL_OTHER;
+			case 4:
+				return equalBytes(start, nameEnd, NODE) ? EL_NODE : EL_OTHER;
+			case 5:
+				return equalBytes(start, nameEnd, BOUND) ? EL_BOUND : EL_OTHER;
+			case 6:
+				if (equalBytes(start, nameEnd, MEMBER))
+					return EL_MEMBER;
+				return equalBytes(start, nameEnd, BOUNDS) ? EL_BOUNDS : EL_OTHER;
+			case 8:
+				return equalBytes(start, nameEnd, RELATION) ? EL_RELATION : EL_OTHER;
+			default:
+				return EL_OTHER;
+			}
+		}
+
+		private boolean equalBytes(int start, int bytesEnd, byte[] bytes) {
+			if (bytesEnd - start != bytes.length)
+				return false;
+			for (int i = 0; i < bytes.length; i++) {
+				if (buf[start + i] != bytes[i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+	}
+
+	private static byte[] bytes(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte) s.charAt(i);
+		return b;
+	}
+
+	/**
+	 * A new tag has been started while we are inside a node element.
+	 * @param qName The new tag name.
+	 * @param attributes Its attributes.
+	 */
+	private void startInNode(String qName, Attributes attributes) {
+		if (qName.equals("tag"))
+			nodeTag(attributes.getValue("k"), attributes.getValue("v"));
+	}
+
+	/**
+	 * A tag of the current node.
+	 * @param key The tag key.
+	 * @param val The tag value.  This may be null if the key is not used,
+	 * see isKeyUsed().
+	 */
+	private void nodeTag(String key, String val) {
+		if("mkgmap:on-boundary".equals(key)) { // FIXME checking tag value
+			if("1".equals(val) || "true".equals(val) || "yes".equals(val)) {
+				Coord co = saver.getCoord(currentElementId);
+				co.setOnBoundary(true);
+				co.incHighwayCount();
+			}
+			return;
+		}
+
+		// We only want to create a full node for nodes that are POI's
+		// and not just one point of a way.  Only create if it has tags that
+		// could be used in a POI.
+		key = keepTag(key, val);
+		if (key != null) {
+			if (currentNode == null) {
+				Coord co = saver.getCoord(currentElementId);
+				currentNode = new Node(currentElementId, co);
+			}
+
+			currentNode.addTag(key, val);
+		}
+	}
+
+	/**
+	 * The end of the current node element.
+	 */
+	private void endNode() {
+		if (currentNode != null) {
+			saver.addNode(currentNode);
+			hooks.onAddNode(currentNode);
+		}
+		currentElementId = 0;
+		currentNode = null;
 	}
 
 	/**
@@ -240,17 +970,38 @@ public class Osm5XmlHandler extends OsmHandler {
 	 */
 	private void startInWay(String qName, Attributes attributes) {
 		if (qName.equals("nd")) {
-			long id = idVal(attributes.getValue("ref"));
-			addCoordToWay(currentWay, id);
+			wayNode(idVal(attributes.getValue("ref")));
 		} else if (qName.equals("tag")) {
-			String key = attributes.getValue("k");
-			String val = attributes.getValue("v");
-			key = keepTag(key, val);
-			if (key != null)
-				currentWay.addTag(key, val.intern());
+			wayTag(attributes.getValue("k"), attributes.getValue("v"));
 		}
 	}
 
+	/**
+	 * A tag of the current way.
+	 * @param key The tag key.
+	 * @param val The tag value.  This may be null if the key is not used.
+	 */
+	private void wayTag(String key, String val) {
+		key = keepTag(key, val);
+		if (key != null)
+			currentWay.addTag(key, val);
+	}
+
+	/**
+	 * A node reference within the current way.
+	 */
+	private void wayNode(long id) {
+		addCoordToWay(currentWay, id);
+	}
+
+	/**
+	 * The end of the current way element.
+	 */
+	private void endWay() {
+		endWay(currentWay);
+		currentWay = null;
+	}
+
 	/**
 	 * A new tag has been started while we are inside the relation tag.
 	 * @param qName The new tag name.
@@ -258,55 +1009,92 @@ public class Osm5XmlHandler extends OsmHandler {
 	 */
 	private void startInRelation(String qName, Attributes attributes) {
 		if (qName.equals("member")) {
-			long id = idVal(attributes.getValue("ref"));
-			Element el;
-			String type = attributes.getValue("type");
-			if ("way".equals(type)){
-				el = saver.getWay(id);
-			} else if ("node".equals(type)) {
-				el = saver.getNode(id);
-				if(el == null) {
-					// we didn't make a node for this point earlier,
-					// do it now (if it exists)
-					Coord co = saver.getCoord(id);
-					if(co != null) {
-						el = new Node(id, co);
-						saver.addNode((Node)el);
-					}
-				}
-			} else if ("relation".equals(type)) {
-				el = saver.getRelation(id);
-				if (el == null) {
-					saver.deferRelation(id, currentRelation, attributes.getValue("role"));
-				}
-			} else
-				el = null;
-			if (el != null) // ignore non existing ways caused by splitting files
-				currentRelation.addElement(attributes.getValue("role"), el);
+			relationMember(attributes.getValue("type"), idVal(attributes.getValue("ref")),
+					attributes.getValue("role"));
 		} else if (qName.equals("tag")) {
-			String key = attributes.getValue("k");
-			String val = attributes.getValue("v");
-			key = keepTag(key, val);
-			if (key == null) {
-				currentRelation.addTag(TAGS_INCOMPLETE_TAG, "true");
-			} else {
-				currentRelation.addTag(key, val.intern());
+			relationTag(attributes.getValue("k"), attributes.getValue("v"));
+		}
+	}
+
+	/**
+	 * A new relation element has been seen.
+	 */
+	private void startRelation(long id) {
+		currentRelation = new GeneralRelation(id);
+	}
+
+	/**
+	 * A member of the current relation.
+	 * @param type The type of the member; node, way or relation.
+	 * @param id The id of the member.
+	 * @param role The role of the member.
+	 */
+	private void relationMember(String type, long id, String role) {
+		Element el;
+		if ("way".equals(type)){
+			el = saver.getWay(id);
+		} else if ("node".equals(type)) {
+			el = saver.getNode(id);
+			if(el == null) {
+				// we didn't make a node for this point earlier,
+				// do it now (if it exists)
+				Coord co = saver.getCoord(id);
+				if(co != null) {
+					el = new Node(id, co);
+					saver.addNode((Node)el);
+				}
+			}
+		} else if ("relation".equals(type)) {
+			el = saver.getRelation(id);
+			if (el == null) {
+				saver.deferRelation(id, currentRelation, role);
+			}
+		} else
+			el = null;
+		if (el != null) // ignore non existing ways caused by splitting files
+			currentRelation.addElement(role, el);
+	}
+
+	/**
+	 * A tag of the current relation.
+	 * @param key The tag key.
+	 * @param val The tag value.  This may be null if the key is not used.
+	 */
+	private void relationTag(String key, String val) {
+		key = keepTag(key, val);
+		if (key == null) {
+			currentRelation.addTag(TAGS_INCOMPLETE_TAG, "true");
+		} else {
+			currentRelation.addTag(key, val);
+		}
+	}
+
+	/**
+	 * The end of the current relation element.
+	 */
+	private void endRelation() {
+		// remove the mkgmap:tagsincomplete tags which is used in multipolygons only
+		if (currentRelation.getTag(TAGS_INCOMPLETE_TAG) != null) {
+			String type = currentRelation.getTag("type");
+			if ("multipolygon".equals(type) == false && "boundary".equals(type) == false) {
+				currentRelation.deleteTag(TAGS_INCOMPLETE_TAG);
 			}
 		}
+
+		saver.addRelation(currentRelation);
 	}
 
 	/**
 	 * Set a bounding box from the bounds element.
 	 * There are two ways of specifying a bounding box in the XML format, this
 	 * one uses attributes of the element to give the bounds.
-	 * @param xmlattr The bounds element attributes.
 	 */
-	private void setupBBoxFromBounds(Attributes xmlattr) {
+	private void setupBBoxFromBounds(String minlat, String minlon, String maxlat, String maxlon) {
 		try {
-			setBBox(Double.parseDouble(xmlattr.getValue("minlat")),
-					Double.parseDouble(xmlattr.getValue("minlon")),
-					Double.parseDouble(xmlattr.getValue("maxlat")),
-					Double.parseDouble(xmlattr.getValue("maxlon")));
+			setBBox(Double.parseDouble(minlat),
+					Double.parseDouble(minlon),
+					Double.parseDouble(maxlat),
+					Double.parseDouble(maxlon));
 		} catch (NumberFormatException e) {
 			// just ignore it
 			log.warn("NumberformatException: Cannot read bbox");
@@ -343,15 +1131,20 @@ public class Osm5XmlHandler extends OsmHandler {
 		
 		try {
 			long id = idVal(sid);
-
-			Coord co = new Coord(Double.parseDouble(slat), Double.parseDouble(slon));
-			saver.addPoint(id, co);
-			currentElementId = id;
+			startNode(id, Double.parseDouble(slat), Double.parseDouble(slon));
 		} catch (NumberFormatException e) {
 			// ignore bad numeric data. The coord will be discarded
 		}
 	}
 
+	/**
+	 * Save the location of a node.
+	 */
+	private void startNode(long id, double lat, double lon) {
+		saver.addPoint(id, Utils.toMapUnit(lat), Utils.toMapUnit(lon));
+		currentElementId = id;
+	}
+
 	/**
 	 * A new way element has been seen.
 	 * @param sid The way id as a string.
@@ -138,6 +138,8 @@ public class PolishMapDataSource extends MapperBasedMapDataSource implements Loa
             restrictionHelper.processAndAddRestrictions(roadHelper, mapper);
 		} catch (IOException e) {
 			throw new FormatException("Reading file failed", e);
+		} finally {
+			Utils.closeFile(in);
 		}
 
 		addBackground(havePolygon4B);
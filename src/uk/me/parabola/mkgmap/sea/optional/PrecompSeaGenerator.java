@@ -76,6 +76,8 @@ public class PrecompSeaGenerator {
 	private final MathTransform transformation;
 	/** {@code true}: sea tiles are created with PBF format; {@code false}: sea tiles are created with .osm.gz format */
 	private boolean usePbfFormat;
+	/** {@code true}: sea tiles are created with the compact format that is read without an OSM reader */
+	private boolean useCompactFormat;
 	/** Number of tiles generated by one full reading of the shapefile. Higher numbers require more memory. */
 	private int tilesPerCycle;
 
@@ -99,6 +101,16 @@ public class PrecompSeaGenerator {
 		this.usePbfFormat = usePbf;
 	}
 
+	/**
+	 * Sets the flag if the compact format should be used for the precompiled
+	 * sea tiles.  It is much quicker to read than the OSM formats, but can
+	 * only be used by mkgmap versions that know it.
+	 * @param useCompact {@code true} use the compact format
+	 */
+	public void setUseCompactFormat(boolean useCompact) {
+		this.useCompactFormat = useCompact;
+	}
+
 	/**
 	 * Retrieves the transformation that is necessary to transform the 
 	 * data from the shape file to WGS84. 
@@ -310,7 +322,7 @@ public class PrecompSeaGenerator {
 
 		// start the saver thread that stores the tiles to disc and creates
 		// the index file
-		PrecompSeaSaver precompSaver = new PrecompSeaSaver(outputDir, usePbfFormat);
+		PrecompSeaSaver precompSaver = new PrecompSeaSaver(outputDir, usePbfFormat, useCompactFormat);
 		new Thread(precompSaver, "SaveThread").start();
 
 		// perform several cycles which is necessary to reduce memory
@@ -437,6 +449,16 @@ public class PrecompSeaGenerator {
 		
 		PrecompSeaGenerator seaGenerator = new PrecompSeaGenerator(shapeFile,
 				shapeCRS, outputDir);
+		if (args.length > 3) {
+			// the optional format of the tiles: pbf (default), osm or compact
+			String format = args[3];
+			if ("osm".equals(format))
+				seaGenerator.setUsePbfFormat(false);
+			else if ("compact".equals(format))
+				seaGenerator.setUseCompactFormat(true);
+			else if ("pbf".equals(format) == false)
+				throw new IllegalArgumentException("Unknown tile format " + format + ", use pbf, osm or compact");
+		}
 		seaGenerator.runSeaGeneration();
 
 		System.out.println("Generation took "+(System.currentTimeMillis()-t1)+" ms");
@@ -34,6 +34,7 @@ import java.util.zip.GZIPOutputStream;
 import uk.me.parabola.imgfmt.Utils;
 import uk.me.parabola.imgfmt.app.Coord;
 import uk.me.parabola.mkgmap.reader.osm.FakeIdGenerator;
+import uk.me.parabola.mkgmap.reader.osm.PrecompSeaFile;
 import uk.me.parabola.mkgmap.reader.osm.SeaGenerator;
 import uk.me.parabola.mkgmap.reader.osm.Way;
 import uk.me.parabola.splitter.BinaryMapWriter;
@@ -50,15 +51,17 @@ class PrecompSeaSaver implements Runnable {
 	private final Map<Integer, String> idMapping;
 	private int nextId = 0;
 	private final boolean usePbf;
+	private final boolean useCompact;
 
 	private final File outputDir;
 	
 	private final BlockingQueue<Entry<String, List<Way>>> saveQueue = new LinkedBlockingQueue<Entry<String, List<Way>>>();
 
-	public PrecompSeaSaver(File outputDir, boolean usePbf) {
+	public PrecompSeaSaver(File outputDir, boolean usePbf, boolean useCompact) {
 		this.outputDir = outputDir;
 		finishWait = new CountDownLatch(1);
 		this.usePbf = usePbf;
+		this.useCompact = useCompact;
 		idMapping = new HashMap<Integer, String>();
 		index = new TreeMap<String, String>();
 		this.outputDir.mkdirs();
@@ -104,6 +107,8 @@ class PrecompSeaSaver implements Runnable {
 					Way singleWay = tileData.getValue().get(0);
 					String naturalTag = singleWay.getTag("natural");
 					index.put(tileData.getKey(), naturalTag);
+				} else if (useCompact) {
+					writeCompact(tileData.getKey(), tileData.getValue());
 				} else {
 					String ext = (usePbf ? "pbf" : "gz");
 					index.put(tileData.getKey(), "sea_" + tileData.getKey()
@@ -168,6 +173,25 @@ class PrecompSeaSaver implements Runnable {
 		finishWait.countDown();
 	}
 	
+	/**
+	 * Write the tile in the compact format, which mkgmap reads straight
+	 * into coordinates.
+	 */
+	private void writeCompact(String key, List<Way> ways) {
+		String[] parts = key.split(Pattern.quote("_"));
+		PrecompSeaFile.Writer writer = new PrecompSeaFile.Writer(
+				Integer.valueOf(parts[0]), Integer.valueOf(parts[1]));
+		writer.addWays(ways);
+
+		String fileName = "sea_" + key + PrecompSeaFile.EXTENSION;
+		try {
+			writer.write(new File(outputDir, fileName));
+			index.put(key, fileName);
+		} catch (IOException exp) {
+			exp.printStackTrace();
+		}
+	}
+
 	private void writeIndex() {
 		try {
 			PrintWriter indexWriter = new PrintWriter(
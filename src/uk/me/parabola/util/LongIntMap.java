@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to int values that does not box either of them.
+ * It is meant for mapping ids to an index into a list, so the values must
+ * not be negative.
+ *
+ * The entries are held in two arrays with open addressing, a value of
+ * zero in the value array marks a free slot, so the values are stored
+ * one higher than they really are.
+ *
+ * @author agent
+ */
+public class LongIntMap {
+	/** Returned by get() when there is no value for the key */
+	public static final int NOT_FOUND = -1;
+
+	private static final int INIT_CAPACITY = 16;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	// Grow when the size reaches this.
+	private int limit;
+
+	public LongIntMap() {
+		this(INIT_CAPACITY);
+	}
+
+	/**
+	 * @param expected The number of entries that is expected, the map
+	 * will not need to grow until there are more than this.
+	 */
+	public LongIntMap(int expected) {
+		int capacity = INIT_CAPACITY;
+		while (capacity * 3 / 4 < expected)
+			capacity <<= 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * Get the value for a key.
+	 * @return The value or NOT_FOUND if there is none.
+	 */
+	public int get(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			int v = values[i];
+			if (v == 0)
+				return NOT_FOUND;
+			if (keys[i] == key)
+				return v - 1;
+		}
+	}
+
+	/**
+	 * Set the value for a key.
+	 * @param value The value, it must not be negative.
+	 * @return The previous value or NOT_FOUND if there was none.
+	 */
+	public int put(long key, int value) {
+		if (value < 0 || value == Integer.MAX_VALUE)
+			throw new IllegalArgumentException("value out of range: " + value);
+
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != 0) {
+			if (keys[i] == key) {
+				int old = values[i] - 1;
+				values[i] = value + 1;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value + 1;
+		if (++size >= limit)
+			grow();
+		return NOT_FOUND;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != NOT_FOUND;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(values, 0);
+		size = 0;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length * 2);
+
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == 0)
+				continue;
+			int i = hash(oldKeys[j]) & mask;
+			while (values[i] != 0)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = oldValues[j];
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		limit = capacity * 3 / 4;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9e3779b97f4a7c15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on a thread of its own, ahead of the reader.
+ *
+ * This is used for compressed input files, so that the file is
+ * decompressed at the same time as it is parsed.  The data is passed over
+ * in large buffers, which are reused once the reader has finished with
+ * them, so only a fixed amount of memory is used however large the file.
+ *
+ * The stream must be closed, otherwise the thread waits for ever for its
+ * next buffer to be freed.
+ *
+ * @author agent
+ */
+public class ReadAheadInputStream extends InputStream {
+	private static final int BUFFER_SIZE = 256 * 1024;
+	private static final int NBUFFERS = 4;
+
+	private final InputStream source;
+	private final Thread thread;
+
+	// Buffers that are ready to be filled, and those that are ready to read.
+	private final BlockingQueue<Chunk> free;
+	private final BlockingQueue<Chunk> full;
+
+	// The buffer that is being read, and the position in it.
+	private Chunk current;
+	private int pos;
+
+	private volatile boolean closed;
+
+	public ReadAheadInputStream(InputStream source) {
+		this(source, BUFFER_SIZE, NBUFFERS);
+	}
+
+	/**
+	 * @param source The stream to read from.
+	 * @param bufferSize The size of each buffer.
+	 * @param nbuffers The number of buffers, this is how far the thread
+	 * can get ahead of the reader.
+	 */
+	public ReadAheadInputStream(InputStream source, int bufferSize, int nbuffers) {
+		this.source = source;
+		free = new ArrayBlockingQueue<Chunk>(nbuffers);
+		full = new ArrayBlockingQueue<Chunk>(nbuffers + 1);
+		for (int i = 0; i < nbuffers; i++)
+			free.add(new Chunk(bufferSize));
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				fill();
+			}
+		}, "read-ahead");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs on the read ahead thread.  Fills each free buffer and hands it
+	 * over, until the end of the source or an error, which is handed over
+	 * in the same way.  The source is closed here, so that it is never
+	 * closed while it is being read.
+	 */
+	private void fill() {
+		try {
+			while (!closed) {
+				Chunk chunk = free.take();
+				chunk.length = 0;
+				while (chunk.length < chunk.data.length && !closed) {
+					int n = source.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+					if (n < 0)
+						break;
+					chunk.length += n;
+				}
+				if (chunk.length > 0)
+					full.put(chunk);
+				if (chunk.length < chunk.data.length) {
+					full.put(Chunk.END);
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed by the reader
+		} catch (Throwable e) {
+			// Anything at all must be passed on, or the reader would wait for
+			// ever for the next buffer.
+			if (!closed)
+				full.offer(new Chunk(e));
+		} finally {
+			try {
+				source.close();
+			} catch (IOException e) {
+				// nothing more can be read anyway
+			}
+		}
+	}
+
+	public int read() throws IOException {
+		if (!fillCurrent())
+			return -1;
+		return current.data[pos++] & 0xff;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fillCurrent())
+			return -1;
+		int n = Math.min(len, current.length - pos);
+		System.arraycopy(current.data, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	public int available() {
+		return current == null ? 0 : current.length - pos;
+	}
+
+	/**
+	 * Make sure there is something left to read in the current buffer,
+	 * waiting for the next one if necessary.
+	 * @return False at the end of the stream.
+	 */
+	private boolean fillCurrent() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+		if (current != null && pos < current.length)
+			return true;
+		if (current == Chunk.END)
+			return false;
+
+		if (current != null)
+			free.add(current);
+		try {
+			current = full.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		pos = 0;
+
+		if (current.error != null) {
+			Throwable e = current.error;
+			current = Chunk.END;
+			if (e instanceof IOException)
+				throw (IOException) e;
+			throw new IOException("Error reading ahead", e);
+		}
+		return current != Chunk.END;
+	}
+
+	/**
+	 * Stop the read ahead thread, which then closes the source.
+	 */
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		thread.interrupt();
+	}
+
+	/**
+	 * A buffer and how much of it is filled.  Or the end of the stream or
+	 * an error.
+	 */
+	private static class Chunk {
+		private static final Chunk END = new Chunk(0);
+
+		private final byte[] data;
+		private final Throwable error;
+		private int length;
+
+		Chunk(int size) {
+			data = new byte[size];
+			error = null;
+		}
+
+		Chunk(Throwable error) {
+			data = new byte[0];
+			this.error = error;
+		}
+	}
+}
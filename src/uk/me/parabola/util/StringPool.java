@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shares equal strings, like String.intern() but with a limited size and
+ * lifetime.
+ *
+ * String.intern() uses a single table for the whole program, so the strings
+ * stay in it after they are no longer needed.  A pool is just an ordinary
+ * object, so it and the strings in it can be collected when it is finished
+ * with, for example at the end of a run.
+ *
+ * The pool is split into a number of parts, each with its own lock, so that
+ * the threads making different tiles can use it at the same time.  When a
+ * part is full the string in it that was used least recently is dropped,
+ * so the common ones stay in the pool.  A later equal string will then be
+ * a different copy, which uses a little more memory but is still correct.
+ *
+ * @author agent
+ */
+public class StringPool {
+	private static final int NSTRIPES = 16;
+
+	private final Stripe[] stripes = new Stripe[NSTRIPES];
+
+	/**
+	 * @param maxSize The most strings that are kept in the pool.
+	 */
+	public StringPool(int maxSize) {
+		int stripeSize = Math.max(1, maxSize / NSTRIPES);
+		for (int i = 0; i < NSTRIPES; i++)
+			stripes[i] = new Stripe(stripeSize);
+	}
+
+	/**
+	 * Get the shared copy of a string.
+	 *
+	 * @param s The string to look up, may be null.
+	 * @return A string equal to s.  If an equal string is in the pool, then
+	 * that one is returned, otherwise s is added to the pool and returned.
+	 */
+	public String get(String s) {
+		if (s == null)
+			return null;
+
+		int h = s.hashCode();
+		Stripe stripe = stripes[(h ^ (h >>> 16)) & (NSTRIPES - 1)];
+		synchronized (stripe) {
+			String old = stripe.strings.get(s);
+			if (old != null) {
+				stripe.hits++;
+				return old;
+			}
+			stripe.misses++;
+			stripe.strings.put(s, s);
+			return s;
+		}
+	}
+
+	/**
+	 * @return The number of strings that are in the pool.
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.strings.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return The number of times a string was found in the pool.
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				hits += stripe.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return The number of times a string was not in the pool and was added.
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				misses += stripe.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return The percentage of lookups that found the string in the pool.
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0.0 : 100.0 * hits / total;
+	}
+
+	public String toString() {
+		return String.format("%d strings, %d lookups, %.1f%% found", size(),
+				getHits() + getMisses(), getHitRate());
+	}
+
+	/**
+	 * One part of the pool.  The map is kept in access order and drops the
+	 * string used least recently when it is full.
+	 */
+	private static class Stripe {
+		private final Map<String, String> strings;
+		private long hits;
+		private long misses;
+
+		Stripe(final int maxSize) {
+			strings = new LinkedHashMap<String, String>(16, 0.75f, true) {
+				protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.me.parabola.imgfmt.MapFailedException;
+import uk.me.parabola.log.Logger;
+
+/**
+ * Things that are needed wherever work is shared out between threads.
+ *
+ * @author agent
+ */
+public class ThreadUtils {
+	private static final Logger log = Logger.getLogger(ThreadUtils.class);
+
+	private ThreadUtils() {
+	}
+
+	/**
+	 * Get the number of threads to use from an option of the form
+	 * --name[=number].  Without a value the number of processors is used.
+	 *
+	 * @param props The options.
+	 * @param option The name of the option.
+	 * @return The number of threads, which is one if the option is not
+	 * given or is not valid.
+	 */
+	public static int getThreadCount(EnhancedProperties props, String option) {
+		String val = props.getProperty(option);
+		if (val == null)
+			return 1;
+		if (val.isEmpty())
+			return Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(1, Integer.parseInt(val));
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for " + option, val);
+			return 1;
+		}
+	}
+
+	/**
+	 * Make daemon threads, so that a pool that is not shut down does not stop
+	 * the program from exiting.
+	 *
+	 * @param name The threads are called name-1, name-2 and so on.
+	 */
+	public static ThreadFactory daemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + '-' + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Wait for a task to finish and get its result.
+	 *
+	 * If the task failed, its exception is thrown here.  Unchecked exceptions
+	 * and errors are thrown as they are; anything else, and being
+	 * interrupted, is thrown as a MapFailedException.
+	 *
+	 * @param future The task.
+	 * @param what What the task does, for the message, eg. "sort the index".
+	 * @return The result of the task.
+	 */
+	public static <T> T waitFor(Future<T> future, String what) {
+		return waitFor(future, RuntimeException.class, what);
+	}
+
+	/**
+	 * Wait for a task to finish and get its result, as
+	 * {@link #waitFor(Future, String)}, but a checked exception of the given
+	 * type is thrown as it is.
+	 *
+	 * @param future The task.
+	 * @param thrown The type of checked exception that the task can throw.
+	 * @param what What the task does, for the message.
+	 * @return The result of the task.
+	 * @throws E If the task threw it.
+	 */
+	public static <T, E extends Exception> T waitFor(Future<T> future, Class<E> thrown, String what) throws E {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MapFailedException("Interrupted while waiting to " + what);
+		} catch (ExecutionException e) {
+			// A task that waits for other tasks can fail with their exception
+			Throwable cause = e.getCause();
+			while (cause instanceof ExecutionException && cause.getCause() != null)
+				cause = cause.getCause();
+
+			if (thrown.isInstance(cause))
+				throw thrown.cast(cause);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new MapFailedException("Failed to " + what, cause);
+		}
+	}
+}
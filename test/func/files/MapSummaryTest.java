@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package func.files;
+
+import java.io.File;
+import java.util.Arrays;
+
+import uk.me.parabola.imgfmt.app.map.MapSummary;
+import uk.me.parabola.mkgmap.combiners.FileInfo;
+import uk.me.parabola.mkgmap.main.Main;
+
+import func.Base;
+import func.lib.Args;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The summary that is saved with a map must give the same information as
+ * reading the map itself.
+ */
+public class MapSummaryTest extends Base {
+
+	@Test
+	public void testSameAsImg() throws Exception {
+		Main.main(new String[]{
+				Args.TEST_STYLE_ARG,
+				"--route",
+				"--map-summary",
+				"--copyright-message=test copyright",
+				Args.TEST_RESOURCE_OSM + "uk-test-1.osm.gz"
+		});
+
+		File summaryFile = new File(Args.DEF_MAP_FILENAME + MapSummary.EXTENSION);
+		assertTrue("summary created", summaryFile.exists());
+		assertNotNull("summary used", MapSummary.read(Args.DEF_MAP_FILENAME));
+		FileInfo fromSummary = FileInfo.getFileInfo(Args.DEF_MAP_FILENAME);
+
+		assertTrue(summaryFile.delete());
+		FileInfo fromImg = FileInfo.getFileInfo(Args.DEF_MAP_FILENAME);
+
+		assertEquals(fromImg.getKind(), fromSummary.getKind());
+		assertEquals(fromImg.getMapname(), fromSummary.getMapname());
+		assertEquals(fromImg.getDescription(), fromSummary.getDescription());
+		assertEquals(fromImg.getInnername(), fromSummary.getInnername());
+		assertEquals(fromImg.getHexname(), fromSummary.getHexname());
+		assertEquals(fromImg.getBounds(), fromSummary.getBounds());
+		assertEquals(Arrays.asList(fromImg.getCopyrights()), Arrays.asList(fromSummary.getCopyrights()));
+		assertEquals(fromImg.getCodePage(), fromSummary.getCodePage());
+		assertEquals(fromImg.hasSortOrder(), fromSummary.hasSortOrder());
+
+		assertEquals(fromImg.getTresize(), fromSummary.getTresize());
+		assertEquals(fromImg.getRgnsize(), fromSummary.getRgnsize());
+		assertEquals(fromImg.getLblsize(), fromSummary.getLblsize());
+		assertEquals(fromImg.getNetsize(), fromSummary.getNetsize());
+		assertEquals(fromImg.getNodsize(), fromSummary.getNodsize());
+		assertEquals(fromImg.getNumBlocks(512), fromSummary.getNumBlocks(512));
+		assertEquals(fromImg.getNumHeaderEntries(512), fromSummary.getNumHeaderEntries(512));
+	}
+
+	/**
+	 * A summary is not used once the map has changed.
+	 */
+	@Test
+	public void testOutOfDate() throws Exception {
+		Main.main(new String[]{
+				Args.TEST_STYLE_ARG,
+				"--map-summary",
+				Args.TEST_RESOURCE_OSM + "uk-test-1.osm.gz"
+		});
+		assertNotNull(MapSummary.read(Args.DEF_MAP_FILENAME));
+
+		File img = new File(Args.DEF_MAP_FILENAME);
+		assertTrue(img.setLastModified(img.lastModified() - 10000));
+		assertNull(MapSummary.read(Args.DEF_MAP_FILENAME));
+	}
+
+	/**
+	 * The summary is only saved when it is asked for.  A summary left from
+	 * an earlier run is removed.
+	 */
+	@Test
+	public void testNotByDefault() throws Exception {
+		Main.main(new String[]{
+				Args.TEST_STYLE_ARG,
+				"--map-summary",
+				Args.TEST_RESOURCE_OSM + "uk-test-1.osm.gz"
+		});
+		File summaryFile = new File(Args.DEF_MAP_FILENAME + MapSummary.EXTENSION);
+		assertTrue(summaryFile.exists());
+
+		Main.main(new String[]{
+				Args.TEST_STYLE_ARG,
+				Args.TEST_RESOURCE_OSM + "uk-test-1.osm.gz"
+		});
+		assertFalse(summaryFile.exists());
+	}
+}
@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import uk.me.parabola.imgfmt.app.map.MapSummary;
 import uk.me.parabola.mkgmap.general.LevelInfo;
 import uk.me.parabola.mkgmap.main.Main;
 import uk.me.parabola.mkgmap.osmstyle.RuleFileReader;
@@ -68,6 +69,11 @@ public class TestUtils {
 
 			if (f.exists())
 				assertTrue("delete existing file", f.delete());
+
+			// the summary that is saved with each map
+			f = new File(fname + MapSummary.EXTENSION);
+			if (f.exists())
+				assertTrue("delete existing file", f.delete());
 		}
 	}
 
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.imgfmt.app;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import uk.me.parabola.imgfmt.FileSystemParam;
+import uk.me.parabola.imgfmt.fs.FileSystem;
+import uk.me.parabola.imgfmt.fs.ImgChannel;
+import uk.me.parabola.imgfmt.sys.ImgFS;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MappedImgFileReaderTest {
+	private static final int BLOCK_SIZE = 512;
+
+	private File file;
+	private byte[] data;
+
+	/**
+	 * Write a file whose blocks are not all together, by writing another
+	 * file part of the way through.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("mapped", ".img");
+		data = new byte[3000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 7 + i / 253);
+
+		FileSystemParam params = new FileSystemParam();
+		params.setBlockSize(BLOCK_SIZE);
+		FileSystem fs = ImgFS.createFs(file.getPath(), params);
+		ImgChannel first = fs.create("TESTMAP1.RGN");
+		first.write(ByteBuffer.wrap(data, 0, 1024));
+		ImgChannel second = fs.create("TESTMAP2.RGN");
+		second.write(ByteBuffer.wrap(new byte[700]));
+		second.close();
+		first.write(ByteBuffer.wrap(data, 1024, data.length - 1024));
+		first.close();
+		fs.close();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testSameAsBuffered() throws Exception {
+		compareReaders();
+	}
+
+	/**
+	 * The same with every byte of the img file XORed.
+	 */
+	@Test
+	public void testXor() throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		byte[] all = new byte[(int) raf.length()];
+		raf.readFully(all);
+		for (int i = 0; i < all.length; i++)
+			all[i] ^= 0x5a;
+		raf.seek(0);
+		raf.write(all);
+		raf.close();
+
+		compareReaders();
+	}
+
+	@Test
+	public void testGetBytes() throws Exception {
+		FileSystem fs = ImgFS.openFs(file.getPath());
+		try {
+			ImgFileReader reader = new MappedImgFileReader(fs.open("TESTMAP1.RGN", "r"));
+			reader.position(1000);
+			byte[] bytes = reader.get(100);
+			for (int i = 0; i < bytes.length; i++)
+				assertEquals(data[1000 + i], bytes[i]);
+			assertEquals(1100, reader.position());
+
+			// past the end
+			reader.position(data.length - 2);
+			bytes = reader.get(4);
+			assertEquals(data[data.length - 1], bytes[1]);
+			assertEquals(0, bytes[2]);
+			assertEquals(0, reader.get());
+			assertEquals(data.length, reader.position());
+			reader.close();
+		} finally {
+			fs.close();
+		}
+	}
+
+	/**
+	 * Read values at every position of the file, including those that are
+	 * split between runs of blocks, and compare with the buffered reader.
+	 */
+	private void compareReaders() throws Exception {
+		FileSystem fs = ImgFS.openFs(file.getPath());
+		try {
+			ImgFileReader buffered = new BufferedImgFileReader(fs.open("TESTMAP1.RGN", "r"));
+			ImgFileReader mapped = new MappedImgFileReader(fs.open("TESTMAP1.RGN", "r"));
+			for (int pos = 0; pos < data.length; pos++) {
+				assertEquals(data[pos], get(mapped, pos).get());
+				assertEquals("char at " + pos, get(buffered, pos).getChar(), get(mapped, pos).getChar());
+				assertEquals("3 bytes at " + pos, get(buffered, pos).get3(), get(mapped, pos).get3());
+				assertEquals("u3 at " + pos, get(buffered, pos).getu3(), get(mapped, pos).getu3());
+				assertEquals("int at " + pos, get(buffered, pos).getInt(), get(mapped, pos).getInt());
+			}
+			buffered.close();
+			mapped.close();
+		} finally {
+			fs.close();
+		}
+	}
+
+	private static ImgFileReader get(ImgFileReader reader, int pos) {
+		reader.position(pos);
+		return reader;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.imgfmt.app.mdr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.me.parabola.imgfmt.app.srt.Sort;
+import uk.me.parabola.imgfmt.app.srt.SortKey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MdrUtilsTest {
+
+	/**
+	 * Sorting on several threads must give exactly the same order as on one,
+	 * including the order of records that compare equal.
+	 */
+	@Test
+	public void testParallelSortSameAsSingle() {
+		Sort sort = Sort.defaultSort(1252);
+
+		Random random = new Random(5);
+		List<Mdr7Record> streets = new ArrayList<Mdr7Record>();
+		for (int i = 0; i < 120000; i++) {
+			Mdr7Record r = new Mdr7Record();
+			r.setName("Street " + random.nextInt(1000));
+			r.setMapIndex(1 + random.nextInt(3));
+			streets.add(r);
+		}
+
+		List<SortKey<Mdr7Record>> single = MdrUtils.sortList(sort, streets);
+		List<SortKey<Mdr7Record>> parallel = MdrUtils.sortList(sort, streets, 3);
+
+		assertEquals(single.size(), parallel.size());
+		for (int i = 0; i < single.size(); i++)
+			assertSame("record " + i, single.get(i).getObject(), parallel.get(i).getObject());
+	}
+}
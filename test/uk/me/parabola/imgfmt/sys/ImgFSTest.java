@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.imgfmt.sys;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import uk.me.parabola.imgfmt.FileSystemParam;
+import uk.me.parabola.imgfmt.fs.FileSystem;
+import uk.me.parabola.imgfmt.fs.ImgChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImgFSTest {
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("imgfs", ".img");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Write files that cover several blocks in single writes and read
+	 * them back.
+	 */
+	@Test
+	public void testWriteMultipleBlocks() throws Exception {
+		FileSystemParam params = new FileSystemParam();
+		params.setBlockSize(512);
+		FileSystem fs = ImgFS.createFs(file.getPath(), params);
+
+		byte[] first = makeData(3000, 1);
+		byte[] second = makeData(1100, 7);
+
+		ImgChannel chan = fs.create("TESTMAP1.RGN");
+		chan.write(ByteBuffer.wrap(first, 0, 1000));
+		chan.write(ByteBuffer.wrap(first, 1000, 2000));
+		chan.close();
+
+		chan = fs.create("TESTMAP2.RGN");
+		chan.write(ByteBuffer.wrap(second));
+		chan.close();
+		fs.close();
+
+		fs = ImgFS.openFs(file.getPath());
+		assertArrayEquals(first, read(fs, "TESTMAP1.RGN", first.length));
+		assertArrayEquals(second, read(fs, "TESTMAP2.RGN", second.length));
+		fs.close();
+	}
+
+	/**
+	 * Copy a file between file systems with different block sizes.
+	 */
+	@Test
+	public void testTransferFrom() throws Exception {
+		FileSystemParam params = new FileSystemParam();
+		params.setBlockSize(512);
+		FileSystem fs = ImgFS.createFs(file.getPath(), params);
+		byte[] data = makeData(5000, 3);
+		ImgChannel chan = fs.create("TESTMAP1.RGN");
+		chan.write(ByteBuffer.wrap(data));
+		chan.close();
+		fs.close();
+
+		File out = File.createTempFile("imgfs", ".img");
+		try {
+			params = new FileSystemParam();
+			params.setBlockSize(2048);
+			FileSystem outfs = ImgFS.createFs(out.getPath(), params);
+
+			fs = ImgFS.openFs(file.getPath());
+			ImgChannel fin = fs.open("TESTMAP1.RGN", "r");
+			FileNode fout = (FileNode) outfs.create("TESTMAP1.RGN");
+			assertEquals(data.length, fout.transferFrom(fin));
+			fin.close();
+			fout.close();
+			fs.close();
+			outfs.close();
+
+			outfs = ImgFS.openFs(out.getPath());
+			assertArrayEquals(data, read(outfs, "TESTMAP1.RGN", data.length));
+			outfs.close();
+		} finally {
+			out.delete();
+		}
+	}
+
+	private static byte[] read(FileSystem fs, String name, int size) throws Exception {
+		assertEquals("size of " + name, size, fs.lookup(name).getSize());
+
+		ImgChannel chan = fs.open(name, "r");
+		ByteBuffer buf = ByteBuffer.allocate(size);
+		while (buf.hasRemaining()) {
+			if (chan.read(buf) < 0)
+				break;
+			buf.limit(size);
+		}
+		chan.close();
+		return buf.array();
+	}
+
+	private static byte[] makeData(int size, int seed) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i * seed + i / 251);
+		return data;
+	}
+}
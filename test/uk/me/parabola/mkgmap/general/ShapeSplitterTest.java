@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.general;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.me.parabola.imgfmt.app.Area;
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.util.Java2DConverter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShapeSplitterTest {
+
+	/**
+	 * A U shape cut across its arms gives one piece below the line and
+	 * two above it.
+	 */
+	@Test
+	public void testSplitConcave() {
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		List<List<Coord>> more = new ArrayList<List<Coord>>();
+		assertTrue(ShapeSplitter.split(uShape(), 20, false, less, more));
+
+		assertEquals("pieces below", 1, less.size());
+		assertEquals("pieces above", 2, more.size());
+		assertEquals(30 * 20 - 10 * 10, area(less.get(0)));
+		assertEquals(10 * 10, area(more.get(0)));
+		assertEquals(10 * 10, area(more.get(1)));
+
+		for (List<Coord> piece : more) {
+			assertEquals("closed", piece.get(0), piece.get(piece.size() - 1));
+			for (Coord co : piece)
+				assertTrue(co.getLatitude() >= 20);
+		}
+	}
+
+	/**
+	 * The original points are kept when they are not cut off.
+	 */
+	@Test
+	public void testPointsKept() {
+		List<Coord> points = uShape();
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		assertTrue(ShapeSplitter.split(points, 20, false, less, null));
+		assertTrue(less.get(0).contains(points.get(0)));
+		for (Coord co : less.get(0)) {
+			if (co.equals(points.get(0)))
+				assertSame(points.get(0), co);
+		}
+	}
+
+	/**
+	 * Clipping a U shape to a box that cuts off the bottom leaves the
+	 * two arms.
+	 */
+	@Test
+	public void testClipToBounds() {
+		List<List<Coord>> shapes = ShapeSplitter.clipToBounds(uShape(), new Area(15, -5, 40, 35));
+		assertNotNull(shapes);
+		assertEquals(2, shapes.size());
+		assertEquals(15 * 10, area(shapes.get(0)));
+		assertEquals(15 * 10, area(shapes.get(1)));
+	}
+
+	/**
+	 * A shape entirely outside the box is removed.
+	 */
+	@Test
+	public void testClipOutside() {
+		List<List<Coord>> shapes = ShapeSplitter.clipToBounds(uShape(), new Area(100, 100, 200, 200));
+		assertNotNull(shapes);
+		assertTrue(shapes.isEmpty());
+	}
+
+	/**
+	 * A square with a hole in the middle, cut through the hole, gives a
+	 * U shaped piece on each side.
+	 */
+	@Test
+	public void testSplitWithHole() {
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		List<List<Coord>> more = new ArrayList<List<Coord>>();
+		assertTrue(ShapeSplitter.splitRings(squareWithHole(), 15, false, less, more));
+
+		assertEquals("pieces below", 1, less.size());
+		assertEquals("pieces above", 1, more.size());
+		assertEquals(30 * 15 - 10 * 5, area(less.get(0)));
+		assertEquals(30 * 15 - 10 * 5, area(more.get(0)));
+	}
+
+	/**
+	 * The pieces cannot have holes, so a hole that is not cut fails.
+	 */
+	@Test
+	public void testSplitMissesHole() {
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		List<List<Coord>> more = new ArrayList<List<Coord>>();
+		assertFalse(ShapeSplitter.splitRings(squareWithHole(), 5, false, less, more));
+		assertTrue(less.isEmpty());
+		assertTrue(more.isEmpty());
+	}
+
+	/**
+	 * A bow tie crosses itself and has no area, so it is not split here and
+	 * the clipper falls back to Area, which keeps the left hand triangle.
+	 */
+	@Test
+	public void testBowTie() {
+		List<List<Coord>> less = new ArrayList<List<Coord>>();
+		List<List<Coord>> more = new ArrayList<List<Coord>>();
+		assertFalse(ShapeSplitter.split(bowTie(), 40, true, less, more));
+		assertFalse("not cut", ShapeSplitter.split(bowTie(), 200, true, less, more));
+		assertTrue(less.isEmpty());
+		assertTrue(more.isEmpty());
+
+		Area bbox = new Area(-10, -10, 110, 40);
+		assertNull(ShapeSplitter.clipToBounds(bowTie(), bbox));
+
+		List<List<Coord>> shapes = PolygonClipper.clip(bbox, bowTie());
+		assertNotNull(shapes);
+		assertEquals(1, shapes.size());
+		assertEquals((100 + 20) / 2 * 40, area(shapes.get(0)));
+	}
+
+	/**
+	 * A 30 unit square with a 10 unit hole in the middle, as the outline
+	 * and hole of an area.
+	 */
+	private static List<List<Coord>> squareWithHole() {
+		java.awt.geom.Area area = new java.awt.geom.Area(new Rectangle(0, 0, 30, 30));
+		area.subtract(new java.awt.geom.Area(new Rectangle(10, 10, 10, 10)));
+		List<List<Coord>> rings = Java2DConverter.areaToShapes(area);
+		assertEquals(2, rings.size());
+		return rings;
+	}
+
+	/**
+	 * A U shape, 30 units wide and high with a notch 10 wide and 20 deep
+	 * in the top.
+	 */
+	private static List<Coord> uShape() {
+		return new ArrayList<Coord>(Arrays.asList(
+				new Coord(0, 0),
+				new Coord(0, 30),
+				new Coord(30, 30),
+				new Coord(30, 20),
+				new Coord(10, 20),
+				new Coord(10, 10),
+				new Coord(30, 10),
+				new Coord(30, 0),
+				new Coord(0, 0)
+		));
+	}
+
+	/**
+	 * Two triangles 100 units high, on the left and the right, that meet at
+	 * a point in the middle.
+	 */
+	private static List<Coord> bowTie() {
+		return new ArrayList<Coord>(Arrays.asList(
+				new Coord(0, 0),
+				new Coord(100, 100),
+				new Coord(0, 100),
+				new Coord(100, 0),
+				new Coord(0, 0)
+		));
+	}
+
+	private static long area(List<Coord> points) {
+		long area = 0;
+		for (int i = 1; i < points.size(); i++) {
+			Coord p1 = points.get(i - 1);
+			Coord p2 = points.get(i);
+			area += (long) p1.getLongitude() * p2.getLatitude() - (long) p2.getLongitude() * p1.getLatitude();
+		}
+		return Math.abs(area / 2);
+	}
+}
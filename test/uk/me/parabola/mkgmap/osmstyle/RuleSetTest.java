@@ -338,6 +338,61 @@ public class RuleSetTest {
 		assertEquals("second element", 0x6, list.get(1).getType());
 	}
 
+	/**
+	 * When the rules are compiled, a test that is shared between rules
+	 * must be run again after an action changes the tags.
+	 */
+	@Test
+	public void testCompiledSeesChangedTag() {
+		RuleSet rs = makeRuleSet("a=b & c=d [0x1]" +
+				"a=b {set c=d}" +
+				"a=b & c=d [0x2]");
+		rs.compile();
+
+		Way el = new Way(1);
+		el.addTag("a", "b");
+		GType type = getFirstType(rs, el);
+		assertNotNull("should be found", type);
+		assertEquals("matched after the tag was set", 2, type.getType());
+	}
+
+	@Test
+	public void testCompiledContinueChangesTag() {
+		RuleSet rs = makeRuleSet("highway=crossing & crossing=zebra_crossing" +
+				"    {set highway=deleted_crossing} [0x4004 resolution 24 continue propagate]" +
+				"highway=crossing [0x610f resolution 24 continue]" +
+				"highway=deleted_crossing [0x6 resolution 24 continue]"
+		);
+		rs.compile();
+
+		for (int i = 0; i < 2; i++) {
+			Way el = new Way(1);
+			el.addTag("highway", "crossing");
+			el.addTag("crossing", "zebra_crossing");
+
+			List<GType> list = resolveList(rs, el);
+			assertEquals("number of results", 2, list.size());
+			assertEquals("first element", 0x4004, list.get(0).getType());
+			assertEquals("second element", 0x6, list.get(1).getType());
+		}
+	}
+
+	@Test
+	public void testCompiledMaxspeed() {
+		RuleSet rs = makeRuleSet(MAXSPEED_EXAMPLE);
+		rs.compile();
+
+		Way el = new Way(1);
+		el.addTag("highway", "primary");
+		el.addTag("maxspeed", "40mph");
+		assertEquals("maxspeed rule", 1, getFirstType(rs, el).getType());
+
+		el = new Way(2);
+		el.addTag("highway", "primary");
+		el.addTag("maxspeed", "30mph");
+		assertEquals("plain primary", 3, getFirstType(rs, el).getType());
+	}
+
 	private List<GType> resolveList(RuleSet rs, Way el) {
 		final List<GType> list = new ArrayList<GType>();
 		rs.resolveType(el, new TypeResult() {
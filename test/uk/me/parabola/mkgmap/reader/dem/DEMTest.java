@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.dem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.me.parabola.imgfmt.app.Area;
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.mkgmap.reader.osm.Node;
+import uk.me.parabola.mkgmap.reader.osm.OsmConverter;
+import uk.me.parabola.mkgmap.reader.osm.Relation;
+import uk.me.parabola.mkgmap.reader.osm.Way;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DEMTest {
+	private static final List<Integer> LEVELS = Arrays.asList(100, 150, 200, 250, 300, 350, 400);
+
+	/**
+	 * Tracing the levels on several threads, where each thread has a DEM of
+	 * its own that only has heights once it has been read, gives the same
+	 * lines as tracing them one after the other.
+	 */
+	@Test
+	public void testLevelsInParallel() {
+		HillDEM dem = new HillDEM();
+		DEM.Isolines lines = dem.new Isolines(dem, 0.01, 0.01, 0.06, 0.06);
+		List<List<Coord>> expected = new ArrayList<List<Coord>>();
+		for (int level : LEVELS) {
+			lines.addLevel(level);
+			for (DEM.Isolines.Isoline line : lines.isolines)
+				expected.add(line.points);
+			lines.isolines.clear();
+		}
+		assertFalse(expected.isEmpty());
+
+		HillDEM first = new HillDEM();
+		List<DEM.Isolines> workers = new ArrayList<DEM.Isolines>();
+		workers.add(first.new Isolines(first, 0.01, 0.01, 0.06, 0.06));
+		for (int i = 1; i < 3; i++) {
+			HillDEM other = new HillDEM();
+			workers.add(other.new Isolines(other, workers.get(0)));
+		}
+
+		WayCollector collector = new WayCollector();
+		DEM.addLevelsInParallel(workers, LEVELS, collector);
+		assertEquals(expected, collector.lines);
+	}
+
+	/**
+	 * A round hill.  Like the GeoTIFF DEMs, it has no heights until the area
+	 * has been read.
+	 */
+	private static class HillDEM extends DEM {
+		private double[][] heights;
+		private int minX;
+		private int minY;
+
+		protected double ele(int x, int y) {
+			return heights[x - minX][y - minY];
+		}
+
+		protected void read(int minLon, int minLat, int maxLon, int maxLat) {
+			minX = minLon;
+			minY = minLat;
+			heights = new double[maxLon - minLon + 1][maxLat - minLat + 1];
+			for (int x = minLon; x <= maxLon; x++) {
+				for (int y = minLat; y <= maxLat; y++) {
+					double dx = x - 40.3;
+					double dy = y - 41.7;
+					heights[x - minLon][y - minLat] = 500 - (dx * dx + 2 * dy * dy) / 4;
+				}
+			}
+		}
+	}
+
+	private static class WayCollector implements OsmConverter {
+		private final List<List<Coord>> lines = new ArrayList<List<Coord>>();
+
+		public void convertWay(Way way) {
+			lines.add(way.getPoints());
+		}
+
+		public void convertNode(Node node) {
+		}
+
+		public void convertRelation(Relation relation) {
+		}
+
+		public void setBoundingBox(Area bbox) {
+		}
+
+		public void end() {
+		}
+	}
+}
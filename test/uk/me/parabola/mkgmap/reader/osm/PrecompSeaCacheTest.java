@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrecompSeaCacheTest {
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("precomp", "");
+		dir.delete();
+		dir.mkdir();
+
+		Writer index = new FileWriter(new File(dir, "index.txt"));
+		index.write("# lat_lon;tile\n");
+		index.write("0_0;sea\n");
+		for (int i = 1; i <= 3; i++) {
+			index.write("0_" + i * SeaGenerator.PRECOMP_RASTER + ";tile" + i + ".osm\n");
+			writeTile(new File(dir, "tile" + i + ".osm"), i);
+		}
+		index.close();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testIndex() throws IOException {
+		PrecompSeaCache cache = new PrecompSeaCache(Long.MAX_VALUE);
+		Map<String, String> index = cache.getIndex(dir);
+		assertEquals(4, index.size());
+		assertEquals("sea", index.get("0_0"));
+		assertEquals("tile2.osm", index.get("0_" + 2 * SeaGenerator.PRECOMP_RASTER));
+		assertSame(index, cache.getIndex(dir));
+	}
+
+	/**
+	 * The tiles are read together, and each one is only read once.
+	 */
+	@Test
+	public void testLoadTiles() throws IOException {
+		PrecompSeaCache cache = new PrecompSeaCache(Long.MAX_VALUE);
+		List<File> files = new ArrayList<File>();
+		for (int i = 1; i <= 3; i++)
+			files.add(new File(dir, "tile" + i + ".osm"));
+
+		List<PrecompSeaCache.SeaTile> tiles = cache.get(files);
+		assertEquals(3, tiles.size());
+		for (int i = 0; i < 3; i++) {
+			assertNotNull(tiles.get(i));
+			assertEquals(2, tiles.get(i).getWayCount());
+			assertSame(tiles.get(i), cache.get(files.get(i)));
+		}
+	}
+
+	/**
+	 * Each use of a tile gives new ways, and the ways that share a point in
+	 * the tile share a Coord.
+	 */
+	@Test
+	public void testCreateWays() throws IOException {
+		PrecompSeaCache cache = new PrecompSeaCache(Long.MAX_VALUE);
+		PrecompSeaCache.SeaTile tile = cache.get(new File(dir, "tile1.osm"));
+
+		List<Way> first = tile.createWays();
+		List<Way> second = tile.createWays();
+		assertEquals(2, first.size());
+		assertNotSame(first.get(0), second.get(0));
+		assertNotSame(first.get(0).getPoints().get(0), second.get(0).getPoints().get(0));
+		assertTrue(first.get(0).getId() != second.get(0).getId());
+
+		Way land = "land".equals(first.get(0).getTag("natural")) ? first.get(0) : first.get(1);
+		Way sea = land == first.get(0) ? first.get(1) : first.get(0);
+		assertEquals("sea", sea.getTag("natural"));
+		assertTrue(land.isClosed());
+		assertSame(land.getPoints().get(1), sea.getPoints().get(0));
+
+		first.get(0).addTag("natural", "changed");
+		assertFalse("changed".equals(tile.createWays().get(0).getTag("natural")));
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		PrecompSeaCache cache = new PrecompSeaCache(0);
+		File file1 = new File(dir, "tile1.osm");
+		PrecompSeaCache.SeaTile tile = cache.get(file1);
+		assertSame(tile, cache.get(file1));
+
+		cache.get(new File(dir, "tile2.osm"));
+		assertNotSame(tile, cache.get(file1));
+	}
+
+	@Test
+	public void testMissingTile() {
+		PrecompSeaCache cache = new PrecompSeaCache(Long.MAX_VALUE);
+		List<File> files = new ArrayList<File>();
+		files.add(new File(dir, "tile1.osm"));
+		files.add(new File(dir, "missing.osm"));
+		files.add(new File(dir, "tile2.osm"));
+
+		List<PrecompSeaCache.SeaTile> tiles = cache.get(files);
+		assertNotNull(tiles.get(0));
+		assertNull(tiles.get(1));
+		assertNotNull(tiles.get(2));
+	}
+
+	/**
+	 * Write a tile with a land and a sea polygon that share two points.
+	 */
+	private static void writeTile(File file, int n) throws IOException {
+		Writer w = new FileWriter(file);
+		w.write("<?xml version='1.0' encoding='UTF-8'?>\n<osm version='0.6'>\n");
+		double lon = n * 0.7;
+		w.write("<node id='1' lat='0.0' lon='" + lon + "'/>\n");
+		w.write("<node id='2' lat='0.0' lon='" + (lon + 0.3) + "'/>\n");
+		w.write("<node id='3' lat='0.6' lon='" + (lon + 0.3) + "'/>\n");
+		w.write("<node id='4' lat='0.6' lon='" + lon + "'/>\n");
+		w.write("<node id='5' lat='0.0' lon='" + (lon + 0.6) + "'/>\n");
+		w.write("<node id='6' lat='0.6' lon='" + (lon + 0.6) + "'/>\n");
+		w.write("<way id='1'><nd ref='1'/><nd ref='2'/><nd ref='3'/><nd ref='4'/><nd ref='1'/>"
+				+ "<tag k='natural' v='land'/></way>\n");
+		w.write("<way id='2'><nd ref='2'/><nd ref='5'/><nd ref='6'/><nd ref='3'/><nd ref='2'/>"
+				+ "<tag k='natural' v='sea'/></way>\n");
+		w.write("</osm>\n");
+		w.close();
+	}
+}
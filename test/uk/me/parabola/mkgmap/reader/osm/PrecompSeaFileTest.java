@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.me.parabola.imgfmt.FormatException;
+import uk.me.parabola.imgfmt.app.Coord;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrecompSeaFileTest {
+	private static final int MIN_LAT = 2359296;
+	private static final int MIN_LONG = -32768;
+
+	/**
+	 * Write a land and a sea polygon and read them back.  The points that
+	 * the polygons share are the same Coord when read.
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<Coord> land = coords(0, 0, 0, 100, 100, 100, 100, 0, 0, 0);
+		List<Coord> sea = coords(0, 100, 0, 32768, 32768, 32768, 32768, 100, 100, 100, 0, 100);
+		List<Coord> open = coords(5, 5, -3, 7, 2000000, 9);
+
+		PrecompSeaFile.Writer writer = new PrecompSeaFile.Writer(MIN_LAT, MIN_LONG);
+		writer.addWay(true, land);
+		writer.addWay(false, sea);
+		writer.addWay(true, open);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer.write(out);
+
+		PrecompSeaCache.SeaTile tile = PrecompSeaFile.read(new ByteArrayInputStream(out.toByteArray()));
+		List<Way> ways = tile.createWays();
+		assertEquals(3, ways.size());
+
+		assertEquals("land", ways.get(0).getTag("natural"));
+		assertEquals("sea", ways.get(1).getTag("natural"));
+		assertEquals("land", ways.get(2).getTag("natural"));
+		assertEquals(land, ways.get(0).getPoints());
+		assertEquals(sea, ways.get(1).getPoints());
+		assertEquals(open, ways.get(2).getPoints());
+
+		assertTrue(ways.get(0).isClosed());
+		assertFalse(ways.get(2).isClosed());
+		assertSame(ways.get(0).getPoints().get(1), ways.get(1).getPoints().get(0));
+		assertSame(ways.get(1).getPoints().get(0), ways.get(1).getPoints().get(5));
+	}
+
+	@Test(expected = FormatException.class)
+	public void testNotCompact() throws IOException {
+		byte[] osm = "<?xml version='1.0'?><osm/>".getBytes("UTF-8");
+		PrecompSeaFile.read(new ByteArrayInputStream(osm));
+	}
+
+	@Test
+	public void testIsCompact() {
+		assertTrue(PrecompSeaFile.isCompact("sea_2359296_0.sea"));
+		assertFalse(PrecompSeaFile.isCompact("sea_2359296_0.osm.pbf"));
+	}
+
+	/**
+	 * Make coordinates relative to the corner of the tile from pairs of
+	 * lat, long offsets.
+	 */
+	private static List<Coord> coords(int... offsets) {
+		List<Coord> points = new ArrayList<Coord>();
+		for (int i = 0; i < offsets.length; i += 2)
+			points.add(new Coord(MIN_LAT + offsets[i], MIN_LONG + offsets[i + 1]));
+		return points;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm;
+
+import uk.me.parabola.imgfmt.app.Coord;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SparseCoordStoreTest {
+
+	/**
+	 * Enough nodes to need several chunks, with gaps between the ids.
+	 */
+	@Test
+	public void testManySorted() {
+		checkMany(new SparseCoordStore());
+	}
+
+	@Test
+	public void testManyMapped() {
+		checkMany(new MappedCoordStore());
+	}
+
+	private void checkMany(CoordStore store) {
+		int n = 200000;
+		for (int i = 0; i < n; i++)
+			store.put(3L * i + 1, i, -i);
+
+		assertEquals(n, store.size());
+		for (int i = 0; i < n; i += 7) {
+			Coord co = store.get(3L * i + 1);
+			assertEquals(i, co.getLatitude());
+			assertEquals(-i, co.getLongitude());
+		}
+		assertNull(store.get(3));
+		assertNull(store.get(3L * n + 1));
+		store.close();
+	}
+
+	/**
+	 * The same instance must be returned each time, as it is shared by
+	 * the ways that use the node.
+	 */
+	@Test
+	public void testSameInstance() {
+		CoordStore store = new SparseCoordStore();
+		store.put(10, 1, 2);
+		store.put(20, 3, 4);
+
+		Coord co = store.get(10);
+		co.incHighwayCount();
+		assertSame(co, store.get(10));
+		assertEquals(1, store.get(10).getHighwayCount());
+	}
+
+	@Test
+	public void testReplace() {
+		CoordStore store = new SparseCoordStore();
+		store.put(10, 1, 2);
+		store.put(20, 3, 4);
+		store.get(10);
+
+		CoordPOI cp = new CoordPOI(1, 2);
+		store.put(10, cp);
+		assertSame(cp, store.get(10));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void testUnsorted() {
+		CoordStore store = new SparseCoordStore();
+		store.put(10, 1, 2);
+		store.put(30, 5, 6);
+		store.put(20, 3, 4);
+		store.put(-5, 7, 8);
+
+		assertEquals(4, store.size());
+		assertEquals(3, store.get(20).getLatitude());
+		assertEquals(8, store.get(-5).getLongitude());
+		assertEquals(5, store.get(30).getLatitude());
+		assertSame(store.get(20), store.get(20));
+	}
+}
@@ -19,6 +19,8 @@ package uk.me.parabola.mkgmap.reader.osm;
 import java.util.Arrays;
 import java.util.Iterator;
 
+import uk.me.parabola.util.StringPool;
+
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -107,6 +109,37 @@ public class TagsTest {
 		return tags;
 	}
 
+	/**
+	 * While a value pool is set, equal values are stored as the same string,
+	 * including after the tags have been resized.
+	 */
+	@Test
+	public void testValuePool() {
+		StringPool pool = new StringPool(1000);
+		Tags.setValuePool(pool);
+		try {
+			Tags first = new Tags();
+			Tags second = new Tags();
+			for (String[] ts : LARGE_SET) {
+				first.put(ts[0], new String(ts[1]));
+				second.put(ts[0], new String(ts[1]));
+			}
+			for (String[] ts : LARGE_SET) {
+				assertEquals(ts[1], first.get(ts[0]));
+				assertSame(first.get(ts[0]), second.get(ts[0]));
+			}
+			assertEquals(1, pool.size());
+			assertEquals(2 * LARGE_SET.length - 1, pool.getHits());
+		} finally {
+			Tags.setValuePool(null);
+		}
+
+		Tags tags = new Tags();
+		String value = new String("primary");
+		tags.put("highway", value);
+		assertSame(value, tags.get("highway"));
+	}
+
 	/**
 	 * Create an iterator over the tags.  This must be initialised to the
 	 * values in SMALL_SET.
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm.boundary;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.geom.Area;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.mkgmap.reader.osm.Tags;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactBoundaryFileTest {
+	private static final String FILE_NAME = "bounds_2350000_0.bnd";
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("bounds", "");
+		dir.delete();
+		dir.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files)
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Save a quadtree in the compact format and check that the same tags
+	 * are found for points that are not on the edge of a boundary.
+	 */
+	@Test
+	public void testSameAsQuadTree() {
+		uk.me.parabola.imgfmt.app.Area bbox = BoundaryUtil.getBbox(FILE_NAME);
+		int lat = bbox.getMinLat();
+		int lon = bbox.getMinLong();
+
+		List<Boundary> boundaries = new ArrayList<Boundary>();
+		boundaries.add(new Boundary(new Area(new Rectangle(lon, lat, 50000, 50000)),
+				tags("2", "Country"), "r1"));
+		boundaries.add(new Boundary(new Area(new Polygon(
+				new int[] {lon + 1000, lon + 40000, lon + 1000},
+				new int[] {lat + 1000, lat + 1000, lat + 30000}, 3)),
+				tags("4", "Region"), "r2"));
+
+		BoundaryQuadTree bqt = new BoundaryQuadTree(bbox, boundaries, null);
+		BoundarySaver saver = new BoundarySaver(dir, BoundarySaver.COMPACT_DATA_FORMAT);
+		saver.setCreateEmptyFiles(false);
+		saver.saveQuadTree(bqt, FILE_NAME);
+		saver.end();
+
+		CompactBoundaryFile compact = CompactBoundaryFile.open(dir.getPath(), FILE_NAME, null);
+		assertNotNull(compact);
+
+		int[][] points = {
+				{5000, 5000}, {20000, 5000}, {5000, 25000},
+				{25000, 25000}, {45000, 45000}, {500, 45000},
+		};
+		for (int[] p : points) {
+			Coord co = new Coord(lat + p[0], lon + p[1]);
+			Tags expected = bqt.get(co);
+			assertNotNull(expected);
+			assertEquals(co.toString(), expected.toString(), String.valueOf(compact.get(co)));
+		}
+		assertEquals("Region", compact.get(new Coord(lat + 5000, lon + 5000)).get("mkgmap:admin_level4"));
+		assertNull(compact.get(new Coord(lat - 10, lon + 5000)));
+	}
+
+	/**
+	 * Files in the other formats are not opened.
+	 */
+	@Test
+	public void testOtherFormat() {
+		uk.me.parabola.imgfmt.app.Area bbox = BoundaryUtil.getBbox(FILE_NAME);
+		List<Boundary> boundaries = new ArrayList<Boundary>();
+		boundaries.add(new Boundary(new Area(new Rectangle(bbox.getMinLong(), bbox.getMinLat(), 50000, 50000)),
+				tags("2", "Country"), "r1"));
+		BoundarySaver saver = new BoundarySaver(dir, BoundarySaver.QUADTREE_DATA_FORMAT);
+		saver.setCreateEmptyFiles(false);
+		saver.saveQuadTree(new BoundaryQuadTree(bbox, boundaries, null), FILE_NAME);
+		saver.end();
+
+		assertTrue(new File(dir, FILE_NAME).exists());
+		assertNull(CompactBoundaryFile.open(dir.getPath(), FILE_NAME, null));
+	}
+
+	private static Tags tags(String level, String name) {
+		Tags tags = new Tags();
+		tags.put("boundary", "administrative");
+		tags.put("admin_level", level);
+		tags.put("name", name);
+		return tags;
+	}
+}
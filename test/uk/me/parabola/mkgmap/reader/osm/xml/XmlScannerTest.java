@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.mkgmap.reader.osm.xml;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import uk.me.parabola.imgfmt.app.Coord;
+import uk.me.parabola.mkgmap.reader.osm.Element;
+import uk.me.parabola.mkgmap.reader.osm.ElementSaver;
+import uk.me.parabola.mkgmap.reader.osm.Node;
+import uk.me.parabola.mkgmap.reader.osm.OsmReadingHooksAdaptor;
+import uk.me.parabola.mkgmap.reader.osm.Relation;
+import uk.me.parabola.mkgmap.reader.osm.Way;
+import uk.me.parabola.util.EnhancedProperties;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * The scanner must load exactly the same elements as the SAX parser.
+ */
+public class XmlScannerTest {
+	private static final String HEADER = "\ufeff<?xml version='1.0' encoding='UTF-8'?>\n"
+			+ "<!DOCTYPE osm [ <!ELEMENT osm ANY> ]>\n"
+			+ "<!-- a comment with <node> in it -->\n"
+			+ "<osm version=\"0.6\" generator=\"test\">\r\n"
+			+ "<bounds minlat=\"51.5\" minlon=\"-0.2\" maxlat=\"51.6\" maxlon=\"-0.1\"/>\n";
+
+	private static final String ELEMENTS = "<node id=\"1\" lat=\"51.5000001\" lon=\"-0.1234567\" version='2'/>\n"
+			+ "<node id='2' lat='51.51' lon='-0.12'>\n"
+			+ "  <tag k='name' v='Caf&#233; &amp; Bar &lt;&quot;x&quot;&gt; &apos;y&apos; &#x1F600;'/>\n"
+			+ "  <tag k=\"amenity\" v=\"caf\u00e9\"/>\n"
+			+ "  <tag k=\"note\" v=\"a\r\nb\tc\nd&#10;e > f / g\"/>\n"
+			+ "  <tag k=\"unused\" v=\"x\"/>\n"
+			+ "</node>\n"
+			+ "<node id=\"3\" lat=\"5.15e1\" lon=\"-0.0000000000000001234\"><tag k=\"mkgmap:on-boundary\" v=\"1\"/></node>\n"
+			+ "<node id=\"4\" lat=\"51.52\" lon=\"-0.11\"><tag k=\"shop\" v=\"\u5e97\"/></node>\n"
+			+ "<node id=\"5\" lat=\"bad\" lon=\"-0.11\"><tag k=\"shop\" v=\"x\"/></node>\n"
+			+ "<node id=\"-6\" lat=\"+51.53\" lon=\"-0.110\" />\n"
+			+ "<way id=\"10\">\n"
+			+ "  <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"4\"/><nd ref=\"-6\"/>\n"
+			+ "  <tag k=\"highway\" v=\"primary\"/><tag k=\"unused\" v=\"x\"/>\n"
+			+ "  <![CDATA[ </way> ]]>\n"
+			+ "</way>\n"
+			+ "<relation id=\"20\">\n"
+			+ "  <member type=\"way\" ref=\"10\" role=\"outer\"/>\n"
+			+ "  <member type=\"node\" ref=\"1\" role=\"\"/>\n"
+			+ "  <member type=\"relation\" ref=\"21\" role=\"sub\"/>\n"
+			+ "  <tag k=\"type\" v=\"site\"/><tag k=\"unused\" v=\"x\"/>\n"
+			+ "</relation>\n"
+			+ "<relation id=\"21\"><tag k=\"type\" v=\"route\"/></relation>\n";
+
+	@Test
+	public void testSameAsSax() throws Exception {
+		String xml = HEADER + ELEMENTS + "</osm>\n";
+		String sax = loadSax(xml, null);
+		assertEquals(sax, loadScanner(xml, null));
+		assertTrue(sax.contains("name=Caf\u00e9 & Bar <\"x\"> 'y' \ud83d\ude00"));
+	}
+
+	/**
+	 * Tags that are not used are not decoded, but the result is the same.
+	 */
+	@Test
+	public void testUsedTags() throws Exception {
+		String xml = HEADER + ELEMENTS + "</osm>\n";
+		Set<String> used = new HashSet<String>(Arrays.asList("name", "highway", "type", "shop"));
+		String sax = loadSax(xml, used);
+		assertEquals(sax, loadScanner(xml, used));
+		assertFalse(sax.contains("unused"));
+	}
+
+	/**
+	 * A file that is larger than the scanner buffer, so that elements are
+	 * split across reads.
+	 */
+	@Test
+	public void testLargeFile() throws Exception {
+		StringBuilder sb = new StringBuilder(HEADER);
+		for (int i = 0; i < 3000; i++) {
+			sb.append("<node id=\"").append(100 + i).append("\" lat=\"51.").append(i)
+					.append("\" lon=\"-0.").append(i * 7).append("\">");
+			sb.append("<tag k=\"name\" v=\"n\u00e4me ").append(i).append("\"/></node>\n");
+		}
+		sb.append("<way id=\"1\">");
+		for (int i = 0; i < 3000; i++)
+			sb.append("<nd ref=\"").append(100 + i).append("\"/>");
+		sb.append("</way></osm>");
+
+		String xml = sb.toString();
+		assertEquals(loadSax(xml, null), loadScanner(xml, null));
+	}
+
+	private static String loadSax(String xml, Set<String> used) throws Exception {
+		Osm5XmlHandler handler = new Osm5XmlHandler(new EnhancedProperties());
+		ElementSaver saver = setup(handler, used);
+
+		SAXParserFactory parserFactory = SAXParserFactory.newInstance();
+		parserFactory.setNamespaceAware(true);
+		SAXParser parser = parserFactory.newSAXParser();
+		parser.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")), handler.new SaxHandler());
+		return describe(saver);
+	}
+
+	private static String loadScanner(String xml, Set<String> used) throws Exception {
+		Osm5XmlHandler handler = new Osm5XmlHandler(new EnhancedProperties());
+		ElementSaver saver = setup(handler, used);
+
+		handler.new XmlScanner().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		return describe(saver);
+	}
+
+	private static ElementSaver setup(Osm5XmlHandler handler, Set<String> used) {
+		ElementSaver saver = new ElementSaver(new EnhancedProperties());
+		handler.setElementSaver(saver);
+		handler.setHooks(new OsmReadingHooksAdaptor());
+		if (used != null)
+			handler.setUsedTags(used);
+		return saver;
+	}
+
+	/**
+	 * Everything that was loaded as a string, in a fixed order.
+	 */
+	private static String describe(ElementSaver saver) {
+		List<String> lines = new ArrayList<String>();
+		for (Node node : saver.getNodes().values())
+			lines.add(describe(node) + ' ' + describe(node.getLocation()));
+		for (Way way : saver.getWays().values()) {
+			StringBuilder sb = new StringBuilder(describe(way));
+			for (Coord co : way.getPoints())
+				sb.append(' ').append(describe(co));
+			lines.add(sb.toString());
+		}
+		for (Relation rel : saver.getRelations().values()) {
+			StringBuilder sb = new StringBuilder(describe(rel));
+			for (Map.Entry<String, Element> ent : rel.getElements())
+				sb.append(' ').append(ent.getKey()).append('=').append(ent.getValue().getId());
+			lines.add(sb.toString());
+		}
+		lines.add(String.valueOf(saver.getBoundingBox()));
+		Collections.sort(lines);
+
+		StringBuilder sb = new StringBuilder();
+		for (String s : lines)
+			sb.append(s).append('\n');
+		return sb.toString();
+	}
+
+	private static String describe(Element el) {
+		List<String> tags = new ArrayList<String>();
+		for (Map.Entry<String, String> ent : el.getEntryIteratable())
+			tags.add(ent.getKey() + '=' + ent.getValue());
+		Collections.sort(tags);
+		return el.getClass().getSimpleName() + ' ' + el.getId() + ' ' + tags;
+	}
+
+	private static String describe(Coord co) {
+		if (co == null)
+			return "null";
+		return co.getLatitude() + "," + co.getLongitude() + (co.getOnBoundary() ? "b" : "");
+	}
+}
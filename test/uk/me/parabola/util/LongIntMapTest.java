@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongIntMapTest {
+
+	@Test
+	public void testPutGet() {
+		LongIntMap map = new LongIntMap();
+		assertEquals(LongIntMap.NOT_FOUND, map.put(42, 0));
+		assertEquals(LongIntMap.NOT_FOUND, map.put(-7, 3));
+		assertEquals(LongIntMap.NOT_FOUND, map.put(0, 5));
+
+		assertEquals(0, map.get(42));
+		assertEquals(3, map.get(-7));
+		assertEquals(5, map.get(0));
+		assertEquals(LongIntMap.NOT_FOUND, map.get(43));
+		assertEquals(3, map.size());
+
+		assertEquals(0, map.put(42, 9));
+		assertEquals(9, map.get(42));
+		assertEquals(3, map.size());
+	}
+
+	/**
+	 * Keys that only differ in the high bits, as ids that are generated
+	 * from a large starting value do, are kept apart when the map grows.
+	 */
+	@Test
+	public void testGrow() {
+		LongIntMap map = new LongIntMap(2);
+		long base = 1L << 42;
+		for (int i = 0; i < 100000; i++)
+			map.put(base + ((long) i << 32), i);
+
+		assertEquals(100000, map.size());
+		for (int i = 0; i < 100000; i++)
+			assertEquals(i, map.get(base + ((long) i << 32)));
+		assertFalse(map.containsKey(base + 1));
+	}
+
+	@Test
+	public void testClear() {
+		LongIntMap map = new LongIntMap();
+		map.put(1, 1);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertEquals(LongIntMap.NOT_FOUND, map.get(1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeValue() {
+		new LongIntMap().put(1, -1);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadInputStreamTest {
+
+	/**
+	 * Read through small buffers, so that each one is reused several
+	 * times, with reads of different sizes.
+	 */
+	@Test
+	public void testReadAll() throws IOException {
+		byte[] data = makeData(10000);
+		InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 100, 3);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(in.read());
+		byte[] buf = new byte[77];
+		int n;
+		while ((n = in.read(buf, 0, buf.length)) > 0) {
+			out.write(buf, 0, n);
+			int b = in.read();
+			if (b < 0)
+				break;
+			out.write(b);
+		}
+		assertEquals(-1, in.read());
+		in.close();
+
+		assertArrayEquals(data, out.toByteArray());
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), 100, 2);
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	/**
+	 * An error reading the source is thrown from the read that gets to it.
+	 */
+	@Test
+	public void testError() throws IOException {
+		final byte[] data = makeData(150);
+		InputStream source = new InputStream() {
+			private int count;
+
+			public int read() throws IOException {
+				if (count == data.length)
+					throw new IOException("broken");
+				return data[count++] & 0xff;
+			}
+		};
+
+		InputStream in = new ReadAheadInputStream(source, 100, 2);
+		byte[] buf = new byte[200];
+		assertEquals(100, in.read(buf, 0, 200));
+		try {
+			in.read(buf, 0, 200);
+			fail("no error");
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		in.close();
+	}
+
+	/**
+	 * Any other failure on the read ahead thread is also thrown to the
+	 * reader, rather than leaving it waiting.
+	 */
+	@Test
+	public void testRuntimeError() throws IOException {
+		InputStream source = new InputStream() {
+			public int read() {
+				throw new IllegalStateException("broken");
+			}
+		};
+
+		InputStream in = new ReadAheadInputStream(source, 100, 2);
+		try {
+			in.read();
+			fail("no error");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		in.close();
+	}
+
+	/**
+	 * Closing before the end stops the thread and closes the source.
+	 */
+	@Test
+	public void testCloseEarly() throws Exception {
+		final boolean[] closed = new boolean[1];
+		InputStream source = new ByteArrayInputStream(makeData(100000)) {
+			public void close() {
+				synchronized (closed) {
+					closed[0] = true;
+					closed.notifyAll();
+				}
+			}
+		};
+
+		InputStream in = new ReadAheadInputStream(source, 100, 2);
+		in.read();
+		in.close();
+
+		synchronized (closed) {
+			long end = System.currentTimeMillis() + 10000;
+			while (!closed[0] && System.currentTimeMillis() < end)
+				closed.wait(100);
+		}
+		assertTrue(closed[0]);
+	}
+
+	private static byte[] makeData(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (i * 13 + i / 247);
+		return data;
+	}
+}
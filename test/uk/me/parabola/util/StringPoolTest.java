@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StringPoolTest {
+
+	@Test
+	public void testShared() {
+		StringPool pool = new StringPool(100);
+		String first = new String("residential");
+		String second = new String("residential");
+
+		assertSame(first, pool.get(first));
+		assertSame(first, pool.get(second));
+		assertNull(pool.get(null));
+
+		assertEquals(1, pool.size());
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getMisses());
+	}
+
+	/**
+	 * The pool does not grow past its size, the oldest strings are dropped
+	 * but are still returned correctly.
+	 */
+	@Test
+	public void testBounded() {
+		StringPool pool = new StringPool(160);
+		for (int i = 0; i < 10000; i++)
+			assertEquals(String.valueOf(i), pool.get(String.valueOf(i)));
+
+		assertTrue(pool.size() <= 160);
+		assertEquals(10000, pool.getMisses());
+
+		String last = pool.get("9999");
+		assertSame(last, pool.get(new String("9999")));
+	}
+
+	/**
+	 * A string that is used often stays in the pool, however many others
+	 * are added after it.
+	 */
+	@Test
+	public void testKeepsCommon() {
+		StringPool pool = new StringPool(100);
+		String yes = new String("yes");
+		pool.get(yes);
+		for (int i = 0; i < 10000; i++) {
+			pool.get(String.valueOf(i));
+			assertSame(yes, pool.get(new String("yes")));
+		}
+	}
+
+	/**
+	 * Threads that look up the same strings at the same time all get the
+	 * same copy back, and every lookup is counted.
+	 */
+	@Test
+	public void testThreads() throws Exception {
+		final StringPool pool = new StringPool(1000);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+			for (int t = 0; t < 4; t++) {
+				results.add(executor.submit(new Callable<String[]>() {
+					public String[] call() {
+						String[] found = new String[100];
+						for (int n = 0; n < 50; n++) {
+							for (int i = 0; i < found.length; i++)
+								found[i] = pool.get(new String("value" + i));
+						}
+						return found;
+					}
+				}));
+			}
+
+			String[] first = results.get(0).get();
+			for (Future<String[]> result : results) {
+				String[] found = result.get();
+				for (int i = 0; i < found.length; i++)
+					assertSame(first[i], found[i]);
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(100, pool.size());
+		assertEquals(100, pool.getMisses());
+		assertEquals(4 * 50 * 100 - 100, pool.getHits());
+		assertEquals(99.5, pool.getHitRate(), 0.001);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2026.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.util;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.me.parabola.imgfmt.MapFailedException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThreadUtilsTest {
+
+	@Test
+	public void testThreadCount() {
+		EnhancedProperties props = new EnhancedProperties();
+		assertEquals(1, ThreadUtils.getThreadCount(props, "test-threads"));
+
+		props.setProperty("test-threads", "3");
+		assertEquals(3, ThreadUtils.getThreadCount(props, "test-threads"));
+
+		props.setProperty("test-threads", "");
+		assertEquals(Runtime.getRuntime().availableProcessors(), ThreadUtils.getThreadCount(props, "test-threads"));
+
+		props.setProperty("test-threads", "many");
+		assertEquals(1, ThreadUtils.getThreadCount(props, "test-threads"));
+	}
+
+	/**
+	 * Unchecked exceptions come through as they are, checked ones are
+	 * wrapped unless their type is given.
+	 */
+	@Test
+	public void testWaitForErrors() throws Exception {
+		ExecutorService pool = Executors.newSingleThreadExecutor(ThreadUtils.daemonThreadFactory("test"));
+		try {
+			Future<Integer> ok = pool.submit(new Callable<Integer>() {
+				public Integer call() {
+					return 42;
+				}
+			});
+			assertEquals(42, (int) ThreadUtils.waitFor(ok, "test"));
+
+			Future<Integer> unchecked = pool.submit(new Callable<Integer>() {
+				public Integer call() {
+					throw new IllegalStateException("bad");
+				}
+			});
+			try {
+				ThreadUtils.waitFor(unchecked, "test");
+				fail("no exception");
+			} catch (IllegalStateException e) {
+				assertEquals("bad", e.getMessage());
+			}
+
+			Future<Integer> checked = pool.submit(new Callable<Integer>() {
+				public Integer call() throws IOException {
+					throw new IOException("bad");
+				}
+			});
+			try {
+				ThreadUtils.waitFor(checked, "test");
+				fail("no exception");
+			} catch (MapFailedException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+			try {
+				ThreadUtils.waitFor(checked, IOException.class, "test");
+				fail("no exception");
+			} catch (IOException e) {
+				assertEquals("bad", e.getMessage());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}